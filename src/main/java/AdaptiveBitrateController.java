@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// 업링크 혼잡을 감지해서 송출 비트레이트/해상도 단계를 조절하는 컨트롤러
+// - 입력: 프레임당 record() (인코딩 + 먹싱 + 소켓 쓰기) 소요 시간, 송출 대기 큐 깊이
+// - 링크가 나빠지면 (쓰기 지연이 프레임 간격에 근접하거나 큐가 차오르면) 한 단계씩 내리고,
+//   일정 시간 안정적이면 한 단계씩 다시 올려본다 (probe). 올리자마자 다시 떨어지면 다음 probe 대기시간을 늘림.
+// 실제 레코더 재설정은 호출 측(StreamingClientMain)에서 getLevel() 결과를 보고 수행한다.
+public class AdaptiveBitrateController {
+
+    public static final class Level {
+        public final int videoBitrate;
+        public final int scaleDivisor; // 1 = 원본 해상도, 2 = 가로/세로 절반
+
+        public Level(int videoBitrate, int scaleDivisor) {
+            this.videoBitrate = videoBitrate;
+            this.scaleDivisor = scaleDivisor;
+        }
+
+        @Override
+        public String toString() {
+            return (videoBitrate / 1000) + "kbps/1:" + scaleDivisor;
+        }
+    }
+
+    private static final double EWMA_ALPHA = 0.1;
+    private static final double CONGESTED_LATENCY_RATIO = 0.8; // 쓰기 지연 > 프레임 간격의 80% 이면 혼잡
+    private static final double CLEAR_LATENCY_RATIO = 0.3;     // 쓰기 지연 < 프레임 간격의 30% 이면 여유
+    private static final long DEGRADE_HOLD_MS = 1000;          // 혼잡 상태가 이만큼 지속되면 한 단계 내림
+    private static final long MIN_PROBE_HOLD_MS = 10000;       // 여유 상태가 이만큼 지속되면 한 단계 올림
+    private static final long MAX_PROBE_HOLD_MS = 120000;
+
+    private final List<Level> levels;
+    private final long frameIntervalMicros;
+    private final int queueCapacity;
+
+    private int current = 0;
+    private double ewmaWriteMicros = 0;
+    private long congestedSinceMs = -1;
+    private long clearSinceMs = -1;
+    private long probeHoldMs = MIN_PROBE_HOLD_MS;
+    private long lastUpgradeMs = -1;
+
+    public AdaptiveBitrateController(List<Level> levels, double frameRate, int queueCapacity) {
+        if (levels.isEmpty()) throw new IllegalArgumentException("At least one level is required");
+        this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+        this.frameIntervalMicros = Math.round(1_000_000.0 / frameRate);
+        this.queueCapacity = queueCapacity;
+    }
+
+    // 기본 단계: 최대 비트레이트에서 약 30%씩 내리다가 바닥에 닿으면 해상도를 절반으로
+    public static List<Level> defaultLevels(int maxBitrate, int minBitrate) {
+        List<Level> levels = new ArrayList<>();
+        int bitrate = maxBitrate;
+        while (bitrate > minBitrate) {
+            levels.add(new Level(bitrate, 1));
+            bitrate = (int) (bitrate * 0.7);
+        }
+        levels.add(new Level(minBitrate, 1));
+        levels.add(new Level(minBitrate, 2));
+        levels.add(new Level(Math.max(minBitrate / 2, 100000), 2));
+        return levels;
+    }
+
+    // 프레임 하나를 보낼 때마다 호출. 단계가 바뀌었으면 true
+    public boolean onFrameWritten(long nowMs, long writeMicros, int queueDepth) {
+        ewmaWriteMicros = ewmaWriteMicros == 0 ? writeMicros : ewmaWriteMicros + EWMA_ALPHA * (writeMicros - ewmaWriteMicros);
+
+        boolean congested = ewmaWriteMicros > frameIntervalMicros * CONGESTED_LATENCY_RATIO || queueDepth * 2 >= queueCapacity;
+        boolean clear = ewmaWriteMicros < frameIntervalMicros * CLEAR_LATENCY_RATIO && queueDepth == 0;
+
+        if (congested) {
+            clearSinceMs = -1;
+            if (congestedSinceMs < 0) congestedSinceMs = nowMs;
+            if (nowMs - congestedSinceMs >= DEGRADE_HOLD_MS && current < levels.size() - 1) {
+                // 방금 올린 단계가 버티지 못했으면 다음 probe는 더 오래 기다림
+                if (lastUpgradeMs >= 0 && nowMs - lastUpgradeMs < probeHoldMs) {
+                    probeHoldMs = Math.min(probeHoldMs * 2, MAX_PROBE_HOLD_MS);
+                }
+                current++;
+                congestedSinceMs = nowMs;
+                ewmaWriteMicros = 0; // 새 설정 기준으로 다시 측정
+                return true;
+            }
+        } else {
+            congestedSinceMs = -1;
+            if (clear) {
+                if (clearSinceMs < 0) clearSinceMs = nowMs;
+                if (nowMs - clearSinceMs >= probeHoldMs && current > 0) {
+                    current--;
+                    clearSinceMs = nowMs;
+                    lastUpgradeMs = nowMs;
+                    ewmaWriteMicros = 0;
+                    return true;
+                }
+            } else {
+                clearSinceMs = -1;
+            }
+        }
+        // 한동안 안정적이었으면 probe 대기시간을 원래대로
+        if (lastUpgradeMs >= 0 && nowMs - lastUpgradeMs > MAX_PROBE_HOLD_MS) {
+            probeHoldMs = MIN_PROBE_HOLD_MS;
+            lastUpgradeMs = -1;
+        }
+        return false;
+    }
+
+    public Level getLevel() { return levels.get(current); }
+    public int getLevelIndex() { return current; }
+    public long getWriteLatencyMicros() { return Math.round(ewmaWriteMicros); }
+}
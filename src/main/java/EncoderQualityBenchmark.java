@@ -0,0 +1,222 @@
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameFilter;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameFilter;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// 인코더 설정별 화질/비트 비교 벤치마크 (오프라인, 로컬 파일만 사용)
+// 기준 클립마다 코덱 x preset x 비트레이트 x GOP 조합으로 인코딩하고 다음을 측정:
+// - encode fps: record() + 마지막 flush(stop) 에 쓴 시간 기준 (디코딩 시간 제외)
+// - 출력 크기, 실제 비트레이트
+// - PSNR / SSIM: 인코딩 결과를 다시 디코딩해서 원본 디코딩 프레임과 FFmpeg psnr/ssim 필터로 비교 (프레임 평균)
+// 인코더는 송출 클라이언트와 같은 설정(StreamingClientMain.createRtmpRecorder)에서 비교 항목만 바꿈
+// 결과는 표로 출력하고 encoder_bench/results.csv 에 저장
+// 사용법: EncoderQualityBenchmark [클립 ...]  (없으면 합성 영상 클립을 만들어서 사용)
+//   -Dbench.codecs=h264,hevc -Dbench.presets=ultrafast,veryfast,medium -Dbench.bitrates=500,1000,2000 (kbps)
+//   -Dbench.gops=30,60 (프레임) -Dbench.max.frames=300 -Dbench.threads=1
+// 카메라 종류별로 대표 클립을 골라서 돌리면 종류별 설정을 근거를 가지고 정할 수 있음
+// x264/x265 의 프레임 스레드 레이트 컨트롤은 스레드 수에 따라 출력이 달라지므로 인코더 스레드 수를 고정함 (기본 1, CSV 에 기록)
+// -> 같은 스레드 수면 장비가 달라도 크기/PSNR/SSIM 이 같음 (fps 만 장비에 따라 다름)
+public class EncoderQualityBenchmark {
+
+    private static final String BENCH_DIRECTORY = "encoder_bench";
+    private static final double MAX_PSNR = 100.0; // 완전히 같은 프레임(inf)은 이 값으로
+    private static final int THREADS = Integer.getInteger("bench.threads", 1);
+
+    private static final class Result {
+        String clip;
+        String codec;
+        String preset;
+        int bitrateKbps;
+        int gop;
+        int threads;
+        long frames;
+        double encodeFps;
+        long sizeBytes;
+        double actualKbps;
+        double psnr;
+        double ssim;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File benchDir = new File(BENCH_DIRECTORY);
+        Files.createDirectories(benchDir.toPath());
+        List<File> clips = new ArrayList<>();
+        for (String arg : args) clips.add(new File(arg));
+        if (clips.isEmpty()) {
+            File synthetic = new File(benchDir, "synthetic_reference.flv");
+            LoadTestHarness.renderSyntheticFile(synthetic, 1280, 720, 30.0, 10);
+            clips.add(synthetic);
+        }
+        String[] codecs = System.getProperty("bench.codecs", "h264").split(",");
+        String[] presets = System.getProperty("bench.presets", "ultrafast,veryfast,medium").split(",");
+        String[] bitrates = System.getProperty("bench.bitrates", "500,1000,2000").split(",");
+        String[] gops = System.getProperty("bench.gops", "30,60").split(",");
+        long maxFrames = Long.getLong("bench.max.frames", 300);
+
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+        List<Result> results = new ArrayList<>();
+        for (File clip : clips) {
+            for (String codec : codecs) {
+                for (String preset : presets) {
+                    for (String bitrate : bitrates) {
+                        for (String gop : gops) {
+                            Result result = new Result();
+                            result.clip = clip.getName();
+                            result.codec = codec.trim();
+                            result.preset = preset.trim();
+                            result.bitrateKbps = Integer.parseInt(bitrate.trim());
+                            result.gop = Integer.parseInt(gop.trim());
+                            result.threads = THREADS;
+                            try {
+                                run(clip, benchDir, result, maxFrames);
+                                results.add(result);
+                                printRow(result);
+                            } catch (FrameGrabber.Exception | FrameRecorder.Exception | FrameFilter.Exception e) {
+                                System.err.println("Skipping " + result.codec + "/" + result.preset + "/" + result.bitrateKbps + "k/gop"
+                                        + result.gop + " on " + clip.getName() + ": " + e.getMessage());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        File csv = new File(benchDir, "results.csv");
+        writeCsv(csv, results);
+        System.out.println("=== " + results.size() + " runs, written to " + csv.getAbsolutePath() + " ===");
+    }
+
+    private static void run(File clip, File benchDir, Result result, long maxFrames) throws Exception {
+        File encoded = new File(benchDir, "encoded.mkv");
+        encode(clip, encoded, result, maxFrames);
+        result.sizeBytes = encoded.length();
+        measureQuality(clip, encoded, benchDir, result);
+    }
+
+    private static void encode(File clip, File output, Result result, long maxFrames) throws FrameGrabber.Exception, FrameRecorder.Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(clip);
+        grabber.start();
+        double frameRate = grabber.getFrameRate() > 0 ? grabber.getFrameRate() : 30.0;
+        FFmpegFrameRecorder recorder = StreamingClientMain.createRtmpRecorder(output.getPath(), grabber.getImageWidth(),
+                grabber.getImageHeight(), result.bitrateKbps * 1000);
+        recorder.setFormat("matroska"); // FLV 는 HEVC 를 담을 수 없음
+        recorder.setVideoCodec(result.codec.equals("hevc") ? avcodec.AV_CODEC_ID_HEVC : avcodec.AV_CODEC_ID_H264);
+        recorder.setFrameRate(frameRate);
+        recorder.setGopSize(result.gop);
+        recorder.setVideoOption("preset", result.preset);
+        recorder.setVideoOption("threads", String.valueOf(result.threads));
+        if (result.codec.equals("hevc")) {
+            recorder.setVideoOption("x265-params", "pools=" + result.threads + ":frame-threads=" + result.threads); // libx265 는 threads 를 쓰지 않음
+        }
+        long encodeNanos = 0;
+        long frames = 0;
+        try {
+            recorder.start();
+            Frame frame;
+            while (frames < maxFrames && (frame = grabber.grabImage()) != null) {
+                long start = System.nanoTime();
+                recorder.record(frame);
+                encodeNanos += System.nanoTime() - start;
+                frames++;
+            }
+            long start = System.nanoTime();
+            recorder.stop(); // 인코더에 남은 프레임(lookahead, B-frame) flush 도 인코딩 시간에 포함
+            encodeNanos += System.nanoTime() - start;
+        } finally {
+            recorder.release();
+            grabber.stop();
+            grabber.release();
+        }
+        result.frames = frames;
+        result.encodeFps = frames / (encodeNanos / 1e9);
+        result.actualKbps = frames > 0 ? output.length() * 8 / (frames / frameRate) / 1000 : 0;
+    }
+
+    // 인코딩 결과(0번 입력)와 원본(1번 입력)을 한 프레임씩 맞춰서 psnr -> ssim 필터에 통과시키고 stats_file 을 평균
+    private static void measureQuality(File clip, File encoded, File benchDir, Result result)
+            throws FrameGrabber.Exception, FrameFilter.Exception, IOException {
+        // stats_file 경로는 필터 문자열 안에 들어가므로 ':' 이 없는 상대 경로 사용
+        String psnrLog = BENCH_DIRECTORY + "/psnr.log";
+        String ssimLog = BENCH_DIRECTORY + "/ssim.log";
+        FFmpegFrameGrabber reference = new FFmpegFrameGrabber(clip);
+        FFmpegFrameGrabber distorted = new FFmpegFrameGrabber(encoded);
+        FFmpegFrameFilter filter = null;
+        try {
+            reference.start();
+            distorted.start();
+            filter = new FFmpegFrameFilter("[0:v]format=yuv420p[main];[1:v]format=yuv420p,split[ref1][ref2];"
+                    + "[main][ref1]psnr=stats_file=" + psnrLog + "[scored];[scored][ref2]ssim=stats_file=" + ssimLog + "[v]",
+                    reference.getImageWidth(), reference.getImageHeight());
+            filter.setVideoInputs(2);
+            filter.setPixelFormat(avutil.AV_PIX_FMT_BGR24); // grabImage() 기본 출력 형식
+            filter.setFrameRate(reference.getFrameRate() > 0 ? reference.getFrameRate() : 30.0);
+            filter.start();
+            for (long i = 0; i < result.frames; i++) {
+                Frame distortedFrame = distorted.grabImage();
+                if (distortedFrame == null) break;
+                filter.push(0, distortedFrame);
+                Frame referenceFrame = reference.grabImage();
+                if (referenceFrame == null) break;
+                filter.push(1, referenceFrame);
+                while (filter.pull() != null) {
+                    // 점수는 stats_file 로만 받음
+                }
+            }
+        } finally {
+            if (filter != null) {
+                filter.stop(); // 필터 종료 시 stats_file 이 닫힘
+                filter.release();
+            }
+            distorted.stop();
+            distorted.release();
+            reference.stop();
+            reference.release();
+        }
+        result.psnr = averageField(new File(benchDir, "psnr.log"), "psnr_avg:");
+        result.ssim = averageField(new File(benchDir, "ssim.log"), "All:");
+    }
+
+    // stats_file 의 각 줄에서 "<key><값>" 을 찾아 평균
+    private static double averageField(File statsFile, String key) throws IOException {
+        double sum = 0;
+        int count = 0;
+        for (String line : Files.readAllLines(statsFile.toPath(), StandardCharsets.UTF_8)) {
+            int start = line.indexOf(key);
+            if (start < 0) continue;
+            start += key.length();
+            int end = line.indexOf(' ', start);
+            String value = end < 0 ? line.substring(start) : line.substring(start, end);
+            sum += value.equals("inf") ? MAX_PSNR : Double.parseDouble(value);
+            count++;
+        }
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    private static void printRow(Result r) {
+        System.out.println(String.format(Locale.ROOT, "%-24s %-5s %-10s %6dk gop%-4d t%-2d | %7.1f fps %8.1f KB %7.0f kbps | PSNR %6.2f dB SSIM %.4f",
+                r.clip, r.codec, r.preset, r.bitrateKbps, r.gop, r.threads, r.encodeFps, r.sizeBytes / 1024.0, r.actualKbps, r.psnr, r.ssim));
+    }
+
+    private static void writeCsv(File csv, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv.toPath(), StandardCharsets.UTF_8))) {
+            out.println("clip,codec,preset,bitrate_kbps,gop,threads,frames,encode_fps,size_bytes,actual_kbps,psnr_db,ssim");
+            for (Result r : results) {
+                out.println(String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%d,%.2f,%d,%.1f,%.3f,%.5f",
+                        r.clip, r.codec, r.preset, r.bitrateKbps, r.gop, r.threads, r.frames, r.encodeFps, r.sizeBytes, r.actualKbps, r.psnr, r.ssim));
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FrameGrabber;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// LocalFileStreamer 재생 목록: 파일을 순서대로(loop 이면 무한 반복) grabber 로 열어서 넘겨줌
+// - 현재 파일을 넘겨주는 즉시 다음 파일의 grabber.start()(파일 열기 + probe)를 백그라운드에서 미리 실행
+//   -> 현재 파일이 끝났을 때 next() 는 이미 열린 grabber 를 바로 받아감 (파일 전환 시 공백 없음)
+// - 다 쓴 grabber 의 stop/release 도 같은 백그라운드 스레드에서 처리
+// - startMicros 가 있으면 열면서 KeyframeIndex 로 그 시각 직전 키프레임까지 이동 (이것도 백그라운드)
+// - 열리지 않는 파일은 건너뜀 (목록 전체가 한 바퀴 연속으로 실패하면 예외)
+public class FilePlaylist implements AutoCloseable {
+
+    private static final List<String> VIDEO_EXTENSIONS = Arrays.asList(".mp4", ".mov", ".mkv", ".ts", ".flv", ".avi");
+
+    private final List<File> files;
+    private final boolean loop;
+    private final long startMicros;
+    private final ExecutorService opener = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PlaylistPrefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int nextIndex = 0;
+    private File prefetchedFile;
+    private Future<FFmpegFrameGrabber> prefetched;
+    private File currentFile;
+
+    public FilePlaylist(List<File> files, boolean loop) {
+        this(files, loop, 0);
+    }
+
+    // startMicros: 파일마다 이 시각부터 재생 (0이면 처음부터)
+    public FilePlaylist(List<File> files, boolean loop, long startMicros) {
+        if (files.isEmpty()) throw new IllegalArgumentException("Playlist is empty.");
+        this.files = new ArrayList<>(files);
+        this.loop = loop;
+        this.startMicros = startMicros;
+    }
+
+    // 경로 목록을 파일 목록으로 (디렉터리는 안의 동영상 파일을 이름순으로)
+    public static List<File> expand(List<String> paths) {
+        List<File> result = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                File[] children = file.listFiles(child -> child.isFile() && isVideoFile(child));
+                if (children == null) continue;
+                Arrays.sort(children);
+                result.addAll(Arrays.asList(children));
+            } else if (file.isFile()) {
+                result.add(file);
+            } else {
+                System.err.println("Playlist entry not found, skipping: " + path);
+            }
+        }
+        return result;
+    }
+
+    // 다음 파일의 시작된 grabber. 목록이 끝났으면(loop 아님) null
+    public FFmpegFrameGrabber next() throws FrameGrabber.Exception, InterruptedException {
+        int failures = 0;
+        while (true) {
+            if (prefetched == null && !prefetchNext()) return null;
+            File file = prefetchedFile;
+            Future<FFmpegFrameGrabber> future = prefetched;
+            prefetched = null;
+            try {
+                FFmpegFrameGrabber grabber = future.get();
+                currentFile = file;
+                prefetchNext(); // 이 파일을 재생하는 동안 다음 파일을 열어 둠
+                return grabber;
+            } catch (ExecutionException e) {
+                System.err.println("Could not open playlist file " + file + ": " + e.getCause().getMessage() + ". Skipping.");
+                if (++failures >= files.size()) {
+                    throw new FrameGrabber.Exception("No playable file in playlist.", e.getCause());
+                }
+            }
+        }
+    }
+
+    public File getCurrentFile() { return currentFile; }
+
+    // 다 쓴 grabber 를 백그라운드에서 정리 (전환 중인 스트리밍 루프를 막지 않음)
+    public void retire(FFmpegFrameGrabber grabber) {
+        opener.submit(() -> retireNow(grabber));
+    }
+
+    @Override
+    public void close() {
+        Future<FFmpegFrameGrabber> pending = prefetched;
+        prefetched = null;
+        if (pending != null) {
+            opener.submit(() -> {
+                try {
+                    retireNow(pending.get());
+                } catch (ExecutionException | InterruptedException ignored) {
+                    // 열지 못한 파일: 정리할 것 없음
+                }
+            });
+        }
+        opener.shutdown();
+    }
+
+    private boolean prefetchNext() {
+        if (nextIndex >= files.size()) {
+            if (!loop) return false;
+            nextIndex = 0;
+        }
+        File file = files.get(nextIndex++);
+        prefetchedFile = file;
+        prefetched = opener.submit(() -> {
+            FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(file);
+            try {
+                grabber.start();
+                if (startMicros > 0) KeyframeIndex.forFile(file).seekFrames(grabber, startMicros);
+            } catch (FrameGrabber.Exception e) {
+                grabber.release();
+                throw e;
+            }
+            return grabber;
+        });
+        return true;
+    }
+
+    private static void retireNow(FFmpegFrameGrabber grabber) {
+        try {
+            grabber.stop();
+            grabber.release();
+        } catch (FrameGrabber.Exception e) {
+            System.err.println("Error releasing playlist grabber: " + e.getMessage());
+        }
+    }
+
+    private static boolean isVideoFile(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        return VIDEO_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+}
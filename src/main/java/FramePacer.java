@@ -0,0 +1,70 @@
+// 캡처 시각(System.nanoTime) 기반으로 출력 프레임률을 유지하는 타이밍 엔진
+// - 출력 타임스탬프는 "슬롯 번호 * 프레임 간격"으로 계산하므로 정수 나눗셈 오차가 누적되지 않음
+//   (30fps에서 1000000 / 30 = 33333us 로 잘려서 실제 시간보다 점점 느려지던 문제)
+// - 카메라가 목표 fps보다 빠르면 같은 슬롯에 들어온 프레임은 버리고(drop),
+//   느리면 비어있는 슬롯을 직전 프레임으로 채워(duplicate) 출력 fps를 고정
+// - 슬롯은 항상 실제 경과 시간에 묶여 있으므로 미디어 타임스탬프가 벽시계와 벌어지지 않음
+public class FramePacer {
+
+    // 카메라가 잠시 멈춘 경우 최대 몇 번까지 복제할지 (그 이상 비어있는 슬롯은 건너뜀 = 타임스탬프 갭)
+    private static final int MAX_DUPLICATES = 3;
+
+    private final double frameRate;
+    private long startNanos = -1;
+    private long nextSlot = 0;      // 다음에 출력할 슬롯 번호
+    private long batchFirstSlot = 0; // 마지막 onFrameCaptured() 호출에서 출력할 첫 슬롯
+
+    private long droppedFrames = 0;
+    private long duplicatedFrames = 0;
+    private long skippedSlots = 0;
+
+    public FramePacer(double frameRate) {
+        if (frameRate <= 0) throw new IllegalArgumentException("frameRate must be positive: " + frameRate);
+        this.frameRate = frameRate;
+    }
+
+    // 캡처 직후 호출. 이 프레임을 몇 번 출력해야 하는지 반환 (0 = drop, 1 = 그대로, 2 이상 = 복제)
+    // 출력할 각 프레임의 타임스탬프는 timestampMicros(firstSlot() + i) 로 계산
+    public int onFrameCaptured(long captureNanos) {
+        if (startNanos < 0) {
+            startNanos = captureNanos;
+        }
+        long slot = slotAt(captureNanos);
+        if (slot < nextSlot) {
+            droppedFrames++;
+            return 0;
+        }
+        long count = slot - nextSlot + 1;
+        if (count > MAX_DUPLICATES + 1) {
+            skippedSlots += count - (MAX_DUPLICATES + 1);
+            nextSlot = slot - MAX_DUPLICATES;
+            count = MAX_DUPLICATES + 1;
+        }
+        duplicatedFrames += count - 1;
+        batchFirstSlot = nextSlot;
+        nextSlot = slot + 1;
+        return (int) count;
+    }
+
+    public long firstSlot() {
+        return batchFirstSlot;
+    }
+
+    public long timestampMicros(long slot) {
+        return Math.round(slot * 1_000_000.0 / frameRate);
+    }
+
+    // 실제 경과 시간(us) - 주어진 미디어 타임스탬프(us). 양수면 송출이 실시간보다 뒤처져 있다는 의미
+    public long lagMicros(long nowNanos, long mediaTimestampMicros) {
+        if (startNanos < 0) return 0;
+        return (nowNanos - startNanos) / 1000 - mediaTimestampMicros;
+    }
+
+    private long slotAt(long nanos) {
+        return (long) Math.floor((nanos - startNanos) * frameRate / 1_000_000_000.0);
+    }
+
+    public long getDroppedFrames() { return droppedFrames; }
+    public long getDuplicatedFrames() { return duplicatedFrames; }
+    public long getSkippedSlots() { return skippedSlots; }
+}
@@ -0,0 +1,60 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+// JFR 이벤트: 프레임 하나가 파이프라인의 한 단계(grab, copy, show, record ...)에서 쓴 시간
+// 끊김이 생겼을 때 시간이 어느 단계로 갔는지 스트림/프레임 번호별로 확인하기 위한 용도
+// JFR 녹화가 없으면 begin()/end()/shouldCommit() 이 아무 일도 하지 않으므로 프레임당 비용은 무시할 수준
+// 녹화: java -XX:StartFlightRecording=settings=<배포 경로>/pipeline-trace.jfc,filename=trace.jfr ...
+// 분석: JfrStageReport trace.jfr
+@Name("streaming.FrameStage")
+@Label("Frame Stage")
+@Category({"Streaming", "Pipeline"})
+@Description("Time spent by one frame in one pipeline stage")
+@StackTrace(false)
+public class FrameStageEvent extends Event {
+
+    public static final String GRAB = "grab";
+    public static final String COPY = "copy";           // 큐/리스너로 넘기기 전 복사, 타임스탬프 코드 그리기
+    public static final String SHOW = "show";           // CanvasFrame 미리보기
+    public static final String RECORD = "record";       // 인코딩 + 먹싱 (+ 네트워크 쓰기)
+    public static final String LISTENERS = "listeners"; // 컨버터의 MJPEG/FLV 등 추가 처리
+
+    @Label("Stream Id")
+    String streamId;
+
+    @Label("Frame Number")
+    long frameNumber;
+
+    @Label("Stage")
+    String stage;
+
+    public static FrameStageEvent start() {
+        FrameStageEvent event = new FrameStageEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(String stage, String streamId, long frameNumber) {
+        end();
+        if (shouldCommit()) {
+            this.stage = stage;
+            this.streamId = streamId;
+            this.frameNumber = frameNumber;
+            commit();
+        }
+    }
+
+    // while ((frame = grab()) != null) 형태의 루프에서 쓰기 위한 헬퍼
+    public static Frame grab(FrameGrabber grabber, String streamId, long frameNumber) throws FrameGrabber.Exception {
+        FrameStageEvent event = start();
+        Frame frame = grabber.grab();
+        event.finish(GRAB, streamId, frameNumber);
+        return frame;
+    }
+}
@@ -0,0 +1,179 @@
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_AAC;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_H264;
+
+// 디렉터리 안의 H.264/AAC MP4 녹화 파일들을 재인코딩 없이(패킷 복사) HLS VOD 로 만드는 일괄 패키저
+// - <input-dir> 아래 .mp4/.m4v/.mov 를 모두 찾아서 <output-dir>/<상대 경로(확장자 포함)>/stream.m3u8 + segment-NNNNN.ts 로
+//   (clip.mp4 와 clip.mov 가 같은 디렉터리에 있어도 출력 디렉터리가 겹치지 않도록 확장자를 남김)
+// - 파일마다 grabPacket() -> recordPacket() 만 하므로 CPU 는 거의 쓰지 않고 디스크 읽기/쓰기 속도가 한계
+//   -> 작업 스레드는 코어 수가 아니라 디스크가 감당할 만큼만 (-Dpackager.threads, 기본 4)
+// - 출력 디렉터리의 manifest.properties 에 원본 크기/수정 시각을 기록 -> 다음 실행에서 바뀌지 않은 파일은 열지도 않고 건너뜀
+//   (H.264/AAC 가 아닌 파일도 incompatible 로 기록해서 다시 probe 하지 않음, 그런 파일은 HlsVodTranscoder 로 변환)
+// - manifest 는 패키징이 끝난 뒤에 쓰므로 중간에 죽은 파일은 다음 실행에서 다시 만듦
+// 사용법: HlsBatchPackager <input-dir> <output-dir> [segment-seconds]
+public class HlsBatchPackager {
+
+    private static final int THREADS = Integer.getInteger("packager.threads", 4);
+    private static final String MANIFEST = "manifest.properties";
+    private static final String PLAYLIST = "stream.m3u8";
+    private static final String STATUS_PACKAGED = "packaged";
+    private static final String STATUS_INCOMPATIBLE = "incompatible";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: HlsBatchPackager <input-dir> <output-dir> [segment-seconds]");
+            return;
+        }
+        Path inputRoot = new File(args[0]).toPath().toAbsolutePath();
+        Path outputRoot = new File(args[1]).toPath().toAbsolutePath();
+        String segmentSeconds = args.length > 2 ? args[2] : "4";
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(inputRoot)) {
+            sources = files.filter(Files::isRegularFile).filter(HlsBatchPackager::isRecording).sorted().collect(Collectors.toList());
+        }
+        System.out.println("Found " + sources.size() + " recordings under " + inputRoot + ". Packaging with " + THREADS + " workers.");
+
+        AtomicInteger packaged = new AtomicInteger();
+        AtomicInteger upToDate = new AtomicInteger();
+        AtomicInteger incompatible = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytesRead = new AtomicLong();
+        long startNanos = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        for (Path source : sources) {
+            workers.submit(() -> {
+                String relative = inputRoot.relativize(source).toString();
+                File outputDir = outputRoot.resolve(relative).toFile();
+                File sourceFile = source.toFile();
+                try {
+                    if (isUpToDate(sourceFile, outputDir)) {
+                        upToDate.incrementAndGet();
+                        return;
+                    }
+                    if (remux(sourceFile, outputDir, segmentSeconds)) {
+                        writeManifest(sourceFile, outputDir, STATUS_PACKAGED);
+                        bytesRead.addAndGet(sourceFile.length());
+                        packaged.incrementAndGet();
+                        System.out.println("Packaged " + relative);
+                    } else {
+                        writeManifest(sourceFile, outputDir, STATUS_INCOMPATIBLE);
+                        incompatible.incrementAndGet();
+                        System.out.println("Not H.264/AAC, skipped: " + relative);
+                    }
+                } catch (IOException | FrameGrabber.Exception | FrameRecorder.Exception | RuntimeException e) {
+                    failed.incrementAndGet();
+                    System.err.println("Failed to package " + relative + ": " + e.getMessage());
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.println(String.format(Locale.ROOT,
+                "=== Packaged %d, up to date %d, incompatible %d, failed %d in %.1fs: %.2f files/s, %.1f MB/s ===",
+                packaged.get(), upToDate.get(), incompatible.get(), failed.get(), seconds,
+                packaged.get() / seconds, bytesRead.get() / seconds / (1024 * 1024)));
+    }
+
+    // 패킷 복사로 HLS 출력. H.264(+AAC) 가 아니면 false
+    private static boolean remux(File source, File outputDir, String segmentSeconds)
+            throws IOException, FrameGrabber.Exception, FrameRecorder.Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(source);
+        FFmpegFrameRecorder recorder = null;
+        try {
+            grabber.start();
+            boolean audio = grabber.getAudioChannels() > 0;
+            if (grabber.getVideoCodec() != AV_CODEC_ID_H264 || (audio && grabber.getAudioCodec() != AV_CODEC_ID_AAC)) {
+                return false;
+            }
+            clearOutput(outputDir);
+            recorder = new FFmpegFrameRecorder(new File(outputDir, PLAYLIST), grabber.getImageWidth(), grabber.getImageHeight(),
+                    grabber.getAudioChannels());
+            recorder.setFormat("hls");
+            recorder.setOption("hls_time", segmentSeconds);
+            recorder.setOption("hls_playlist_type", "vod");
+            recorder.setOption("hls_segment_filename", new File(outputDir, "segment-%05d.ts").getPath());
+            recorder.start(grabber.getFormatContext()); // 입력 스트림 파라미터를 그대로 복사 (재인코딩 없음)
+            AVPacket packet;
+            while ((packet = grabber.grabPacket()) != null) {
+                if (packet.size() > 0) recorder.recordPacket(packet);
+            }
+            return true;
+        } finally {
+            if (recorder != null) {
+                recorder.stop();
+                recorder.release();
+            }
+            grabber.stop();
+            grabber.release();
+        }
+    }
+
+    private static boolean isUpToDate(File source, File outputDir) {
+        File manifest = new File(outputDir, MANIFEST);
+        if (!manifest.isFile()) return false;
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifest.toPath())) {
+            properties.load(in);
+        } catch (IOException e) {
+            return false;
+        }
+        boolean sameSource = String.valueOf(source.length()).equals(properties.getProperty("sourceLength"))
+                && String.valueOf(source.lastModified()).equals(properties.getProperty("sourceLastModified"));
+        if (!sameSource) return false;
+        return STATUS_INCOMPATIBLE.equals(properties.getProperty("status")) || new File(outputDir, PLAYLIST).isFile();
+    }
+
+    private static void writeManifest(File source, File outputDir, String status) throws IOException {
+        Files.createDirectories(outputDir.toPath());
+        Properties properties = new Properties();
+        properties.setProperty("source", source.getAbsolutePath());
+        properties.setProperty("sourceLength", String.valueOf(source.length()));
+        properties.setProperty("sourceLastModified", String.valueOf(source.lastModified()));
+        properties.setProperty("status", status);
+        try (OutputStream out = Files.newOutputStream(new File(outputDir, MANIFEST).toPath())) {
+            properties.store(out, "HlsBatchPackager");
+        }
+    }
+
+    // 원본이 바뀌어 다시 만들 때 이전 세그먼트/플레이리스트/manifest 제거 (세그먼트 수가 줄어든 경우 대비)
+    private static void clearOutput(File outputDir) throws IOException {
+        Files.createDirectories(outputDir.toPath());
+        File[] previous = outputDir.listFiles((dir, name) -> name.endsWith(".ts") || name.equals(PLAYLIST) || name.equals(MANIFEST));
+        if (previous == null) return;
+        for (File file : previous) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private static boolean isRecording(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".mp4") || name.endsWith(".m4v") || name.endsWith(".mov");
+    }
+}
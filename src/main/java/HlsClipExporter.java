@@ -0,0 +1,336 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_clone;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avutil.AV_NOPTS_VALUE;
+
+// 이미 만들어진 HLS 세그먼트(.ts)에서 구간을 잘라 MP4로 내보내는 엔드포인트 (재인코딩 없음)
+// GET /export?stream=<키>&from=<시각>&to=<시각>
+//   stream: 생략하면 기본 스트림, 그 외 /<키>/ 디렉토리의 스트림
+//   from/to: epoch 초 또는 로컬 시각(2026-10-19T10:15:00)
+// - 세그먼트 파일명(segment-yyyyMMdd-HHmmss-NNNN.ts, NNNN 은 시퀀스 번호)의 시작 시각으로 구간을 덮는 세그먼트를 찾아 차례로 읽음
+//   (파이프라인이 재시작하면 타임스탬프도 새로 시작하므로 세그먼트마다 타임스탬프를 다시 매김)
+// - from 직전 키프레임부터 to 직후 키프레임 전까지 패킷을 그대로 복사 (GOP 하나만 메모리에 보관)
+// - 출력은 fragmented MP4 로 만들면서 바로 chunked 응답으로 전송 (파일 전체를 메모리/디스크에 두지 않음)
+public class HlsClipExporter {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final DateTimeFormatter SEGMENT_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int SEGMENT_TIME_LENGTH = "yyyyMMdd-HHmmss".length();
+    private static final long MAX_EXPORT_SECONDS = 6 * 3600;
+    private static final long RETENTION_CHECK_INTERVAL_MS = 30000;
+    private static final long MPEG_TS_CLOCK = 90000;
+    private static final long TIMESTAMP_WRAP = 1L << 33;
+    private static final long CONTINUITY_TOLERANCE = 2 * MPEG_TS_CLOCK; // 앞 세그먼트 끝에서 이만큼 안이면 같은 타임라인
+
+    private final File hlsBaseDirectory;
+    private Timer retentionTimer;
+
+    public HlsClipExporter(File hlsBaseDirectory) {
+        this.hlsBaseDirectory = hlsBaseDirectory;
+    }
+
+    public HttpHandler handler() {
+        return this::handleExport;
+    }
+
+    // 보관 기간이 지난 세그먼트 삭제 (HlsPipeline.setSegmentRetentionSeconds 로 먹서가 지우지 않게 한 경우)
+    // 기본 디렉토리와 스트림별 하위 디렉토리의 segment-*.ts 만 대상, 파일 수정 시각 기준
+    public synchronized void startRetentionCleanup(long retentionSeconds) {
+        long retentionMs = retentionSeconds * 1000;
+        retentionTimer = new Timer("HlsRetentionCleanup", true);
+        retentionTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                long cutoff = System.currentTimeMillis() - retentionMs;
+                int deleted = deleteSegmentsOlderThan(hlsBaseDirectory, cutoff);
+                File[] streamDirectories = hlsBaseDirectory.listFiles(File::isDirectory);
+                if (streamDirectories != null) {
+                    for (File directory : streamDirectories) deleted += deleteSegmentsOlderThan(directory, cutoff);
+                }
+                if (deleted > 0) PipelineMetrics.add("export.retention_deleted", deleted);
+            }
+        }, RETENTION_CHECK_INTERVAL_MS, RETENTION_CHECK_INTERVAL_MS);
+    }
+
+    public synchronized void stopRetentionCleanup() {
+        if (retentionTimer != null) {
+            retentionTimer.cancel();
+            retentionTimer = null;
+        }
+    }
+
+    private static int deleteSegmentsOlderThan(File directory, long cutoffMs) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(".ts"));
+        if (files == null) return 0;
+        int deleted = 0;
+        for (File file : files) {
+            if (file.lastModified() < cutoffMs && file.delete()) deleted++;
+        }
+        return deleted;
+    }
+
+    private void handleExport(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String stream = params.getOrDefault("stream", "");
+        long fromEpoch;
+        long toEpoch;
+        try {
+            fromEpoch = parseTime(params.get("from"));
+            toEpoch = parseTime(params.get("to"));
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, "Invalid from/to: " + e.getMessage());
+            return;
+        }
+        if (!stream.matches("[A-Za-z0-9_-]*") || toEpoch <= fromEpoch || toEpoch - fromEpoch > MAX_EXPORT_SECONDS) {
+            sendError(exchange, 400, "Expected stream=<key>&from=<time>&to=<time> (to > from, at most " + MAX_EXPORT_SECONDS / 3600 + "h)");
+            return;
+        }
+        File streamDirectory = stream.isEmpty() ? hlsBaseDirectory : new File(hlsBaseDirectory, stream);
+        List<Segment> segments = coveringSegments(streamDirectory, fromEpoch, toEpoch);
+        if (segments.isEmpty()) {
+            sendError(exchange, 404, "No HLS segments cover the requested range (check -Dhls.retention.minutes)");
+            return;
+        }
+
+        String fileName = (stream.isEmpty() ? "default" : stream) + "-" + fromEpoch + "-" + toEpoch + ".mp4";
+        exchange.getResponseHeaders().set("Content-Type", "video/mp4");
+        exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        exchange.sendResponseHeaders(200, 0); // chunked: 만들어지는 대로 전송
+        long startNanos = System.nanoTime();
+        try (OutputStream body = exchange.getResponseBody()) {
+            long startOffsetMicros = (fromEpoch - segments.get(0).startEpoch) * 1_000_000L;
+            long endOffsetMicros = (toEpoch - segments.get(0).startEpoch) * 1_000_000L;
+            long packets = remux(segments, body, startOffsetMicros, endOffsetMicros);
+            System.out.println("[Export] " + fileName + ": " + segments.size() + " segments, " + packets + " packets in "
+                    + (System.nanoTime() - startNanos) / 1_000_000 + "ms");
+            PipelineMetrics.increment("export.requests");
+        } catch (FrameGrabber.Exception | FrameRecorder.Exception e) {
+            // 헤더를 이미 보냈으므로 연결을 끊는 것으로 실패를 알림
+            System.err.println("[Export] " + fileName + " failed: " + e.getMessage());
+            PipelineMetrics.increment("export.errors");
+        }
+    }
+
+    // from 이전에 시작한 마지막 세그먼트부터 to 이전에 시작한 세그먼트까지
+    private static List<Segment> coveringSegments(File directory, long fromEpoch, long toEpoch) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(".ts"));
+        if (files == null) return new ArrayList<>();
+        List<Segment> all = new ArrayList<>();
+        for (File file : files) {
+            // "<시각>-<번호>" (번호가 없는 이전 이름 규칙도 허용)
+            String name = file.getName().substring(SEGMENT_PREFIX.length(), file.getName().length() - ".ts".length());
+            if (name.length() < SEGMENT_TIME_LENGTH) continue;
+            String suffix = name.substring(SEGMENT_TIME_LENGTH);
+            if (!suffix.isEmpty() && !suffix.matches("-\\d+")) continue;
+            try {
+                long startEpoch = LocalDateTime.parse(name.substring(0, SEGMENT_TIME_LENGTH), SEGMENT_TIME_FORMAT)
+                        .atZone(ZoneId.systemDefault()).toEpochSecond();
+                long sequence = suffix.isEmpty() ? -1 : Long.parseLong(suffix.substring(1));
+                all.add(new Segment(file, startEpoch, sequence));
+            } catch (DateTimeParseException e) {
+                // 다른 이름 규칙의 파일은 무시
+            }
+        }
+        // 같은 초에 시작한 세그먼트는 시퀀스 번호 순 (번호가 4자리를 넘으면 문자열 순서와 다르므로 숫자로 비교)
+        all.sort((a, b) -> a.startEpoch != b.startEpoch ? Long.compare(a.startEpoch, b.startEpoch) : Long.compare(a.sequence, b.sequence));
+        List<Segment> covering = new ArrayList<>();
+        for (int i = 0; i < all.size(); i++) {
+            Segment segment = all.get(i);
+            long nextStart = i + 1 < all.size() ? all.get(i + 1).startEpoch : Long.MAX_VALUE;
+            if (nextStart > fromEpoch && segment.startEpoch < toEpoch) covering.add(segment);
+        }
+        return covering;
+    }
+
+    // 세그먼트마다 따로 열어서 패킷을 복사. 출력 타임스탬프(90kHz)는 첫 세그먼트 파일명 시각을 0 으로 하는 하나의 타임라인으로 다시 매김
+    // - 세그먼트 안: 그 세그먼트 첫 DTS 기준 상대값 (33비트 wrap 보정)
+    // - 앞 세그먼트의 마지막 DTS 에서 이어지면(CONTINUITY_TOLERANCE 이내) 그대로 연결
+    // - 이어지지 않으면(파이프라인 재시작, 재연결, 부하 단계 변경으로 타임스탬프가 새로 시작) 파일명 시작 시각에 맞춤
+    private static long remux(List<Segment> segments, OutputStream body, long startOffsetMicros, long endOffsetMicros)
+            throws FrameGrabber.Exception, FrameRecorder.Exception {
+        // recordPacket() 은 start() 에 넘긴 입력 컨텍스트의 스트림 time_base 를 쓰므로 첫 세그먼트 grabber 는 끝까지 열어둠
+        FFmpegFrameGrabber first = openSegment(segments.get(0));
+        FFmpegFrameRecorder recorder = null;
+        List<AVPacket> pendingGop = new ArrayList<>();
+        long written = 0;
+        try {
+            int videoStream = first.getVideoStream();
+            int streamCount = first.getFormatContext().nb_streams();
+            recorder = new FFmpegFrameRecorder(body, first.getImageWidth(), first.getImageHeight(), first.getAudioChannels());
+            recorder.setFormat("mp4");
+            // 출력이 seek 불가능한 스트림이므로 moov를 앞에 두고 키프레임마다 fragment
+            recorder.setOption("movflags", "frag_keyframe+empty_moov+default_base_moof");
+            recorder.start(first.getFormatContext());
+
+            long[] lastOutputDts = new long[streamCount];
+            Arrays.fill(lastOutputDts, Long.MIN_VALUE);
+            long previousSourceDts = AV_NOPTS_VALUE; // 앞 세그먼트 마지막 패킷의 원래 DTS
+            long previousOutputDts = 0;               // 그 패킷의 출력 DTS
+            boolean started = false;
+            boolean finished = false;
+            for (int i = 0; i < segments.size() && !finished; i++) {
+                Segment segment = segments.get(i);
+                FFmpegFrameGrabber grabber = i == 0 ? first : openSegment(segment);
+                try {
+                    long segmentFirstDts = AV_NOPTS_VALUE;
+                    long segmentOutputStart = 0;
+                    AVPacket packet;
+                    while ((packet = grabber.grabPacket()) != null) {
+                        if (packet.size() <= 0 || packet.dts() == AV_NOPTS_VALUE || packet.stream_index() >= streamCount) continue;
+                        if (segmentFirstDts == AV_NOPTS_VALUE) {
+                            segmentFirstDts = packet.dts();
+                            segmentOutputStart = segmentOutputStart(segment, segments.get(0), packet.dts(), previousSourceDts, previousOutputDts);
+                        }
+                        // 출력 DTS: 세그먼트 안에서는 원래 간격 유지, 스트림별로 단조 증가 보장
+                        long outputDts = segmentOutputStart + wrapDelta(packet.dts() - segmentFirstDts);
+                        outputDts = Math.max(outputDts, lastOutputDts[packet.stream_index()] + 1);
+                        long ptsOffset = packet.pts() == AV_NOPTS_VALUE ? 0 : wrapDelta(packet.pts() - packet.dts());
+                        previousSourceDts = packet.dts();
+                        previousOutputDts = outputDts;
+                        lastOutputDts[packet.stream_index()] = outputDts;
+                        packet.dts(outputDts);
+                        packet.pts(outputDts + ptsOffset);
+
+                        long offsetMicros = outputDts * 100 / 9; // MPEG-TS 의 time_base 는 모든 스트림이 1/90000
+                        boolean videoKeyFrame = packet.stream_index() == videoStream && (packet.flags() & AV_PKT_FLAG_KEY) != 0;
+                        if (!started) {
+                            // from 이전 구간: 현재 GOP만 보관했다가 from에 도달하면 그 GOP의 키프레임부터 출력
+                            if (videoKeyFrame) freePackets(pendingGop);
+                            if (videoKeyFrame || !pendingGop.isEmpty()) pendingGop.add(av_packet_clone(packet));
+                            if (offsetMicros >= startOffsetMicros && !pendingGop.isEmpty()) {
+                                for (AVPacket buffered : pendingGop) {
+                                    recorder.recordPacket(buffered);
+                                    written++;
+                                }
+                                freePackets(pendingGop);
+                                started = true;
+                            }
+                            continue;
+                        }
+                        if (videoKeyFrame && offsetMicros >= endOffsetMicros) { // to 이후 첫 키프레임에서 끝
+                            finished = true;
+                            break;
+                        }
+                        recorder.recordPacket(packet);
+                        written++;
+                    }
+                } finally {
+                    if (grabber != first) {
+                        grabber.stop();
+                        grabber.release();
+                    }
+                }
+            }
+            return written;
+        } finally {
+            freePackets(pendingGop);
+            if (recorder != null) {
+                recorder.stop();
+                recorder.release();
+            }
+            first.stop();
+            first.release();
+        }
+    }
+
+    private static FFmpegFrameGrabber openSegment(Segment segment) throws FrameGrabber.Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(segment.file);
+        grabber.setFormat("mpegts");
+        try {
+            grabber.start();
+        } catch (FrameGrabber.Exception e) {
+            grabber.release();
+            throw e;
+        }
+        return grabber;
+    }
+
+    // 세그먼트 첫 패킷의 출력 DTS (90kHz, 첫 세그먼트 파일명 시각 = 0)
+    private static long segmentOutputStart(Segment segment, Segment firstSegment, long firstDts, long previousSourceDts, long previousOutputDts) {
+        if (previousSourceDts == AV_NOPTS_VALUE) return 0;
+        long gap = wrapDelta(firstDts - previousSourceDts);
+        if (Math.abs(gap) <= CONTINUITY_TOLERANCE) return previousOutputDts + gap;
+        // 타임스탬프가 새로 시작함: 파일명 시각(초 단위)에 맞추되 앞 출력보다 뒤로 가지 않게
+        return Math.max((segment.startEpoch - firstSegment.startEpoch) * MPEG_TS_CLOCK, previousOutputDts + 1);
+    }
+
+    // 33비트 MPEG-TS 타임스탬프 차이를 부호 있는 값으로 (wrap 을 넘어간 차이 보정)
+    private static long wrapDelta(long delta) {
+        delta &= TIMESTAMP_WRAP - 1;
+        return delta >= TIMESTAMP_WRAP / 2 ? delta - TIMESTAMP_WRAP : delta;
+    }
+
+    private static void freePackets(List<AVPacket> packets) {
+        for (AVPacket packet : packets) {
+            av_packet_free(packet);
+        }
+        packets.clear();
+    }
+
+    private static long parseTime(String value) {
+        if (value == null || value.isEmpty()) throw new IllegalArgumentException("missing");
+        if (value.matches("\\d+")) return Long.parseLong(value);
+        try {
+            return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(value);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) return params;
+        for (String pair : rawQuery.split("&")) {
+            String[] keyValue = Arrays.copyOf(pair.split("=", 2), 2);
+            params.put(URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8),
+                    keyValue[1] != null ? URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8) : "");
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        final long startEpoch;
+        final long sequence; // 파일명의 미디어 시퀀스 번호 (없으면 -1)
+
+        Segment(File file, long startEpoch, long sequence) {
+            this.file = file;
+            this.startEpoch = startEpoch;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.*;
+
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 소스 하나(RTSP pull 또는 RTMP listen)를 HLS 출력 하나로 변환하는 파이프라인
+// RTSPHlsConverterServer가 스트림마다 하나씩 만들어서 실행한다.
+public class HlsPipeline {
+
+    // 변환 루프에서 받은 프레임을 추가로 처리하는 곳 (MJPEG 미리보기, HTTP-FLV 등)
+    // timestamp: TimestampNormalizer 가 정규화한 타임스탬프 (HLS 에 기록한 값, DROP 이면 기록하지 않은 프레임)
+    // 변환 스레드에서 호출되므로 무거운 작업은 복사본을 넘겨 다른 스레드에서 할 것
+    public interface FrameListener {
+        void onFrame(Frame frame, FFmpegFrameGrabber source, long timestamp);
+    }
+
+    // 세그먼트 파일명 규칙 (strftime=1): 시작 시각 + 세그먼트 번호. HlsClipExporter 가 이 시각으로 구간을 찾음
+    // 시각은 초 단위 로컬 시각이라 같은 초에 재시작(append_list)하거나 서머타임이 끝나면 겹치므로
+    // second_level_segment_index 로 미디어 시퀀스 번호(%%04d)를 붙임 (append_list 로 이어 쓰면 번호도 이어짐)
+    static final String SEGMENT_FILENAME_PATTERN = "segment-%Y%m%d-%H%M%S-%%04d.ts";
+    static final String SEGMENT_NAME_FLAGS = "+second_level_segment_index";
+
+    private final String streamId;
+    private final String sourceUrl;
+    private final String hlsM3u8AbsolutePath;
+    private final String hlsSegmentDuration;
+    private final String hlsListSize;
+    private final Map<String, String> grabberOptions = new LinkedHashMap<>();
+    private final List<FrameListener> frameListeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private Thread runner; // guarded by this. run() 을 실행 중인 스레드
+
+    private FFmpegFrameGrabber grabber;
+    private FFmpegFrameRecorder recorder;
+    private volatile long framesProcessed = 0;
+    private long segmentRetentionSeconds = 0; // 0: 플레이리스트에서 빠진 세그먼트는 바로 삭제
+    private boolean loadGovernorEnabled = false;
+    private String multicastUrl; // null: HLS만 출력
+    private double staticSceneMinFps = 0; // 0: 정지 장면 감지 안 함 (항상 소스 fps로 인코딩)
+    private ProbeCache.Entry probed; // 이번 연결의 probe 결과 (최소 probe 시 fps 보정용)
+    private long connectStartNanos;
+    private LoadGovernor.Level appliedRecorderLevel = LoadGovernor.Level.NORMAL;
+
+    public HlsPipeline(String streamId, String sourceUrl, String hlsM3u8AbsolutePath, String hlsSegmentDuration, String hlsListSize) {
+        this.streamId = streamId;
+        this.sourceUrl = sourceUrl;
+        this.hlsM3u8AbsolutePath = hlsM3u8AbsolutePath;
+        this.hlsSegmentDuration = hlsSegmentDuration;
+        this.hlsListSize = hlsListSize;
+    }
+
+    public void setGrabberOption(String key, String value) {
+        grabberOptions.put(key, value);
+    }
+
+    // 0보다 크면 플레이리스트에서 빠진 세그먼트도 지우지 않음 (클립 내보내기용, 삭제는 HlsClipExporter의 정리 타이머가 담당)
+    public void setSegmentRetentionSeconds(long segmentRetentionSeconds) {
+        this.segmentRetentionSeconds = segmentRetentionSeconds;
+    }
+
+    // 실시간을 따라가지 못하면 preset/fps/해상도를 단계적으로 낮춤 (LoadGovernor)
+    public void setLoadGovernorEnabled(boolean loadGovernorEnabled) {
+        this.loadGovernorEnabled = loadGovernorEnabled;
+    }
+
+    // 같은 인코딩 결과를 MPEG-TS로 UDP 멀티캐스트에도 내보냄 (tee 먹서, 예: udp://239.255.10.1:5000?ttl=1&pkt_size=1316)
+    // 멀티캐스트 쪽 오류는 무시하고 HLS 출력은 계속 (onfail=ignore)
+    public void setMulticastOutput(String multicastUrl) {
+        this.multicastUrl = multicastUrl;
+    }
+
+    // 정지 장면에서는 프레임을 건너뛰고 최소 minRefreshFps 로만 인코딩 (VFR), 세그먼트 경계마다 키프레임 강제
+    public void setStaticSceneDetection(double minRefreshFps) {
+        this.staticSceneMinFps = minRefreshFps;
+    }
+
+    public void addFrameListener(FrameListener listener) {
+        frameListeners.add(listener);
+    }
+
+    public String getStreamId() { return streamId; }
+    public String getSourceUrl() { return sourceUrl; }
+    public boolean isRunning() { return running.get(); }
+    public long getFramesProcessed() { return framesProcessed; }
+    public long getSegmentRetentionSeconds() { return segmentRetentionSeconds; }
+
+    // 소스가 끝나거나(null 프레임) stop()이 호출될 때까지 블록. 종료 시 grabber/recorder 해제
+    // 네이티브 grabber/recorder 는 이 스레드만 해제함 (다른 스레드가 해제하면 grab()/record() 중인 객체를 해제하게 됨)
+    public void run() throws FrameGrabber.Exception, FrameRecorder.Exception {
+        synchronized (this) {
+            if (runner != null) {
+                throw new IllegalStateException("[" + streamId + "] Pipeline is already running on " + runner.getName());
+            }
+            runner = Thread.currentThread();
+        }
+        running.set(true);
+        try {
+            startGrabber();
+            appliedRecorderLevel = LoadGovernor.Level.NORMAL;
+            startRecorder(LoadGovernor.Level.NORMAL, false);
+            convert();
+        } finally {
+            running.set(false);
+            release();
+            synchronized (this) { runner = null; }
+        }
+    }
+
+    // 루프 종료만 요청하고 바로 반환. 해제는 run() 스레드가 현재 프레임을 끝낸 뒤 finally 에서 함
+    // grab() 안의 네이티브 읽기는 인터럽트로 깨어나지 않으므로 소스 타임아웃(stimeout 등)이 종료 지연의 상한
+    public void stop() {
+        running.set(false);
+        Thread thread;
+        synchronized (this) { thread = runner; }
+        if (thread != null) thread.interrupt();
+    }
+
+    private void startGrabber() throws FrameGrabber.Exception {
+        System.out.println("[" + streamId + "] Initializing grabber for: " + sourceUrl);
+        FFmpegFrameGrabber newGrabber = new FFmpegFrameGrabber(sourceUrl);
+        synchronized (this) { this.grabber = newGrabber; }
+        connectStartNanos = System.nanoTime();
+        // 저지연 플래그 + 캐시된 probe 결과로 probe 최소화 (RTMP listen 모드에서는 퍼블리셔가 접속할 때까지 여기서 대기)
+        probed = ProbeCache.start(newGrabber, sourceUrl, grabberOptions);
+        long probeMs = (System.nanoTime() - connectStartNanos) / 1_000_000;
+        PipelineMetrics.setGauge("startup." + streamId + ".probe_ms", probeMs);
+        FFmpegFrameGrabber grabber = newGrabber;
+        System.out.println("[" + streamId + "] Grabber started in " + probeMs + "ms. Source Info:");
+        System.out.println("  Resolution: " + grabber.getImageWidth() + "x" + grabber.getImageHeight());
+        System.out.println("  Frame Rate: " + grabber.getFrameRate());
+        System.out.println("  Video Codec: " + avcodec.avcodec_get_name(grabber.getVideoCodec()).getString() + " (ID: " + grabber.getVideoCodec() + ")");
+        System.out.println("  Pixel Format: " + avutil.av_get_pix_fmt_name(grabber.getPixelFormat()).getString());
+        System.out.println("  Audio Channels: " + grabber.getAudioChannels());
+        if (grabber.getAudioChannels() > 0) {
+            System.out.println("  Audio Codec: " + avcodec.avcodec_get_name(grabber.getAudioCodec()).getString() + " (ID: " + grabber.getAudioCodec() + ")");
+            System.out.println("  Sample Rate: " + grabber.getSampleRate());
+        }
+    }
+
+    // continuing: 부하 단계 변경으로 레코더만 다시 시작하는 경우 (기존 플레이리스트에 이어서 쓰고 discontinuity 표시)
+    private void startRecorder(LoadGovernor.Level loadLevel, boolean continuing) throws FrameRecorder.Exception {
+        FFmpegFrameGrabber grabber = this.grabber;
+        System.out.println("[" + streamId + "] Initializing HLS recorder. Output M3U8: " + hlsM3u8AbsolutePath);
+        int scale = loadLevel.compareTo(LoadGovernor.Level.HALF_RESOLUTION) >= 0 ? 2 : 1;
+        // 입력 프레임 크기가 달라도 FFmpegFrameRecorder가 sws_scale로 맞춰줌 (YUV420P는 짝수 크기 필요)
+        Map<String, String> hlsOptions = hlsOptions(continuing);
+        boolean tee = multicastUrl != null;
+        // tee: 인코딩은 한 번, 먹서만 HLS + MPEG-TS/UDP 두 개 (HLS 옵션은 tee 슬레이브 옵션으로 전달)
+        String output = tee ? teeOutput(hlsOptions) : hlsM3u8AbsolutePath;
+        FFmpegFrameRecorder newRecorder = new FFmpegFrameRecorder(output, (grabber.getImageWidth() / scale) & ~1,
+                (grabber.getImageHeight() / scale) & ~1, grabber.getAudioChannels());
+
+        newRecorder.setFormat(tee ? "tee" : "hls");
+        if (tee) System.out.println("[" + streamId + "] Multicast MPEG-TS output: " + multicastUrl);
+
+        // --- 코덱 설정 시작 ---
+        boolean reencodeVideo = false;
+        boolean reencodeAudio = false;
+
+        // 비디오 코덱: H.264가 아니거나, 문제가 있는 경우 재인코딩 (HLS는 H.264를 선호)
+        if (grabber.getVideoCodec() == avcodec.AV_CODEC_ID_H264) {
+            newRecorder.setVideoCodec(avcodec.AV_CODEC_ID_H264); // 코덱 복사 시도
+            // newRecorder.setVideoCodecName("h264_videotoolbox"); // macOS에서 하드웨어 가속 시도 (옵션)
+            System.out.println("Attempting to copy video codec (H.264) from source.");
+        } else {
+            reencodeVideo = true;
+            newRecorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+            newRecorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P); // H.264 재인코딩 시 표준 픽셀 포맷
+            if (grabber.getVideoBitrate() > 0) newRecorder.setVideoBitrate(grabber.getVideoBitrate()); else newRecorder.setVideoBitrate(2000000); // 2Mbps
+            System.out.println("Source video codec is not H.264 (" + avcodec.avcodec_get_name(grabber.getVideoCodec()).getString() + "). Re-encoding to H.264.");
+        }
+
+        if (grabber.getFrameRate() > 0 && grabber.getFrameRate() < 200) {
+            newRecorder.setFrameRate(grabber.getFrameRate());
+        } else if (probed != null && probed.getFrameRate() > 0 && probed.getFrameRate() < 200) {
+            newRecorder.setFrameRate(probed.getFrameRate()); // 최소 probe로 fps를 못 얻었으면 캐시 값 사용
+        } else if (reencodeVideo) { // 재인코딩 시에는 프레임률 명시
+            newRecorder.setFrameRate(30);
+        }
+
+
+        // 오디오 코덱: AAC가 아니거나, 문제가 있는 경우 재인코딩 (HLS는 AAC를 선호)
+        if (grabber.getAudioChannels() > 0) {
+            if (grabber.getAudioCodec() == avcodec.AV_CODEC_ID_AAC) {
+                newRecorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC); // 코덱 복사 시도
+                System.out.println("Attempting to copy audio codec (AAC) from source.");
+            } else {
+                reencodeAudio = true;
+                newRecorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+                if (grabber.getAudioBitrate() > 0) newRecorder.setAudioBitrate(grabber.getAudioBitrate()); else newRecorder.setAudioBitrate(128000); // 128kbps
+                System.out.println("Source audio codec is not AAC (" + avcodec.avcodec_get_name(grabber.getAudioCodec()).getString() + "). Re-encoding to AAC.");
+            }
+            if (grabber.getSampleRate() > 0) newRecorder.setSampleRate(grabber.getSampleRate());
+            newRecorder.setAudioChannels(grabber.getAudioChannels());
+        } else {
+            newRecorder.setAudioChannels(0); // 오디오 없음
+        }
+        if (staticSceneMinFps > 0) {
+            newRecorder.setVideoOption("forced-idr", "1"); // 세그먼트 경계에서 강제한 키프레임을 IDR 로 (세그먼트 단독 재생 가능)
+        }
+        if (loadLevel.compareTo(LoadGovernor.Level.FAST_PRESET) >= 0) {
+            newRecorder.setVideoOption("preset", "ultrafast");
+        }
+        // --- 코덱 설정 끝 ---
+
+        if (!tee) hlsOptions.forEach(newRecorder::setOption);
+
+        synchronized (this) { this.recorder = newRecorder; }
+        System.out.println("[" + streamId + "] Starting HLS recorder (FFmpeg)...");
+        newRecorder.start(); // 여기서 네이티브 리소스 할당 시작
+        System.out.println("[" + streamId + "] HLS recorder (FFmpeg) started. Converting stream...");
+    }
+
+    private void convert() throws FrameGrabber.Exception, FrameRecorder.Exception {
+        // 부하 단계 변경으로 레코더가 바뀌면 applyLoadLevel() 이 새 참조를 돌려줌
+        FFmpegFrameGrabber grabber = this.grabber;
+        FFmpegFrameRecorder recorder = this.recorder;
+        Frame frame;
+        long frameCount = 0;
+        long recordErrors = 0;
+        long frameNumber = 0; // JFR 이벤트 태그용 (기록 여부와 무관하게 grab 순서)
+        boolean firstVideoFrameSeen = false;
+        // 연결마다 새로 만듦: 재연결 후에도 0부터 단조 증가하는 타임스탬프로 기록
+        TimestampNormalizer normalizer = new TimestampNormalizer("timestamps." + streamId, recorder.getFrameRate());
+        LoadGovernor governor = loadGovernorEnabled ? new LoadGovernor("governor." + streamId) : null;
+        StaticSceneDetector sceneDetector = staticSceneMinFps > 0
+                ? new StaticSceneDetector("scene." + streamId, staticSceneMinFps, Long.parseLong(hlsSegmentDuration) * 1_000_000L)
+                : null;
+        while (running.get() && (frame = FrameStageEvent.grab(grabber, streamId, frameNumber)) != null) {
+            frameNumber++;
+            if (frame.image == null && frame.samples == null) { // 빈 프레임 스킵
+                continue;
+            }
+            if (!firstVideoFrameSeen && frame.image != null) {
+                firstVideoFrameSeen = true;
+                recordTimeToFirstFrame();
+            }
+            long timestamp = normalizer.normalize(frame.image != null, frame.timestamp, frame.keyFrame);
+            boolean skipped = governor != null && frame.image != null && !governor.shouldRecordVideo(frame.keyFrame);
+            long recordStartNanos = System.nanoTime();
+            if (!skipped && sceneDetector != null && frame.image != null && timestamp != TimestampNormalizer.DROP) {
+                skipped = !sceneDetector.shouldEncode(frame, timestamp);
+            }
+            if (timestamp != TimestampNormalizer.DROP && !skipped) {
+                FrameStageEvent recordEvent = FrameStageEvent.start();
+                try {
+                    recorder.setTimestamp(timestamp);
+                    if (sceneDetector != null && frame.image != null && sceneDetector.keyFrameDue(timestamp)) {
+                        RecorderTuning.recordKeyFrame(recorder, frame);
+                    } else {
+                        recorder.record(frame);
+                    }
+                    recordEvent.finish(FrameStageEvent.RECORD, streamId, frameNumber);
+                    frameCount++;
+                    framesProcessed = frameCount;
+                } catch (FrameRecorder.Exception e) {
+                    // 정규화 후에도 거부되는 프레임: 조용히 버리지 않고 집계 (로그는 100번에 한 번)
+                    PipelineMetrics.increment("timestamps." + streamId + ".record_errors");
+                    if (recordErrors++ % 100 == 0) {
+                        System.err.println("[" + streamId + "] Error recording frame " + frameCount + " (" + recordErrors + " so far): " + e.getMessage());
+                    }
+                }
+            }
+            if (governor != null) {
+                long nowMs = System.currentTimeMillis();
+                long busyMicros = (System.nanoTime() - recordStartNanos) / 1000;
+                if (frame.image == null) {
+                    governor.addBusy(nowMs, busyMicros);
+                } else if (timestamp != TimestampNormalizer.DROP && governor.onVideoFrame(nowMs, timestamp, busyMicros)) {
+                    recorder = applyLoadLevel(governor);
+                }
+            }
+            FrameStageEvent listenerEvent = FrameStageEvent.start();
+            for (FrameListener listener : frameListeners) {
+                listener.onFrame(frame, grabber, timestamp);
+            }
+            listenerEvent.finish(FrameStageEvent.LISTENERS, streamId, frameNumber);
+            // 수동으로 Frame 객체 내 네이티브 버퍼 해제 (주의해서 사용, recorder.record가 소유권을 가져갈 수 있음)
+            // JavaCV의 Frame은 네이티브 메모리를 가리키므로, record 후 명시적 해제가 필요없을 수도 있지만,
+            // 매우 긴 실행에서 누수를 의심한다면 고려. 단, record가 비동기 처리 시 문제될 수 있음.
+            // 현재로서는 record()가 프레임 처리를 완료한다고 가정.
+        }
+        System.out.println("[" + streamId + "] Exiting HLS recording loop. Total frames processed: " + frameCount + " (running flag: " + running.get() + ").");
+    }
+
+    private Map<String, String> hlsOptions(boolean continuing) {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("hls_time", hlsSegmentDuration);
+        options.put("hls_list_size", hlsListSize);
+        String hlsFlags = (segmentRetentionSeconds > 0 ? "omit_endlist" : "delete_segments+omit_endlist") + SEGMENT_NAME_FLAGS;
+        options.put("hls_flags", continuing ? hlsFlags + "+append_list+discont_start" : hlsFlags);
+        options.put("strftime", "1");
+        String segmentPathPattern = Paths.get(hlsM3u8AbsolutePath).getParent().resolve(SEGMENT_FILENAME_PATTERN).toString();
+        System.out.println("HLS segment path pattern for recorder: " + segmentPathPattern);
+        options.put("hls_segment_filename", segmentPathPattern);
+        return options;
+    }
+
+    // "[f=hls:옵션=값:...]<m3u8>|[f=mpegts:onfail=ignore]<udp url>"
+    // tee 먹서는 두 단계로 토큰을 나눔 (FFmpeg av_get_token 규칙, '\' 이스케이프):
+    // 1) 전체 문자열을 '|' 로 슬레이브마다 나눔  2) 슬레이브의 [] 안 옵션 값을 ':' 와 ']' 로 나눔
+    // 그래서 옵션 값은 두 번, 파일명/URL 은 한 번 이스케이프 (Windows 경로의 'C:\', 값 안의 ':' 도 그대로 전달됨)
+    private String teeOutput(Map<String, String> hlsOptions) {
+        StringBuilder hlsSlave = new StringBuilder("[f=hls");
+        hlsOptions.forEach((key, value) -> hlsSlave.append(':').append(key).append('=').append(escapeTee(value, ":]")));
+        hlsSlave.append(']').append(hlsM3u8AbsolutePath);
+        return escapeTee(hlsSlave.toString(), "|") + "|" + escapeTee("[f=mpegts:onfail=ignore]" + multicastUrl, "|");
+    }
+
+    // av_get_token 이 구분자로 보는 문자와 이스케이프/따옴표 문자 앞에 '\'
+    private static String escapeTee(String value, String delimiters) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '\'' || delimiters.indexOf(c) >= 0) escaped.append('\\');
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    // 단계가 바뀌면 필요한 만큼만 적용: preset/해상도는 레코더 재시작, 키프레임 전용은 디코더 skip_frame
+    private FFmpegFrameRecorder applyLoadLevel(LoadGovernor governor) throws FrameRecorder.Exception {
+        LoadGovernor.Level level = governor.getLevel();
+        if (!running.get()) return this.recorder; // stop() 중이면 재시작하지 않음
+        System.out.println("[" + streamId + "] Load governor -> " + level + " (backlog " + governor.getBacklogMicros() / 1000
+                + "ms, encode utilization " + Math.round(governor.getUtilization() * 100) + "%)");
+        boolean keyFramesOnly = level.compareTo(LoadGovernor.Level.KEYFRAMES_ONLY) >= 0;
+        RecorderTuning.setDecoderSkipFrame(grabber, keyFramesOnly ? avcodec.AVDISCARD_NONKEY : avcodec.AVDISCARD_DEFAULT);
+        if (recorderLevel(level) != recorderLevel(appliedRecorderLevel)) {
+            stopRecorder();
+            startRecorder(recorderLevel(level), true);
+            PipelineMetrics.increment("governor." + streamId + ".recorder_restarts");
+        }
+        appliedRecorderLevel = level;
+        return this.recorder;
+    }
+
+    // 레코더 설정(preset, 해상도)에 영향을 주는 단계만 남김 (HALF_FPS/KEYFRAMES_ONLY 는 재시작 없이 적용)
+    private static LoadGovernor.Level recorderLevel(LoadGovernor.Level level) {
+        if (level.compareTo(LoadGovernor.Level.HALF_RESOLUTION) >= 0) return LoadGovernor.Level.HALF_RESOLUTION;
+        if (level.compareTo(LoadGovernor.Level.FAST_PRESET) >= 0) return LoadGovernor.Level.FAST_PRESET;
+        return LoadGovernor.Level.NORMAL;
+    }
+
+    // 연결 시작 ~ 첫 비디오 프레임 디코딩까지 (연결마다 기록)
+    private void recordTimeToFirstFrame() {
+        long timeToFirstFrameMs = (System.nanoTime() - connectStartNanos) / 1_000_000;
+        PipelineMetrics.setGauge("startup." + streamId + ".time_to_first_frame_ms", timeToFirstFrameMs);
+        LatencyHistogram.get("startup." + streamId + ".time_to_first_frame").record(timeToFirstFrameMs);
+        System.out.println("[" + streamId + "] Time to first frame: " + timeToFirstFrameMs + "ms");
+    }
+
+    private synchronized void release() {
+        stopRecorder();
+        if (grabber != null) {
+            try {
+                grabber.stop();     // 그래버 중지
+                grabber.release();  // 네이티브 리소스 해제
+                System.out.println("[" + streamId + "] Grabber stopped and released.");
+            } catch (FrameGrabber.Exception e) {
+                System.err.println("[" + streamId + "] Error stopping grabber: " + e.getMessage());
+            } finally {
+                grabber = null; // GC 대상이 되도록 명시적 null 할당
+            }
+        }
+    }
+
+    private synchronized void stopRecorder() {
+        if (recorder != null) {
+            try {
+                recorder.stop();    // 내부 버퍼 플러시 및 파일 마무리
+                recorder.release(); // 네이티브 리소스 해제
+                System.out.println("[" + streamId + "] HLS recorder stopped and released.");
+            } catch (FrameRecorder.Exception e) {
+                System.err.println("[" + streamId + "] Error stopping HLS recorder: " + e.getMessage());
+            } finally {
+                recorder = null; // GC 대상이 되도록 명시적 null 할당
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 저장된 동영상 파일을 HLS VOD 로 변환하는 오프라인 변환기 (GOP 단위 병렬)
+// - KeyframeIndex 로 키프레임 위치를 구해서 segmentSeconds 이상 간격의 키프레임마다 청크로 나눔
+// - 청크 하나 = HLS 세그먼트 하나: 청크마다 독립된 grabber(직전 키프레임으로 seek) + 인코더로 segment-NNNNN.ts 를 만듦
+//   청크들을 ForkJoinPool 에서 코어 수만큼 동시에 변환 (디코더/인코더는 청크 안에서 스레드 1개 -> 코어 수에 거의 비례)
+// - 원본 타임스탬프를 그대로 setTimestamp() 하므로 세그먼트가 바뀌어도 PTS 가 이어짐 (각 청크는 IDR 로 시작)
+// - 오디오는 청크로 나누면 AAC 프라이밍 때문에 경계마다 끊기므로 별도 오디오 렌디션(audio.m3u8)으로 한 번에 인코딩하고
+//   master.m3u8 에서 비디오(stream.m3u8)와 묶음. 오디오가 없으면 stream.m3u8 만 만듦
+// - 프로파일은 High 로 고정하고 레벨은 해상도/fps/비트레이트에 맞는 가장 낮은 레벨로 지정 (master.m3u8 의 CODECS 도 같은 값)
+// 사용법: HlsVodTranscoder <input> <output-dir> [segment-seconds]  (-Dvod.threads, -Dvod.preset, -Dvod.bitrate)
+// 키프레임 간격이 segment-seconds 보다 긴 파일은 세그먼트(청크)가 그만큼 길어지고 병렬도도 줄어듦
+public class HlsVodTranscoder {
+
+    private static final int THREADS = Integer.getInteger("vod.threads", Runtime.getRuntime().availableProcessors());
+    private static final String PRESET = System.getProperty("vod.preset", "veryfast");
+    private static final int VIDEO_BITRATE = Integer.getInteger("vod.bitrate", 0); // bps, 0이면 원본 비트레이트
+    private static final int DEFAULT_VIDEO_BITRATE = 2000000; // 2Mbps (원본 비트레이트를 모를 때)
+    private static final int AUDIO_BITRATE = 128000;
+    private static final String VIDEO_PLAYLIST = "stream.m3u8";
+    private static final String AUDIO_PLAYLIST = "audio.m3u8";
+    private static final String MASTER_PLAYLIST = "master.m3u8";
+    private static final int HIGH_PROFILE_IDC = 100; // CODECS 의 avc1.64xxxx
+
+    // H.264 레벨 한계 (Table A-1): level_idc, 초당 매크로블록, 프레임당 매크로블록, 최대 비트레이트(kbps, Baseline/Main 기준 - High 는 1.25배)
+    private static final int[][] H264_LEVELS = {
+            {30, 40500, 1620, 10000},
+            {31, 108000, 3600, 14000},
+            {32, 216000, 5120, 20000},
+            {40, 245760, 8192, 20000},
+            {41, 245760, 8192, 50000},
+            {42, 522240, 8704, 50000},
+            {50, 589824, 22080, 135000},
+            {51, 983040, 36864, 240000},
+            {52, 2073600, 36864, 240000},
+            {60, 4177920, 139264, 240000},
+            {61, 8355840, 139264, 480000},
+            {62, 16711680, 139264, 800000},
+    };
+
+    // 키프레임 [startMicros, endMicros) 구간 = 세그먼트 하나
+    private static final class Chunk {
+        final int number;
+        final long startMicros;
+        final long endMicros; // 마지막 청크는 Long.MAX_VALUE
+        long lastFrameMicros = -1;
+
+        Chunk(int number, long startMicros, long endMicros) {
+            this.number = number;
+            this.startMicros = startMicros;
+            this.endMicros = endMicros;
+        }
+
+        String fileName() { return String.format("segment-%05d.ts", number); }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: HlsVodTranscoder <input> <output-dir> [segment-seconds]");
+            return;
+        }
+        File input = new File(args[0]);
+        File outputDir = new File(args[1]);
+        double segmentSeconds = args.length > 2 ? Double.parseDouble(args[2]) : 4.0;
+        Files.createDirectories(outputDir.toPath());
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+
+        long startNanos = System.nanoTime();
+        KeyframeIndex index = KeyframeIndex.forFile(input);
+        List<Chunk> chunks = splitAtKeyframes(index, Math.round(segmentSeconds * 1_000_000));
+        if (chunks.isEmpty()) {
+            System.err.println("No video keyframes in " + input + ".");
+            return;
+        }
+
+        int width, height, audioChannels, sampleRate, videoBitrate;
+        double frameRate;
+        FFmpegFrameGrabber probe = new FFmpegFrameGrabber(input);
+        try {
+            probe.start();
+            width = probe.getImageWidth();
+            height = probe.getImageHeight();
+            frameRate = probe.getFrameRate() > 0 ? probe.getFrameRate() : 30.0;
+            audioChannels = probe.getAudioChannels();
+            sampleRate = probe.getSampleRate();
+            videoBitrate = VIDEO_BITRATE > 0 ? VIDEO_BITRATE
+                    : probe.getVideoBitrate() > 0 ? probe.getVideoBitrate() : DEFAULT_VIDEO_BITRATE;
+        } finally {
+            probe.stop();
+            probe.release();
+        }
+        int level = h264Level(width, height, frameRate, videoBitrate);
+        System.out.println("Transcoding " + input.getName() + " (" + width + "x" + height + ", " + String.format(Locale.ROOT, "%.2f", frameRate)
+                + " fps, H.264 High@" + levelName(level) + ") as " + chunks.size() + " chunks on " + THREADS + " threads" + (audioChannels > 0 ? " + audio rendition" : ""));
+
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        AtomicInteger completed = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            tasks.add(() -> {
+                transcodeChunk(input, index, new File(outputDir, chunk.fileName()), chunk, width, height, frameRate, videoBitrate, level, segmentSeconds);
+                int done = completed.incrementAndGet();
+                if (done % 10 == 0 || done == chunks.size()) System.out.println("Chunks done: " + done + "/" + chunks.size());
+                return null;
+            });
+        }
+        if (audioChannels > 0) {
+            tasks.add(() -> {
+                transcodeAudio(input, outputDir, audioChannels, sampleRate, segmentSeconds);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get(); // 실패한 청크가 있으면 예외
+            }
+        } catch (ExecutionException e) {
+            System.err.println("VOD transcoding failed: " + e.getCause().getMessage());
+            return;
+        } finally {
+            pool.shutdown();
+        }
+
+        writeVideoPlaylist(new File(outputDir, VIDEO_PLAYLIST), chunks, frameRate);
+        if (audioChannels > 0) writeMasterPlaylist(new File(outputDir, MASTER_PLAYLIST), width, height, videoBitrate, level);
+
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        Chunk last = chunks.get(chunks.size() - 1);
+        double mediaSeconds = (last.lastFrameMicros + 1_000_000 / frameRate) / 1e6;
+        System.out.println(String.format(Locale.ROOT, "Done: %.1fs of media in %.1fs (%.1fx real time). Playlist: %s",
+                mediaSeconds, elapsedSeconds, mediaSeconds / elapsedSeconds,
+                new File(outputDir, audioChannels > 0 ? MASTER_PLAYLIST : VIDEO_PLAYLIST).getAbsolutePath()));
+    }
+
+    private static List<Chunk> splitAtKeyframes(KeyframeIndex index, long segmentMicros) {
+        List<Long> starts = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            long time = index.getTimeMicros(i);
+            if (starts.isEmpty() || time - starts.get(starts.size() - 1) >= segmentMicros) starts.add(time);
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < starts.size(); i++) {
+            long end = i + 1 < starts.size() ? starts.get(i + 1) : Long.MAX_VALUE;
+            chunks.add(new Chunk(i, i == 0 ? 0 : starts.get(i), end)); // 첫 청크는 키프레임 앞 프레임까지 포함
+        }
+        return chunks;
+    }
+
+    private static void transcodeChunk(File input, KeyframeIndex index, File output, Chunk chunk, int width, int height, double frameRate,
+                                       int videoBitrate, int level, double segmentSeconds) throws FrameGrabber.Exception, FrameRecorder.Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(input);
+        grabber.setVideoOption("threads", "1"); // 병렬화는 청크 단위로
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(output, width, height, 0);
+        recorder.setFormat("mpegts");
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        recorder.setFrameRate(frameRate);
+        recorder.setVideoBitrate(videoBitrate);
+        recorder.setGopSize((int) Math.round(frameRate * segmentSeconds)); // 청크 안에서는 첫 프레임(IDR)만 키프레임
+        recorder.setVideoOption("preset", PRESET);
+        recorder.setVideoOption("profile", "high");
+        recorder.setVideoOption("level", levelName(level)); // 모든 청크가 같은 SPS 레벨 -> CODECS 와 일치
+        recorder.setVideoOption("threads", "1");
+        try {
+            grabber.start();
+            if (chunk.startMicros > 0) index.seekFrames(grabber, chunk.startMicros);
+            recorder.start();
+            Frame frame;
+            while ((frame = grabber.grabImage()) != null) {
+                long timestamp = grabber.getTimestamp();
+                if (timestamp >= chunk.endMicros) break;
+                if (timestamp < chunk.startMicros) continue; // seek 이 앞쪽에 떨어진 경우 (앞 청크 몫)
+                recorder.setTimestamp(timestamp); // 원본 타임스탬프 그대로 -> 세그먼트 사이 PTS 연속
+                recorder.record(frame);
+                chunk.lastFrameMicros = timestamp;
+            }
+        } finally {
+            recorder.stop();
+            recorder.release();
+            grabber.stop();
+            grabber.release();
+        }
+    }
+
+    // 오디오 렌디션: hls 먹서로 한 번에 (오디오 인코딩은 비디오에 비해 가벼워서 병렬화하지 않음)
+    private static void transcodeAudio(File input, File outputDir, int audioChannels, int sampleRate, double segmentSeconds)
+            throws FrameGrabber.Exception, FrameRecorder.Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(input);
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(new File(outputDir, AUDIO_PLAYLIST), audioChannels);
+        recorder.setFormat("hls");
+        recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+        recorder.setSampleRate(sampleRate);
+        recorder.setAudioBitrate(AUDIO_BITRATE);
+        recorder.setOption("hls_time", String.valueOf(segmentSeconds));
+        recorder.setOption("hls_playlist_type", "vod");
+        recorder.setOption("hls_segment_filename", new File(outputDir, "audio-%05d.ts").getPath());
+        try {
+            grabber.start();
+            recorder.start();
+            Frame frame;
+            while ((frame = grabber.grabSamples()) != null) {
+                recorder.record(frame);
+            }
+        } finally {
+            recorder.stop();
+            recorder.release();
+            grabber.stop();
+            grabber.release();
+        }
+    }
+
+    // 해상도, fps, 비트레이트가 모두 들어가는 가장 낮은 레벨의 level_idc (넘치면 가장 높은 레벨)
+    private static int h264Level(int width, int height, double frameRate, int videoBitrate) {
+        long frameMacroblocks = (long) ((width + 15) / 16) * ((height + 15) / 16);
+        double macroblocksPerSecond = frameMacroblocks * frameRate;
+        for (int[] limits : H264_LEVELS) {
+            if (frameMacroblocks <= limits[2] && macroblocksPerSecond <= limits[1]
+                    && videoBitrate <= limits[3] * 1250L) { // High 프로파일: kbps * 1.25 * 1000
+                return limits[0];
+            }
+        }
+        System.err.println("Video exceeds H.264 level 6.2 limits; signalling level 6.2 anyway.");
+        return H264_LEVELS[H264_LEVELS.length - 1][0];
+    }
+
+    private static String levelName(int level) {
+        return level / 10 + "." + level % 10;
+    }
+
+    private static void writeVideoPlaylist(File playlist, List<Chunk> chunks, double frameRate) throws IOException {
+        long frameMicros = Math.round(1_000_000 / frameRate);
+        List<Double> durations = new ArrayList<>();
+        double maxDuration = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            long end = i + 1 < chunks.size() ? chunk.endMicros : chunk.lastFrameMicros + frameMicros;
+            double duration = (end - chunk.startMicros) / 1e6;
+            durations.add(duration);
+            maxDuration = Math.max(maxDuration, duration);
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(playlist.toPath(), StandardCharsets.UTF_8))) {
+            out.println("#EXTM3U");
+            out.println("#EXT-X-VERSION:3");
+            out.println("#EXT-X-TARGETDURATION:" + (long) Math.ceil(maxDuration));
+            out.println("#EXT-X-MEDIA-SEQUENCE:0");
+            out.println("#EXT-X-PLAYLIST-TYPE:VOD");
+            for (int i = 0; i < chunks.size(); i++) {
+                out.println(String.format(Locale.ROOT, "#EXTINF:%.6f,", durations.get(i)));
+                out.println(chunks.get(i).fileName());
+            }
+            out.println("#EXT-X-ENDLIST");
+        }
+    }
+
+    private static void writeMasterPlaylist(File playlist, int width, int height, int videoBitrate, int level) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(playlist.toPath(), StandardCharsets.UTF_8))) {
+            out.println("#EXTM3U");
+            out.println("#EXT-X-VERSION:3");
+            out.println("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"audio\",NAME=\"default\",DEFAULT=YES,AUTOSELECT=YES,URI=\"" + AUDIO_PLAYLIST + "\"");
+            out.println("#EXT-X-STREAM-INF:BANDWIDTH=" + (videoBitrate + AUDIO_BITRATE) + ",RESOLUTION=" + width + "x" + height
+                    + ",CODECS=\"" + String.format("avc1.%02X00%02X", HIGH_PROFILE_IDC, level) + ",mp4a.40.2\",AUDIO=\"audio\"");
+            out.println(VIDEO_PLAYLIST);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// HTTP-FLV 라이브 엔드포인트 (chunked transfer로 FLV 태그를 계속 흘려보냄)
+// - 변환 루프의 프레임 복사본을 제한된 큐로 받아 별도 인코더 스레드가 FLV 레코더(OutputStream 출력)로 인코딩하고,
+//   출력 바이트를 FLV 태그 단위로 잘라서 배포 (큐가 차면 가장 오래된 프레임을 버림: 변환 루프는 기다리지 않음)
+// - 가장 최근 GOP(마지막 키프레임부터의 태그)를 메모리에 캐시해 두고, 새 시청자는
+//   FLV 헤더 + 메타데이터 + 시퀀스 헤더 + 캐시된 GOP 를 먼저 받아서 바로 재생을 시작
+// - 태그 byte[]는 한 번 만들어지면 수정하지 않고 캐시와 모든 시청자 큐가 같은 배열을 참조 (시청자별 복사 없음,
+//   마지막 참조가 사라지면 GC가 회수)
+// - 큐가 넘친 느린 시청자는 큐를 비우고 다음 키프레임부터 다시 이어받음
+// - 시청자가 없으면 인코딩하지 않고, 마지막 시청자가 나간 뒤 IDLE_STOP_MS 가 지나면 레코더를 정리
+public class HttpFlvBroadcaster {
+
+    private static final int VIEWER_QUEUE_TAGS = 600; // 시청자별 최대 대기 태그 수 (30fps 기준 약 10초 분량 + 오디오)
+    private static final long IDLE_STOP_MS = 30000;
+    private static final int ENCODE_QUEUE_FRAMES = 64; // 변환 루프 -> 인코더 스레드 (30fps 기준 약 1초 + 오디오)
+    private static final int FLV_FILE_HEADER_BYTES = 13; // 9바이트 헤더 + PreviousTagSize0
+    private static final int TAG_TYPE_AUDIO = 8;
+    private static final int TAG_TYPE_VIDEO = 9;
+    private static final int TAG_TYPE_SCRIPT = 18;
+
+    private final int videoBitrate;
+    private final double frameRate;
+
+    private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+    private final Object cacheLock = new Object();
+    private byte[] fileHeader;
+    private byte[] metadataTag;
+    private byte[] videoSequenceHeader;
+    private byte[] audioSequenceHeader;
+    private final List<byte[]> gopCache = new ArrayList<>();
+
+    private final BlockingQueue<QueuedFrame> encodeQueue = new ArrayBlockingQueue<>(ENCODE_QUEUE_FRAMES);
+    private final Thread encoderThread;
+    private volatile boolean running = true;
+    private volatile long lastViewerSeenMs = 0;
+
+    // 인코더 스레드에서만 사용
+    private FFmpegFrameRecorder recorder;
+    private long timestampBase = -1;
+
+    public HttpFlvBroadcaster(int videoBitrate, double frameRate) {
+        this.videoBitrate = videoBitrate;
+        this.frameRate = frameRate;
+        this.encoderThread = new Thread(this::encodeLoop, "HttpFlvEncoder");
+        this.encoderThread.setDaemon(true);
+        this.encoderThread.start();
+    }
+
+    // 변환 루프에서 매 프레임 호출. timestamp: HlsPipeline 이 정규화한 타임스탬프 (DROP 이면 무시)
+    // 인코딩은 별도 스레드에서 하고 여기서는 복사본을 큐에 넣기만 함 (변환 루프의 HLS 인코딩 시간에 더해지지 않음)
+    public void record(Frame frame, int width, int height, int audioChannels, int sampleRate, long timestamp) {
+        if (timestamp == TimestampNormalizer.DROP) return;
+        long now = System.currentTimeMillis();
+        if (!viewers.isEmpty()) {
+            lastViewerSeenMs = now;
+        } else if (now - lastViewerSeenMs >= IDLE_STOP_MS) {
+            return; // 잠깐 끊겼다 다시 붙는 시청자를 위해 유휴 시간 동안만 인코딩을 유지 (레코더 정리는 인코더 스레드가 함)
+        }
+        QueuedFrame queued = new QueuedFrame(frame.clone(), timestamp, width, height, audioChannels, sampleRate);
+        while (!encodeQueue.offer(queued)) {
+            // 인코더가 따라오지 못함: 가장 오래된 프레임을 버림 (변환 루프는 막지 않음)
+            QueuedFrame stale = encodeQueue.poll();
+            if (stale != null) {
+                stale.frame.close();
+                PipelineMetrics.increment("flv.queue_drops");
+            }
+        }
+        PipelineMetrics.setGauge("flv.queue_depth", encodeQueue.size());
+    }
+
+    private void encodeLoop() {
+        try {
+            while (running) {
+                QueuedFrame queued = encodeQueue.poll(1, TimeUnit.SECONDS);
+                if (queued == null) {
+                    if (recorder != null && viewers.isEmpty() && System.currentTimeMillis() - lastViewerSeenMs >= IDLE_STOP_MS) {
+                        stopRecorder();
+                    }
+                    continue;
+                }
+                try {
+                    encode(queued);
+                } finally {
+                    queued.frame.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (recorder != null) stopRecorder();
+            QueuedFrame remaining;
+            while ((remaining = encodeQueue.poll()) != null) remaining.frame.close();
+        }
+    }
+
+    private void encode(QueuedFrame queued) {
+        try {
+            if (recorder == null) {
+                startRecorder(queued.width, queued.height, queued.audioChannels, queued.sampleRate);
+            }
+            if (timestampBase < 0) timestampBase = queued.timestamp;
+            long timestamp = queued.timestamp - timestampBase;
+            if (timestamp > recorder.getTimestamp()) {
+                recorder.setTimestamp(timestamp);
+            }
+            recorder.record(queued.frame);
+        } catch (FrameRecorder.Exception e) {
+            System.err.println("[HTTP-FLV] Recording error: " + e.getMessage());
+            PipelineMetrics.increment("flv.record_errors");
+        }
+    }
+
+    private void startRecorder(int width, int height, int audioChannels, int sampleRate) throws FrameRecorder.Exception {
+        System.out.println("[HTTP-FLV] Starting FLV encoder " + width + "x" + height + " for live viewers.");
+        FFmpegFrameRecorder flvRecorder = new FFmpegFrameRecorder(new FlvTagSplitter(), width, height, audioChannels);
+        flvRecorder.setFormat("flv");
+        flvRecorder.setOption("flvflags", "no_duration_filesize"); // 출력이 스트림이므로 종료 시 헤더 재작성 안 함
+        flvRecorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        flvRecorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        flvRecorder.setFrameRate(frameRate);
+        flvRecorder.setVideoBitrate(videoBitrate);
+        flvRecorder.setGopSize((int) Math.max(1, frameRate)); // 1초 GOP: 새 시청자가 받는 캐시 크기와 시작 지연을 작게 유지
+        flvRecorder.setVideoOption("preset", "ultrafast");
+        flvRecorder.setVideoOption("tune", "zerolatency");
+        if (audioChannels > 0) {
+            flvRecorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+            flvRecorder.setSampleRate(sampleRate);
+            flvRecorder.setAudioBitrate(128000);
+        }
+        flvRecorder.start();
+        recorder = flvRecorder;
+        timestampBase = -1;
+    }
+
+    private void stopRecorder() {
+        System.out.println("[HTTP-FLV] No viewers for " + IDLE_STOP_MS / 1000 + "s. Stopping FLV encoder.");
+        try {
+            recorder.stop();
+            recorder.release();
+        } catch (FrameRecorder.Exception e) {
+            System.err.println("[HTTP-FLV] Error stopping FLV encoder: " + e.getMessage());
+        }
+        recorder = null;
+        synchronized (cacheLock) {
+            fileHeader = null;
+            metadataTag = null;
+            videoSequenceHeader = null;
+            audioSequenceHeader = null;
+            gopCache.clear();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        encoderThread.interrupt(); // 레코더 정리는 인코더 스레드가 종료하면서 함
+        for (Viewer viewer : viewers) viewer.closed = true;
+    }
+
+    // 레코더 출력에서 잘라낸 태그 하나 (헤더 11 + 데이터 + PreviousTagSize 4)
+    private void onTag(byte[] tag) {
+        int type = tag[0] & 0x1f;
+        int dataSize = ((tag[1] & 0xff) << 16) | ((tag[2] & 0xff) << 8) | (tag[3] & 0xff);
+        boolean keyFrame = false;
+        synchronized (cacheLock) {
+            if (type == TAG_TYPE_SCRIPT) {
+                metadataTag = tag;
+                return;
+            }
+            if (type == TAG_TYPE_VIDEO && dataSize >= 2) {
+                boolean avcSequenceHeader = (tag[11] & 0x0f) == 7 && tag[12] == 0;
+                if (avcSequenceHeader) {
+                    videoSequenceHeader = tag;
+                    return;
+                }
+                keyFrame = ((tag[11] & 0xf0) >> 4) == 1;
+            } else if (type == TAG_TYPE_AUDIO && dataSize >= 2) {
+                boolean aacSequenceHeader = ((tag[11] & 0xf0) >> 4) == 10 && tag[12] == 0;
+                if (aacSequenceHeader) {
+                    audioSequenceHeader = tag;
+                    return;
+                }
+            }
+            if (keyFrame) {
+                gopCache.clear();
+            }
+            if (keyFrame || !gopCache.isEmpty()) {
+                gopCache.add(tag);
+            }
+            PipelineMetrics.setGauge("flv.gop_cache_tags", gopCache.size());
+            // 캐시 갱신과 같은 락 안에서 배포해야 막 접속한 시청자가 같은 태그를 두 번 받지 않음
+            for (Viewer viewer : viewers) {
+                viewer.offer(tag, keyFrame);
+            }
+        }
+    }
+
+    public HttpHandler handler() {
+        return this::serve;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        Viewer viewer = new Viewer();
+        synchronized (cacheLock) {
+            // 새 시청자: 헤더/시퀀스 헤더/최근 GOP를 먼저 넣고 등록 (락 안에서 등록해야 중간 태그를 놓치지 않음)
+            if (fileHeader != null) viewer.queue.offer(fileHeader);
+            if (metadataTag != null) viewer.queue.offer(metadataTag);
+            if (videoSequenceHeader != null) viewer.queue.offer(videoSequenceHeader);
+            if (audioSequenceHeader != null) viewer.queue.offer(audioSequenceHeader);
+            for (byte[] tag : gopCache) viewer.queue.offer(tag);
+            viewer.headerSent = fileHeader != null;
+            viewer.waitingForKeyFrame = gopCache.isEmpty(); // 아직 키프레임이 없으면 첫 키프레임부터 전달
+            viewers.add(viewer);
+        }
+        PipelineMetrics.setGauge("flv.viewers", viewers.size());
+        System.out.println("[HTTP-FLV] Viewer connected: " + exchange.getRemoteAddress() + " (viewers: " + viewers.size() + ")");
+
+        exchange.getResponseHeaders().set("Content-Type", "video/x-flv");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        exchange.sendResponseHeaders(200, 0); // chunked transfer
+        try (OutputStream os = exchange.getResponseBody()) {
+            while (!viewer.closed) {
+                byte[] tag = viewer.queue.poll(1, TimeUnit.SECONDS);
+                if (tag == null) continue;
+                os.write(tag);
+                if (viewer.queue.isEmpty()) os.flush();
+            }
+        } catch (IOException e) {
+            // 클라이언트 연결 종료
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            viewers.remove(viewer);
+            PipelineMetrics.setGauge("flv.viewers", viewers.size());
+            System.out.println("[HTTP-FLV] Viewer disconnected: " + exchange.getRemoteAddress() + " (viewers: " + viewers.size() + ")");
+            exchange.close();
+        }
+    }
+
+    private static final class QueuedFrame {
+        final Frame frame;
+        final long timestamp;
+        final int width;
+        final int height;
+        final int audioChannels;
+        final int sampleRate;
+
+        QueuedFrame(Frame frame, long timestamp, int width, int height, int audioChannels, int sampleRate) {
+            this.frame = frame;
+            this.timestamp = timestamp;
+            this.width = width;
+            this.height = height;
+            this.audioChannels = audioChannels;
+            this.sampleRate = sampleRate;
+        }
+    }
+
+    private final class Viewer {
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(VIEWER_QUEUE_TAGS);
+        volatile boolean closed = false;
+        volatile boolean headerSent = false;
+        volatile boolean waitingForKeyFrame = false;
+
+        // 인코더 스레드에서만 호출됨
+        void offer(byte[] tag, boolean keyFrame) {
+            if (!headerSent) {
+                // 레코더가 막 시작되어 헤더가 캐시되기 전에 접속한 시청자
+                synchronized (cacheLock) {
+                    if (fileHeader == null) return;
+                    queue.offer(fileHeader);
+                    if (metadataTag != null) queue.offer(metadataTag);
+                    if (videoSequenceHeader != null) queue.offer(videoSequenceHeader);
+                    if (audioSequenceHeader != null) queue.offer(audioSequenceHeader);
+                }
+                headerSent = true;
+                waitingForKeyFrame = true;
+            }
+            if (waitingForKeyFrame) {
+                if (!keyFrame) return;
+                waitingForKeyFrame = false;
+            }
+            if (!queue.offer(tag)) {
+                // 느린 시청자: 쌓인 태그를 버리고 다음 키프레임부터 재개 (헤더/시퀀스 헤더는 이미 전송됨)
+                queue.clear();
+                waitingForKeyFrame = true;
+                PipelineMetrics.increment("flv.viewer_resyncs");
+            }
+        }
+    }
+
+    // 레코더가 쓰는 FLV 바이트 스트림을 파일 헤더와 태그 단위로 나누는 OutputStream
+    private final class FlvTagSplitter extends OutputStream {
+        private final byte[] headerBuffer = new byte[FLV_FILE_HEADER_BYTES];
+        private int headerFilled = 0;
+        private final byte[] tagHeader = new byte[11];
+        private int tagHeaderFilled = 0;
+        private byte[] tag;
+        private int tagFilled = 0;
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                int n;
+                if (headerFilled < FLV_FILE_HEADER_BYTES) {
+                    n = Math.min(len, FLV_FILE_HEADER_BYTES - headerFilled);
+                    System.arraycopy(b, off, headerBuffer, headerFilled, n);
+                    headerFilled += n;
+                    if (headerFilled == FLV_FILE_HEADER_BYTES) {
+                        synchronized (cacheLock) { fileHeader = headerBuffer.clone(); }
+                    }
+                } else if (tagHeaderFilled < tagHeader.length) {
+                    n = Math.min(len, tagHeader.length - tagHeaderFilled);
+                    System.arraycopy(b, off, tagHeader, tagHeaderFilled, n);
+                    tagHeaderFilled += n;
+                    if (tagHeaderFilled == tagHeader.length) {
+                        int dataSize = ((tagHeader[1] & 0xff) << 16) | ((tagHeader[2] & 0xff) << 8) | (tagHeader[3] & 0xff);
+                        tag = new byte[tagHeader.length + dataSize + 4];
+                        System.arraycopy(tagHeader, 0, tag, 0, tagHeader.length);
+                        tagFilled = tagHeader.length;
+                    }
+                } else {
+                    n = Math.min(len, tag.length - tagFilled);
+                    System.arraycopy(b, off, tag, tagFilled, n);
+                    tagFilled += n;
+                    if (tagFilled == tag.length) {
+                        byte[] completed = tag;
+                        tag = null;
+                        tagHeaderFilled = 0;
+                        onTag(completed);
+                    }
+                }
+                off += n;
+                len -= n;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// FrameStageEvent 가 들어 있는 JFR 녹화 파일을 스트림/단계별 지연 백분위 표로 요약
+// 사용법: JfrStageReport <recording.jfr> [스트림 id]
+public class JfrStageReport {
+
+    private static final String EVENT_NAME = "streaming.FrameStage";
+    private static final int SLOWEST_FRAMES = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: JfrStageReport <recording.jfr> [stream-id]");
+            return;
+        }
+        Path recording = Paths.get(args[0]);
+        String streamFilter = args.length > 1 ? args[1] : null;
+
+        Map<String, Samples> stages = new TreeMap<>(); // "스트림 / 단계" -> 소요 시간(ns)
+        long events = 0;
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (!event.getEventType().getName().equals(EVENT_NAME)) continue;
+                String streamId = event.getString("streamId");
+                if (streamFilter != null && !streamFilter.equals(streamId)) continue;
+                String key = streamId + " / " + event.getString("stage");
+                stages.computeIfAbsent(key, k -> new Samples()).add(event.getDuration().toNanos(), event.getLong("frameNumber"));
+                events++;
+            }
+        }
+        if (events == 0) {
+            System.out.println("No " + EVENT_NAME + " events in " + recording + " (was the recording started with pipeline-trace.jfc?)");
+            return;
+        }
+
+        System.out.println(events + " frame stage events in " + recording);
+        System.out.printf("%-32s %8s %9s %9s %9s %9s %9s%n", "stream / stage", "count", "p50 ms", "p90 ms", "p99 ms", "max ms", "total s");
+        for (Map.Entry<String, Samples> entry : stages.entrySet()) {
+            Samples samples = entry.getValue();
+            samples.sort();
+            System.out.printf("%-32s %8d %9.3f %9.3f %9.3f %9.3f %9.2f%n", entry.getKey(), samples.count,
+                    samples.percentile(50) / 1e6, samples.percentile(90) / 1e6, samples.percentile(99) / 1e6,
+                    samples.percentile(100) / 1e6, samples.totalNanos / 1e9);
+        }
+        System.out.println();
+        System.out.println("Slowest frames per stage:");
+        for (Map.Entry<String, Samples> entry : stages.entrySet()) {
+            System.out.println("  " + entry.getKey() + ": " + entry.getValue().slowest(SLOWEST_FRAMES));
+        }
+    }
+
+    private static final class Samples {
+        long[] nanos = new long[1024];
+        long[] frames = new long[1024];
+        int count = 0;
+        long totalNanos = 0;
+        private long[] sorted;
+
+        void add(long durationNanos, long frameNumber) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+                frames = Arrays.copyOf(frames, count * 2);
+            }
+            nanos[count] = durationNanos;
+            frames[count] = frameNumber;
+            count++;
+            totalNanos += durationNanos;
+        }
+
+        void sort() {
+            sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+        }
+
+        long percentile(double p) {
+            int index = (int) Math.ceil(p / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+
+        // "#프레임번호=ms" 목록 (느린 순)
+        String slowest(int limit) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(nanos[b], nanos[a]));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < Math.min(limit, count); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append('#').append(frames[order[i]]).append('=').append(String.format("%.1fms", nanos[order[i]] / 1e6));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avutil.AVRational;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FrameGrabber;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.ffmpeg.global.avutil.AV_NOPTS_VALUE;
+
+// 동영상 파일의 비디오 키프레임 목록(시각, 바이트 위치)을 한 번 만들어서 파일 옆(<파일>.kfi)에 저장해 두는 인덱스
+// - 만들 때: grabPacket() 으로 패킷만 훑음 (디코딩 없음), 키프레임 패킷의 pts 와 파일 내 바이트 위치만 기록
+// - 다음부터: .kfi 를 읽기만 함 (원본 크기/수정 시각이 바뀌었으면 다시 만듦, 저장할 수 없는 디렉터리면 메모리에만)
+// - 시각은 grabber.getTimestamp() 와 같은 기준(파일 start_time 을 뺀 마이크로초)
+// 사용: seekFrames() 로 디코딩하는 grabber 를 요청 시각 직전 키프레임으로 (디코더는 키프레임 한 장만 디코딩)
+//   - 바이트 위치는 점검용으로만 기록 (HLS 세그먼트를 remux 하는 클립 도구는 세그먼트가 짧아서 seek 할 필요가 없음)
+// 파일 형식: "KFI1", 원본 길이, 원본 수정 시각, 길이(us), 키프레임 수, (시각 us, 바이트 위치) x N - 모두 big-endian long/int
+// 사용법(점검): KeyframeIndex <file> [seconds ...]
+public class KeyframeIndex {
+
+    private static final int MAGIC = 0x4B464931; // "KFI1"
+    private static final String CACHE_SUFFIX = ".kfi";
+
+    private final long sourceLength;
+    private final long sourceLastModified;
+    private final long durationMicros;
+    private final long[] timesMicros;
+    private final long[] positions;
+
+    private KeyframeIndex(long sourceLength, long sourceLastModified, long durationMicros, long[] timesMicros, long[] positions) {
+        this.sourceLength = sourceLength;
+        this.sourceLastModified = sourceLastModified;
+        this.durationMicros = durationMicros;
+        this.timesMicros = timesMicros;
+        this.positions = positions;
+    }
+
+    // 캐시가 유효하면 읽고, 아니면 패킷을 훑어서 만든 뒤 저장
+    public static KeyframeIndex forFile(File file) throws FrameGrabber.Exception {
+        File cache = cacheFile(file);
+        if (cache.isFile()) {
+            try {
+                KeyframeIndex cached = read(cache);
+                if (cached.sourceLength == file.length() && cached.sourceLastModified == file.lastModified()) {
+                    return cached;
+                }
+                System.out.println("Keyframe index is stale, rebuilding: " + cache);
+            } catch (IOException e) {
+                System.err.println("Could not read keyframe index " + cache + ": " + e.getMessage() + ". Rebuilding.");
+            }
+        }
+        long startNanos = System.nanoTime();
+        KeyframeIndex index = build(file);
+        System.out.println("Built keyframe index for " + file.getName() + ": " + index.size() + " keyframes in "
+                + (System.nanoTime() - startNanos) / 1_000_000 + "ms");
+        try {
+            index.write(cache);
+        } catch (IOException e) {
+            System.err.println("Could not save keyframe index " + cache + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    public int size() { return timesMicros.length; }
+    public long getDurationMicros() { return durationMicros; }
+    public long getTimeMicros(int i) { return timesMicros[i]; }
+    public long getPosition(int i) { return positions[i]; }
+
+    // timestampMicros 이하인 마지막 키프레임 번호 (모두 뒤면 0, 키프레임이 없으면 -1)
+    public int floorIndex(long timestampMicros) {
+        if (timesMicros.length == 0) return -1;
+        int i = Arrays.binarySearch(timesMicros, timestampMicros);
+        if (i < 0) i = -i - 2; // 삽입 위치 바로 앞
+        return Math.max(i, 0);
+    }
+
+    // 디코딩용 grabber 를 timestampMicros 직전 키프레임으로. 반환: 실제 시작 시각
+    // grabber.setTimestamp() 는 seek 후 목표 시각까지 디코딩하므로 목표를 키프레임 시각으로 맞춰 디코딩을 한 장으로 줄임
+    public long seekFrames(FFmpegFrameGrabber grabber, long timestampMicros) throws FrameGrabber.Exception {
+        int i = floorIndex(timestampMicros);
+        if (i < 0) {
+            grabber.setTimestamp(timestampMicros); // 키프레임 정보 없음: FFmpeg 에 맡김
+            return timestampMicros;
+        }
+        grabber.setTimestamp(timesMicros[i]);
+        return timesMicros[i];
+    }
+
+    private static KeyframeIndex build(File file) throws FrameGrabber.Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(file);
+        try {
+            grabber.start();
+            AVFormatContext formatContext = grabber.getFormatContext();
+            int videoStream = grabber.getVideoStream();
+            if (videoStream < 0) throw new FrameGrabber.Exception("No video stream in " + file);
+            AVRational timeBase = formatContext.streams(videoStream).time_base();
+            long startTime = formatContext.start_time() != AV_NOPTS_VALUE ? formatContext.start_time() : 0;
+
+            long[] times = new long[256];
+            long[] offsets = new long[256];
+            int count = 0;
+            AVPacket packet;
+            while ((packet = grabber.grabPacket()) != null) {
+                if (packet.stream_index() != videoStream || (packet.flags() & AV_PKT_FLAG_KEY) == 0) continue;
+                long pts = packet.pts() != AV_NOPTS_VALUE ? packet.pts() : packet.dts();
+                if (pts == AV_NOPTS_VALUE) continue;
+                long timeMicros = (long) (pts * 1_000_000.0 * timeBase.num() / timeBase.den()) - startTime;
+                if (count > 0 && timeMicros <= times[count - 1]) continue; // 이진 탐색을 위해 증가하는 것만
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                times[count] = timeMicros;
+                offsets[count] = packet.pos();
+                count++;
+            }
+            long duration = formatContext.duration() != AV_NOPTS_VALUE ? formatContext.duration() : 0;
+            return new KeyframeIndex(file.length(), file.lastModified(), duration,
+                    Arrays.copyOf(times, count), Arrays.copyOf(offsets, count));
+        } finally {
+            grabber.stop();
+            grabber.release();
+        }
+    }
+
+    private static KeyframeIndex read(File cache) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a keyframe index");
+            long sourceLength = in.readLong();
+            long sourceLastModified = in.readLong();
+            long duration = in.readLong();
+            int count = in.readInt();
+            if (count < 0 || count > cache.length() / 16) throw new IOException("corrupt keyframe count " + count);
+            long[] times = new long[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                times[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+            return new KeyframeIndex(sourceLength, sourceLastModified, duration, times, offsets);
+        }
+    }
+
+    // 임시 파일에 쓰고 이름 변경 (동시에 읽는 쪽이 반쯤 쓰인 파일을 보지 않도록)
+    private void write(File cache) throws IOException {
+        File temporary = new File(cache.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(sourceLength);
+            out.writeLong(sourceLastModified);
+            out.writeLong(durationMicros);
+            out.writeInt(timesMicros.length);
+            for (int i = 0; i < timesMicros.length; i++) {
+                out.writeLong(timesMicros[i]);
+                out.writeLong(positions[i]);
+            }
+        }
+        if (!temporary.renameTo(cache)) {
+            cache.delete();
+            if (!temporary.renameTo(cache)) throw new IOException("rename failed");
+        }
+    }
+
+    private static File cacheFile(File file) {
+        return new File(file.getPath() + CACHE_SUFFIX);
+    }
+
+    public static void main(String[] args) throws FrameGrabber.Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: KeyframeIndex <file> [seconds ...]");
+            return;
+        }
+        long startNanos = System.nanoTime();
+        KeyframeIndex index = forFile(new File(args[0]));
+        System.out.printf("%d keyframes, duration %.1fs, loaded in %dms%n", index.size(), index.getDurationMicros() / 1e6,
+                (System.nanoTime() - startNanos) / 1_000_000);
+        for (int a = 1; a < args.length; a++) {
+            long target = Math.round(Double.parseDouble(args[a]) * 1_000_000);
+            int i = index.floorIndex(target);
+            if (i < 0) continue;
+            System.out.printf("%ss -> keyframe #%d at %.3fs, byte %d%n", args[a], i, index.getTimeMicros(i) / 1e6, index.getPosition(i));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// 구간별(캡처 -> 송출, 캡처 -> 컨버터, 캡처 -> 뷰어) 지연 분포를 1ms 단위로 모으는 히스토그램
+// 이름별로 하나씩 등록되고, 주기적으로 p50/p90/p99/max 요약을 로그에 출력하거나 HTTP로 노출
+public class LatencyHistogram {
+
+    private static final int MAX_TRACKED_MS = 10000; // 그 이상은 마지막 칸에 모음
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    private final long[] counts = new long[MAX_TRACKED_MS + 1];
+    private long total = 0;
+    private long sum = 0;
+    private long max = 0;
+    private long negative = 0; // 시계가 어긋나서 음수가 나온 횟수 (0으로 기록)
+
+    public static LatencyHistogram get(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    public synchronized void record(long latencyMs) {
+        if (latencyMs < 0) {
+            negative++;
+            latencyMs = 0;
+        }
+        counts[(int) Math.min(latencyMs, MAX_TRACKED_MS)]++;
+        total++;
+        sum += latencyMs;
+        max = Math.max(max, latencyMs);
+    }
+
+    // percentile: 0.0 ~ 1.0
+    public synchronized long percentile(double percentile) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int ms = 0; ms < counts.length; ms++) {
+            seen += counts[ms];
+            if (seen >= Math.max(1, rank)) return ms;
+        }
+        return MAX_TRACKED_MS;
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    public synchronized String summary() {
+        if (total == 0) return "n=0";
+        StringBuilder sb = new StringBuilder();
+        sb.append("n=").append(total)
+                .append(" avg=").append(sum / total)
+                .append(" p50=").append(percentile(0.50))
+                .append(" p90=").append(percentile(0.90))
+                .append(" p99=").append(percentile(0.99))
+                .append(" max=").append(max).append("ms");
+        if (negative > 0) sb.append(" clock_skew=").append(negative);
+        return sb.toString();
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        sum = 0;
+        max = 0;
+        negative = 0;
+    }
+
+    // "name n=... p50=..." 한 줄씩
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue().summary()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static Timer startLogging(long intervalMs) {
+        Timer timer = new Timer("LatencyLogTimer", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+                    System.out.println("[Latency] " + entry.getKey() + " " + entry.getValue().summary());
+                }
+            }
+        }, intervalMs, intervalMs);
+        return timer;
+    }
+}
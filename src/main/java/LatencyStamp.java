@@ -0,0 +1,121 @@
+import org.bytedeco.javacv.Frame;
+
+import java.nio.ByteBuffer;
+
+// 캡처 시각(epoch ms)을 영상 왼쪽 위에 흑백 블록 코드로 그려 넣고, 디코딩된 프레임에서 다시 읽어내는 유틸
+// H.264 SEI는 JavaCV 레코더/그래버 API로 넣고 뺄 수 없어서, 재인코딩/스케일링을 거쳐도 살아남는 픽셀 코드를 사용.
+// - 2줄 x COLUMNS 칸, 칸 크기 = 프레임 너비 / COLUMNS (해상도가 바뀌어도 같은 비율로 읽힘)
+// - 각 줄 앞 2칸은 마커 (1,0 / 0,1), 이후 48비트 시각 + 8비트 체크섬
+// 퍼블리셔와 수신 측(컨버터, 뷰어)의 시계가 같거나 NTP로 맞춰져 있어야 의미 있는 값이 나옴
+public final class LatencyStamp {
+
+    private static final int COLUMNS = 32;
+    private static final int ROWS = 2;
+    private static final int TIME_BITS = 48;
+    private static final int FIRST_ROW_TIME_BITS = COLUMNS - 2;
+    private static final int CHECKSUM_BITS = 8;
+    private static final int BRIGHT = 235;
+    private static final int DARK = 16;
+    private static final int THRESHOLD = 128;
+
+    private LatencyStamp() {}
+
+    // BGR/GRAY 8비트 프레임만 지원. 그릴 수 없는 프레임이면 false
+    public static boolean stamp(Frame frame, long epochMillis) {
+        int cell = cellSize(frame);
+        if (cell <= 0) return false;
+        boolean[] bits = encode(epochMillis);
+        ByteBuffer image = (ByteBuffer) frame.image[0];
+        for (int i = 0; i < bits.length; i++) {
+            byte value = (byte) (bits[i] ? BRIGHT : DARK);
+            int x0 = (i % COLUMNS) * cell;
+            int y0 = (i / COLUMNS) * cell;
+            for (int y = y0; y < y0 + cell; y++) {
+                int rowOffset = y * frame.imageStride + x0 * frame.imageChannels;
+                for (int j = 0; j < cell * frame.imageChannels; j++) {
+                    image.put(rowOffset + j, value);
+                }
+            }
+        }
+        return true;
+    }
+
+    // 코드가 없거나 깨졌으면 -1
+    public static long read(Frame frame) {
+        int cell = cellSize(frame);
+        if (cell <= 0) return -1;
+        ByteBuffer image = (ByteBuffer) frame.image[0];
+        boolean[] bits = new boolean[COLUMNS * ROWS];
+        int margin = cell / 4; // 칸 경계는 인코딩 블록 노이즈가 크므로 가운데 절반만 샘플링
+        int colorChannels = Math.min(3, frame.imageChannels);
+        for (int i = 0; i < bits.length; i++) {
+            int x0 = (i % COLUMNS) * cell + margin;
+            int y0 = (i / COLUMNS) * cell + margin;
+            long sum = 0;
+            int samples = 0;
+            for (int y = y0; y < y0 + cell - 2 * margin; y++) {
+                for (int x = x0; x < x0 + cell - 2 * margin; x++) {
+                    int offset = y * frame.imageStride + x * frame.imageChannels;
+                    for (int c = 0; c < colorChannels; c++) {
+                        sum += image.get(offset + c) & 0xff;
+                    }
+                    samples += colorChannels;
+                }
+            }
+            bits[i] = samples > 0 && sum / samples >= THRESHOLD;
+        }
+        return decode(bits);
+    }
+
+    private static int cellSize(Frame frame) {
+        if (frame == null || frame.image == null || frame.imageDepth != Frame.DEPTH_UBYTE) return -1;
+        if (!(frame.image[0] instanceof ByteBuffer)) return -1;
+        int cell = frame.imageWidth / COLUMNS;
+        if (cell < 2 || frame.imageHeight < cell * ROWS) return -1;
+        return cell;
+    }
+
+    private static boolean[] encode(long epochMillis) {
+        boolean[] bits = new boolean[COLUMNS * ROWS];
+        bits[0] = true;
+        bits[COLUMNS + 1] = true;
+        for (int i = 0; i < TIME_BITS; i++) {
+            bits[timeBitIndex(i)] = ((epochMillis >>> (TIME_BITS - 1 - i)) & 1) != 0;
+        }
+        int checksum = checksum(epochMillis);
+        for (int i = 0; i < CHECKSUM_BITS; i++) {
+            bits[checksumBitIndex(i)] = ((checksum >>> (CHECKSUM_BITS - 1 - i)) & 1) != 0;
+        }
+        return bits;
+    }
+
+    private static long decode(boolean[] bits) {
+        if (!bits[0] || bits[1] || bits[COLUMNS] || !bits[COLUMNS + 1]) return -1;
+        long epochMillis = 0;
+        for (int i = 0; i < TIME_BITS; i++) {
+            epochMillis = (epochMillis << 1) | (bits[timeBitIndex(i)] ? 1 : 0);
+        }
+        int checksum = 0;
+        for (int i = 0; i < CHECKSUM_BITS; i++) {
+            checksum = (checksum << 1) | (bits[checksumBitIndex(i)] ? 1 : 0);
+        }
+        return checksum == checksum(epochMillis) ? epochMillis : -1;
+    }
+
+    // 첫 줄 마커 뒤 30비트, 나머지 18비트는 둘째 줄 마커 뒤
+    private static int timeBitIndex(int i) {
+        return i < FIRST_ROW_TIME_BITS ? 2 + i : COLUMNS + 2 + (i - FIRST_ROW_TIME_BITS);
+    }
+
+    private static int checksumBitIndex(int i) {
+        return COLUMNS + 2 + (TIME_BITS - FIRST_ROW_TIME_BITS) + i;
+    }
+
+    private static int checksum(long epochMillis) {
+        int checksum = 0;
+        for (int i = 0; i < TIME_BITS / 8; i++) {
+            checksum ^= (int) (epochMillis >>> (i * 8)) & 0xff;
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,144 @@
+// CPU가 모자라서 grab() -> record() 루프가 실시간을 따라가지 못할 때 지연 대신 화질을 내리는 조절기 (파이프라인마다 하나)
+// - 입력: 비디오 프레임의 미디어 타임스탬프와 처리(record) 시간
+//   backlog  = (벽시계 경과 - 미디어 경과) - 지금까지의 최솟값 -> 계속 커지면 소스보다 느리게 처리하고 있다는 뜻
+//   encode utilization = 1초 구간 중 record()에 쓴 시간 비율
+// - backlog 가 BEHIND_MICROS 를 넘은 채 줄어들지 않거나 utilization 이 90%를 넘는 상태가 DEGRADE_HOLD_MS 지속되면 한 단계 내림
+//   backlog 가 해소되고 utilization 이 50% 미만인 상태가 probe 대기시간만큼 지속되면 한 단계 올림
+//   (올리자마자 다시 내려가면 다음 probe 대기시간을 두 배로 - AdaptiveBitrateController 와 같은 방식)
+// 실제 인코더/디코더 변경은 호출 측(HlsPipeline)이 getLevel() 을 보고 수행하고, 프레임 건너뛰기는 shouldRecordVideo() 로 판단
+public class LoadGovernor {
+
+    // 단계가 올라갈수록 누적 적용 (HALF_RESOLUTION 이면 빠른 preset + 절반 fps + 절반 해상도)
+    public enum Level {
+        NORMAL,          // 설정 그대로
+        FAST_PRESET,     // x264 preset ultrafast (레코더 재시작)
+        HALF_FPS,        // 비디오 프레임 하나 건너 하나만 인코딩 (키프레임은 항상 인코딩)
+        HALF_RESOLUTION, // 가로/세로 절반으로 인코딩 (레코더 재시작)
+        KEYFRAMES_ONLY   // 디코더가 키프레임만 디코딩 (skip_frame nonkey), 키프레임만 인코딩
+    }
+
+    private static final long WINDOW_MS = 1000;
+    private static final long BEHIND_MICROS = 500_000;
+    private static final long CAUGHT_UP_MICROS = 100_000;
+    private static final double OVERLOAD_UTILIZATION = 0.9;
+    private static final double HEADROOM_UTILIZATION = 0.5;
+    private static final long DEGRADE_HOLD_MS = 2000;
+    private static final long MIN_PROBE_HOLD_MS = 15000;
+    private static final long MAX_PROBE_HOLD_MS = 240000;
+    private static final Level[] LEVELS = Level.values();
+
+    private final String metricPrefix;
+    private int current = 0;
+    private long firstWallMicros = -1;
+    private long firstMediaMicros;
+    private long minLagMicros = Long.MAX_VALUE;
+    private long backlogMicros = 0;
+    private long backlogAtLevelChange = 0;
+    private long windowStartMs = -1;
+    private long windowBusyMicros = 0;
+    private double utilization = 0;
+    private long behindSinceMs = -1;
+    private long clearSinceMs = -1;
+    private long probeHoldMs = MIN_PROBE_HOLD_MS;
+    private long lastUpgradeMs = -1;
+    private long videoFrameIndex = 0;
+
+    public LoadGovernor(String metricPrefix) {
+        this.metricPrefix = metricPrefix;
+        PipelineMetrics.setGauge(metricPrefix + ".level", 0);
+    }
+
+    // 비디오 프레임마다 호출 (기록하지 않고 건너뛴 프레임도 busyMicros=0 으로 호출). 단계가 바뀌었으면 true
+    public boolean onVideoFrame(long nowMs, long mediaMicros, long busyMicros) {
+        long wallMicros = nowMs * 1000;
+        if (firstWallMicros < 0) {
+            firstWallMicros = wallMicros;
+            firstMediaMicros = mediaMicros;
+        }
+        long lagMicros = (wallMicros - firstWallMicros) - (mediaMicros - firstMediaMicros);
+        minLagMicros = Math.min(minLagMicros, lagMicros);
+        backlogMicros = lagMicros - minLagMicros;
+        addBusy(nowMs, busyMicros);
+        if (backlogMicros < CAUGHT_UP_MICROS) backlogAtLevelChange = 0; // 다 따라잡았으면 다시 처음부터 판단
+
+        // 단계를 내린 뒤 backlog 가 줄어드는 중이면(따라잡는 중) 더 내리지 않음
+        boolean behind = (backlogMicros > BEHIND_MICROS && backlogMicros >= backlogAtLevelChange) || utilization > OVERLOAD_UTILIZATION;
+        boolean clear = backlogMicros < CAUGHT_UP_MICROS && utilization < HEADROOM_UTILIZATION;
+        if (behind) {
+            clearSinceMs = -1;
+            if (behindSinceMs < 0) behindSinceMs = nowMs;
+            if (nowMs - behindSinceMs >= DEGRADE_HOLD_MS && current < LEVELS.length - 1) {
+                if (lastUpgradeMs >= 0 && nowMs - lastUpgradeMs < probeHoldMs) {
+                    probeHoldMs = Math.min(probeHoldMs * 2, MAX_PROBE_HOLD_MS);
+                }
+                current++;
+                behindSinceMs = nowMs;
+                onLevelChanged("degrades");
+                return true;
+            }
+        } else {
+            behindSinceMs = -1;
+            if (clear) {
+                if (clearSinceMs < 0) clearSinceMs = nowMs;
+                if (nowMs - clearSinceMs >= probeHoldMs && current > 0) {
+                    current--;
+                    clearSinceMs = nowMs;
+                    lastUpgradeMs = nowMs;
+                    onLevelChanged("upgrades");
+                    return true;
+                }
+            } else {
+                clearSinceMs = -1;
+            }
+        }
+        if (lastUpgradeMs >= 0 && nowMs - lastUpgradeMs > MAX_PROBE_HOLD_MS) {
+            probeHoldMs = MIN_PROBE_HOLD_MS;
+            lastUpgradeMs = -1;
+        }
+        return false;
+    }
+
+    // 오디오 등 비디오 외 처리 시간도 utilization 에 포함
+    public void addBusy(long nowMs, long busyMicros) {
+        if (windowStartMs < 0) windowStartMs = nowMs;
+        windowBusyMicros += busyMicros;
+        long elapsedMs = nowMs - windowStartMs;
+        if (elapsedMs >= WINDOW_MS) {
+            utilization = windowBusyMicros / (elapsedMs * 1000.0);
+            windowBusyMicros = 0;
+            windowStartMs = nowMs;
+            PipelineMetrics.setGauge(metricPrefix + ".encode_utilization_pct", Math.round(utilization * 100));
+            PipelineMetrics.setGauge(metricPrefix + ".backlog_ms", backlogMicros / 1000);
+        }
+    }
+
+    // 현재 단계에서 이 비디오 프레임을 인코딩할지 (건너뛴 프레임은 <prefix>.skipped_frames 로 집계)
+    public boolean shouldRecordVideo(boolean keyFrame) {
+        Level level = getLevel();
+        boolean record;
+        if (level.compareTo(Level.KEYFRAMES_ONLY) >= 0) {
+            record = keyFrame;
+        } else if (level.compareTo(Level.HALF_FPS) >= 0) {
+            record = keyFrame || videoFrameIndex % 2 == 0;
+        } else {
+            record = true;
+        }
+        videoFrameIndex++;
+        if (!record) PipelineMetrics.increment(metricPrefix + ".skipped_frames");
+        return record;
+    }
+
+    public Level getLevel() { return LEVELS[current]; }
+    public long getBacklogMicros() { return backlogMicros; }
+    public double getUtilization() { return utilization; }
+
+    private void onLevelChanged(String counter) {
+        // utilization 은 새 설정 기준으로 다시 측정, backlog 는 이미 쌓인 양이 줄어드는지 지켜봄
+        backlogAtLevelChange = backlogMicros;
+        windowBusyMicros = 0;
+        windowStartMs = -1;
+        utilization = 0;
+        PipelineMetrics.increment(metricPrefix + "." + counter);
+        PipelineMetrics.setGauge(metricPrefix + ".level", current);
+    }
+}
@@ -0,0 +1,269 @@
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// 카메라 N대를 합성 소스로 흉내 내서 퍼블리셔 -> 컨버터 파이프라인 전체를 헤드리스로 돌려보는 부하 테스트
+// - 카메라 i: SyntheticFrameGrabber -> StreamingClientMain 의 송출 경로 그대로(FramePacer, 송출 큐, 송신 스레드, 혼잡 제어) ->
+//   tcp://127.0.0.1:(BASE_PORT+i) 에서 listen (FFmpeg listen 모드, 컨버터가 접속하면 송출 시작)
+//   file 모드에서는 먼저 합성 영상(+톤)을 파일로 만들어 두고 컨버터가 파일을 최대 속도로 읽음 (처리량 측정, -Dload.codec 로 코덱 선택)
+// - 컨버터 i: HlsPipeline 으로 HLS 변환 (load_output/cam<i>/stream.m3u8)
+// - REPORT_INTERVAL_MS 마다 스트림별 fps / 실시간 대비 지연, 프로세스 CPU / RSS 를 출력
+// 사용 예: java LoadTestHarness 8 60 1280 720 30 listen
+public class LoadTestHarness {
+
+    private static final int BASE_PORT = 19500;
+    private static final String OUTPUT_DIRECTORY = "load_output";
+    private static final long REPORT_INTERVAL_MS = 5000;
+    // file 모드 소스 설정: -Dload.codec=h264|hevc, -Dload.audio.channels=1 (0이면 영상만)
+    private static final String SOURCE_CODEC = System.getProperty("load.codec", "h264");
+    private static final int SOURCE_AUDIO_CHANNELS = Integer.getInteger("load.audio.channels", 1);
+
+    public static void main(String[] args) throws Exception {
+        int streamCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int durationSec = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 1280;
+        int height = args.length > 3 ? Integer.parseInt(args[3]) : 720;
+        double frameRate = args.length > 4 ? Double.parseDouble(args[4]) : 30.0;
+        String mode = args.length > 5 ? args[5] : "listen"; // listen | file
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+
+        System.out.println("Load test: " + streamCount + " streams, " + width + "x" + height + "@" + frameRate
+                + ", " + durationSec + "s, source mode: " + mode);
+
+        AtomicBoolean active = new AtomicBoolean(true);
+        ExecutorService cameras = Executors.newFixedThreadPool(streamCount);
+        ExecutorService converters = Executors.newFixedThreadPool(streamCount);
+        List<HlsPipeline> pipelines = new ArrayList<>();
+        List<StreamStats> stats = new ArrayList<>();
+
+        for (int i = 0; i < streamCount; i++) {
+            String streamId = "cam" + i;
+            String sourceUrl;
+            if (mode.equals("file")) {
+                File sourceFile = new File(OUTPUT_DIRECTORY, streamId + "_source_" + SOURCE_CODEC + (SOURCE_CODEC.equals("hevc") ? ".mkv" : ".flv"));
+                renderSyntheticFile(sourceFile, width, height, frameRate, durationSec, SOURCE_CODEC, SOURCE_AUDIO_CHANNELS);
+                sourceUrl = sourceFile.getAbsolutePath();
+            } else {
+                int port = BASE_PORT + i;
+                String listenUrl = "tcp://127.0.0.1:" + port + "?listen=1";
+                cameras.submit(() -> runSyntheticCamera(listenUrl, width, height, frameRate, active));
+                sourceUrl = "tcp://127.0.0.1:" + port;
+            }
+
+            File streamDir = new File(OUTPUT_DIRECTORY, streamId);
+            Files.createDirectories(streamDir.toPath());
+            HlsPipeline pipeline = new HlsPipeline(streamId, sourceUrl,
+                    streamDir.getAbsolutePath() + File.separator + "stream.m3u8", "2", "5");
+            // -Dload.governor=true 로 과부하 시 화질을 낮추는 동작을 함께 측정 (기본은 꺼서 순수 처리 한계를 봄)
+            pipeline.setLoadGovernorEnabled(Boolean.getBoolean("load.governor"));
+            StreamStats streamStats = new StreamStats(streamId);
+            pipeline.addFrameListener((frame, source, timestamp) -> streamStats.onFrame(frame, timestamp));
+            pipelines.add(pipeline);
+            stats.add(streamStats);
+            converters.submit(() -> {
+                try {
+                    pipeline.run();
+                } catch (Exception e) {
+                    System.err.println("[" + streamId + "] Pipeline failed: " + e.getMessage());
+                }
+            });
+        }
+
+        long endMs = System.currentTimeMillis() + durationSec * 1000L;
+        while (System.currentTimeMillis() < endMs) {
+            Thread.sleep(REPORT_INTERVAL_MS);
+            report(stats);
+        }
+
+        active.set(false);
+        for (HlsPipeline pipeline : pipelines) pipeline.stop();
+        cameras.shutdownNow();
+        converters.shutdownNow();
+        cameras.awaitTermination(10, TimeUnit.SECONDS);
+        converters.awaitTermination(10, TimeUnit.SECONDS);
+
+        System.out.println("=== Summary ===");
+        for (StreamStats streamStats : stats) {
+            System.out.printf("%-8s frames=%d avgFps=%.1f maxLagMs=%d%n", streamStats.streamId, streamStats.totalFrames,
+                    streamStats.averageFps(), streamStats.maxLagMs);
+        }
+        System.exit(0);
+    }
+
+    // 실제 카메라 + StreamingClientMain 역할: 실시간 속도의 합성 프레임을 퍼블리셔와 같은 경로로 송출
+    // (FramePacer -> 송출 큐 -> 송신 스레드의 record() + AdaptiveBitrateController, 인코더 설정도 createRtmpRecorder 그대로)
+    private static void runSyntheticCamera(String listenUrl, int width, int height, double frameRate, AtomicBoolean active) {
+        SyntheticFrameGrabber grabber = new SyntheticFrameGrabber(width, height, frameRate, 0, 44100, true); // 퍼블리셔는 영상만 송출
+        FFmpegFrameRecorder recorder = StreamingClientMain.createRtmpRecorder(listenUrl, width, height, StreamingClientMain.VIDEO_BITRATE);
+        recorder.setFrameRate(frameRate);
+        AtomicReference<FFmpegFrameRecorder> recorderRef = new AtomicReference<>(recorder);
+        BlockingQueue<StreamingClientMain.QueuedFrame> sendQueue = new ArrayBlockingQueue<>(StreamingClientMain.SEND_QUEUE_CAPACITY);
+        FramePacer pacer = new FramePacer(frameRate);
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(
+                AdaptiveBitrateController.defaultLevels(StreamingClientMain.VIDEO_BITRATE, StreamingClientMain.MIN_VIDEO_BITRATE),
+                frameRate, StreamingClientMain.SEND_QUEUE_CAPACITY);
+        Thread sender = null;
+        try {
+            recorder.start(); // listen=1: 컨버터가 접속할 때까지 대기
+            grabber.start();
+            sender = new Thread(() -> StreamingClientMain.runSender(sendQueue, recorderRef, controller, pacer, listenUrl, width, height,
+                    avutil.AV_PIX_FMT_BGR24, avutil.AV_PIX_FMT_YUV420P, active), "LoadTestSender");
+            sender.start();
+            long frameCount = 0;
+            Frame frame;
+            while (active.get() && (frame = grabber.grab()) != null) {
+                StreamingClientMain.enqueueCaptured(frame, System.nanoTime(), System.currentTimeMillis(), frameCount++, pacer, null, sendQueue);
+            }
+        } catch (FrameRecorder.Exception | FrameGrabber.Exception e) {
+            if (active.get()) System.err.println("Synthetic camera error (" + listenUrl + "): " + e.getMessage());
+        } finally {
+            if (sender != null) {
+                try {
+                    sender.join(5000); // 송신 스레드가 레코더 사용을 끝낸 뒤에 정리
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            try {
+                recorderRef.get().stop();
+                recorderRef.get().release();
+                grabber.release();
+            } catch (Exception e) {
+                // 종료 중 오류는 무시
+            }
+        }
+    }
+
+    // 벤치마크용 기준 파일: H.264/FLV, 영상만
+    static void renderSyntheticFile(File file, int width, int height, double frameRate, int durationSec) throws Exception {
+        renderSyntheticFile(file, width, height, frameRate, durationSec, "h264", 0);
+    }
+
+    // codec: h264 | hevc (hevc 는 Matroska 로), audioChannels > 0 이면 1kHz 톤을 AAC 로 함께 기록 (컨버터의 오디오 경로까지 부하에 포함)
+    static void renderSyntheticFile(File file, int width, int height, double frameRate, int durationSec, String codec, int audioChannels)
+            throws Exception {
+        Files.createDirectories(file.getParentFile().toPath());
+        if (file.exists()) return;
+        System.out.println("Rendering synthetic source file: " + file.getAbsolutePath());
+        SyntheticFrameGrabber grabber = new SyntheticFrameGrabber(width, height, frameRate, audioChannels, 44100, false);
+        FFmpegFrameRecorder recorder = StreamingClientMain.createRtmpRecorder(file.getAbsolutePath(), width, height, StreamingClientMain.VIDEO_BITRATE);
+        if (codec.equals("hevc")) {
+            recorder.setFormat("matroska"); // FLV 는 HEVC 를 담을 수 없음
+            recorder.setVideoCodec(avcodec.AV_CODEC_ID_HEVC);
+        }
+        recorder.setFrameRate(frameRate);
+        recorder.setGopSize((int) frameRate * 2);
+        recorder.setVideoOption("preset", "ultrafast");
+        if (audioChannels > 0) {
+            recorder.setAudioChannels(audioChannels);
+            recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+            recorder.setSampleRate(44100);
+            recorder.setAudioBitrate(128000);
+        }
+        recorder.start();
+        grabber.start();
+        long frames = (long) (durationSec * frameRate);
+        for (long i = 0; i < frames; i++) {
+            Frame frame = grabber.grab();
+            recorder.setTimestamp(frame.timestamp);
+            recorder.record(frame);
+        }
+        recorder.stop();
+        recorder.release();
+        grabber.release();
+    }
+
+    private static void report(List<StreamStats> stats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[LoadTest] cpu=%.0f%% rss=%dMB heap=%dMB |", processCpuPercent(), residentSetMb(),
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024)));
+        for (StreamStats streamStats : stats) {
+            sb.append(String.format(" %s: %.1ffps lag=%dms", streamStats.streamId, streamStats.takeIntervalFps(), streamStats.lastLagMs));
+        }
+        System.out.println(sb);
+    }
+
+    private static double processCpuPercent() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            // 전체 코어 대비 비율 -> 코어 1개 = 100% 로 환산
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad() * 100 * os.getAvailableProcessors();
+        }
+        return -1;
+    }
+
+    // Linux 전용: /proc/self/status 의 VmRSS
+    private static long residentSetMb() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // /proc 이 없는 OS
+        }
+        return -1;
+    }
+
+    // 스트림별 처리 fps 와 "실시간 대비 지연" (첫 프레임 기준으로 벽시계 경과 - 미디어 경과)
+    private static final class StreamStats {
+        final String streamId;
+        volatile long totalFrames = 0;
+        volatile long lastLagMs = 0;
+        volatile long maxLagMs = 0;
+        private long firstFrameWallMs = -1;
+        private long firstTimestamp;
+        private long intervalFrames = 0;
+        private long intervalStartMs = System.currentTimeMillis();
+
+        StreamStats(String streamId) {
+            this.streamId = streamId;
+        }
+
+        // timestamp: 컨버터가 정규화한 타임스탬프
+        synchronized void onFrame(Frame frame, long timestamp) {
+            if (frame.image == null || timestamp == TimestampNormalizer.DROP) return;
+            long now = System.currentTimeMillis();
+            if (firstFrameWallMs < 0) {
+                firstFrameWallMs = now;
+                firstTimestamp = timestamp;
+            }
+            lastLagMs = (now - firstFrameWallMs) - (timestamp - firstTimestamp) / 1000;
+            maxLagMs = Math.max(maxLagMs, lastLagMs);
+            totalFrames++;
+            intervalFrames++;
+        }
+
+        synchronized double takeIntervalFps() {
+            long now = System.currentTimeMillis();
+            double fps = intervalFrames * 1000.0 / Math.max(1, now - intervalStartMs);
+            intervalFrames = 0;
+            intervalStartMs = now;
+            return fps;
+        }
+
+        synchronized double averageFps() {
+            if (firstFrameWallMs < 0) return 0;
+            return totalFrames * 1000.0 / Math.max(1, System.currentTimeMillis() - firstFrameWallMs);
+        }
+    }
+}
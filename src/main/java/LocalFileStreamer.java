@@ -49,18 +49,41 @@ public class LocalFileStreamer {
     final static String STREAM_DESCRIPTION_ON_SERVER = "Streaming a local MP4 file, served by MediaMTX";
     final static String SPRING_BOOT_SERVER_URL = "http://localhost:8080";
 
+    // 사용법: LocalFileStreamer [--loop] [--start <초>] [--end <초>] [파일|디렉터리 ...]
+    //   인자가 없으면 INPUT_MP4_FILE_PATH 한 개, 디렉터리는 안의 동영상 파일을 이름순으로 재생
+    //   여러 파일/반복 재생도 RTMP 연결은 하나로 유지 (파일이 바뀌어도 재연결/플레이어 재버퍼링 없음)
+    //   --start/--end: 파일마다 이 구간만 재생. 시작은 KeyframeIndex(<파일>.kfi)로 직전 키프레임에서 바로 시작
     public static void main(String[] args) {
         FFmpegLogCallback.set();
         avutil.av_log_set_level(avutil.AV_LOG_DEBUG);
 
         System.out.println("Starting MP4 File Streaming Client (to MediaMTX)...");
-        System.out.println("Input MP4 file: " + INPUT_MP4_FILE_PATH);
-
-        File inputFile = new File(INPUT_MP4_FILE_PATH);
-        if (!inputFile.exists() || !inputFile.isFile()) {
-            System.err.println("Error: Input MP4 file not found or is not a file: " + INPUT_MP4_FILE_PATH);
+        List<String> inputPaths = new ArrayList<>();
+        boolean loop = false;
+        long startMicros = 0;
+        long endMicros = Long.MAX_VALUE;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--loop")) {
+                loop = true;
+            } else if (args[i].equals("--start") && i + 1 < args.length) {
+                startMicros = Math.round(Double.parseDouble(args[++i]) * 1_000_000);
+            } else if (args[i].equals("--end") && i + 1 < args.length) {
+                endMicros = Math.round(Double.parseDouble(args[++i]) * 1_000_000);
+            } else {
+                inputPaths.add(args[i]);
+            }
+        }
+        if (endMicros <= startMicros) {
+            System.err.println("Error: --end must be after --start.");
             return;
         }
+        if (inputPaths.isEmpty()) inputPaths.add(INPUT_MP4_FILE_PATH);
+        List<File> inputFiles = FilePlaylist.expand(inputPaths);
+        if (inputFiles.isEmpty()) {
+            System.err.println("Error: No input video file found in: " + inputPaths);
+            return;
+        }
+        System.out.println("Playlist: " + inputFiles.size() + " file(s)" + (loop ? ", looping" : "") + ". First: " + inputFiles.get(0));
 
         AtomicReference<FFmpegFrameGrabber> grabberRef = new AtomicReference<>(); // 파일용 FFmpegFrameGrabber
         AtomicReference<FFmpegFrameRecorder> recorderRef = new AtomicReference<>();
@@ -69,14 +92,17 @@ public class LocalFileStreamer {
         CountDownLatch recorderStartedLatch = new CountDownLatch(1);
         AtomicBoolean recorderProperlyStopped = new AtomicBoolean(false);
         final AtomicBoolean streamingActive = new AtomicBoolean(true);
+        FilePlaylist playlist = new FilePlaylist(inputFiles, loop, startMicros);
 
         try {
-            // 1. Initialize FrameGrabber (MP4 File)
-            System.out.println("Initializing file grabber for: " + INPUT_MP4_FILE_PATH);
-            FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(INPUT_MP4_FILE_PATH);
+            // 1. Initialize FrameGrabber (MP4 File) - 재생 목록의 첫 파일, 다음 파일은 백그라운드에서 미리 열림
+            System.out.println("Initializing file grabber for: " + inputFiles.get(0));
+            FFmpegFrameGrabber grabber = playlist.next(); // 파일 열기 및 정보 읽기
+            if (grabber == null) {
+                System.err.println("No playable file in playlist. Exiting."); return;
+            }
             grabberRef.set(grabber);
-            grabber.start(); // 파일 열기 및 정보 읽기
-            System.out.println("File grabber started.");
+            System.out.println("File grabber started: " + playlist.getCurrentFile());
 
             int imageWidth = grabber.getImageWidth();
             int imageHeight = grabber.getImageHeight();
@@ -200,30 +226,57 @@ public class LocalFileStreamer {
             System.out.println("Streaming frames from MP4 file to MediaMTX (RTMP)... Close preview window to stop.");
             CanvasFrame currentCanvas = canvasRef.get();
             Frame capturedFrame;
+            long frameNumber = 0; // JFR 이벤트(FrameStageEvent) 태그용
+            // 파일이 바뀌어도 출력 타임스탬프가 이어지도록: 출력 = timestampOffset + (파일 내 시각 - 파일 첫 프레임 시각)
+            long frameIntervalMicros = Math.round(1_000_000.0 / sourceFrameRate);
+            long timestampOffset = 0;
+            long fileStartTimestamp = -1;
+            long lastOutputTimestamp = 0;
 
             // 파일에서 프레임을 읽을 때는 grabber.getTimestamp() 사용 권장
-            while (streamingActive.get() && (capturedFrame = grabber.grab()) != null) { // grab()은 비디오/오디오 모두 가져옴
+            while (streamingActive.get()) {
+                capturedFrame = FrameStageEvent.grab(grabber, "file", frameNumber); // grab()은 비디오/오디오 모두 가져옴
+                if (capturedFrame != null && sourceTimestamp(grabber, capturedFrame) >= endMicros) {
+                    capturedFrame = null; // --end 이후는 파일 끝으로 취급
+                }
+                if (capturedFrame == null) {
+                    // 파일 끝: 미리 열어 둔 다음 파일로 바로 전환 (레코더/RTMP 연결은 그대로)
+                    FFmpegFrameGrabber nextGrabber = playlist.next();
+                    if (nextGrabber == null) break;
+                    playlist.retire(grabber);
+                    grabber = nextGrabber;
+                    grabberRef.set(grabber);
+                    timestampOffset = lastOutputTimestamp + frameIntervalMicros;
+                    fileStartTimestamp = -1;
+                    System.out.println("Switched to next playlist file: " + playlist.getCurrentFile() + " (continuing at " + timestampOffset / 1000 + "ms)");
+                    continue;
+                }
+                frameNumber++;
                 if (currentCanvas == null || !currentCanvas.isShowing()) { /* ... 루프 중단 ... */
                     System.out.println("Canvas became non-showing. Stopping loop."); streamingActive.set(false); break;
                 }
 
                 if (capturedFrame.image != null && currentCanvas.isDisplayable()) { // 이미지가 있는 프레임만 미리보기
+                    FrameStageEvent showEvent = FrameStageEvent.start();
                     currentCanvas.showImage(capturedFrame);
+                    showEvent.finish(FrameStageEvent.SHOW, "file", frameNumber);
                 }
 
-                try {
-                    if (grabber.getTimestamp() == 0 && capturedFrame.timestamp != 0) {
-                        // OpenCVFrameGrabber 등 일부 그래버는 getTimestamp() 대신 frame.timestamp를 채울 수 있음
-                        recorder.setTimestamp(capturedFrame.timestamp);
-                    } else if (grabber.getTimestamp() != 0) {
-                        recorder.setTimestamp(grabber.getTimestamp()); // 파일의 원래 타임스탬프 사용
-                    }
-                    // 그 외의 경우, 레코더가 타임스탬프를 자체적으로 관리하거나, 프레임률 기반으로 계산해야 할 수 있지만,
-                    // 파일 입력 시에는 grabber.getTimestamp()를 우선적으로 사용하는 것이 좋습니다.
-                    // 만약 위 조건들이 모두 실패하면, RTMP의 경우 timestamp 없이 record()를 시도해 볼 수도 있습니다.
-                    // (FFmpeg이 내부적으로 처리 시도)
+                if (capturedFrame.image == null && audioChannels <= 0) {
+                    continue; // 첫 파일에 오디오가 없으면 레코더에 오디오 스트림이 없음: 뒤 파일의 오디오는 버림
+                }
 
+                try {
+                    long sourceTimestamp = sourceTimestamp(grabber, capturedFrame);
+                    if (fileStartTimestamp < 0) fileStartTimestamp = sourceTimestamp;
+                    long outputTimestamp = timestampOffset + Math.max(0, sourceTimestamp - fileStartTimestamp);
+                    recorder.setTimestamp(outputTimestamp); // 파일의 원래 타임스탬프를 재생 목록 기준으로 옮긴 값
+                    lastOutputTimestamp = Math.max(lastOutputTimestamp, outputTimestamp);
+                    // 해상도/샘플레이트가 첫 파일과 다른 파일은 레코더가 첫 파일 설정으로 스케일/리샘플
+
+                    FrameStageEvent recordEvent = FrameStageEvent.start();
                     recorder.record(capturedFrame); // 비디오 및 오디오 프레임 모두 레코딩
+                    recordEvent.finish(FrameStageEvent.RECORD, "file", frameNumber);
                 } catch (FrameRecorder.Exception fre) {
                     System.err.println("Exception during recorder.record() (RTMP from file): " + fre.getMessage());
                     // streamingActive.set(false); break; // 필요시 중단
@@ -238,6 +291,7 @@ public class LocalFileStreamer {
         } finally {
             // 리소스 해제 (이전 StreamingClientMain과 유사한 방식으로 처리)
             System.out.println("Executing finally block: Releasing all resources...");
+            playlist.close(); // 미리 열어 둔 다음 파일 grabber 정리
             FFmpegFrameRecorder currentRecorder = recorderRef.get();
             if (currentRecorder != null && !recorderProperlyStopped.get() && !recorderStartFailed.get()) { /* ... 레코더 stop/release ... */
                 try {
@@ -259,6 +313,11 @@ public class LocalFileStreamer {
         }
     }
 
+    // OpenCVFrameGrabber 등 일부 그래버는 getTimestamp() 대신 frame.timestamp를 채울 수 있음
+    private static long sourceTimestamp(FrameGrabber grabber, Frame frame) {
+        return grabber.getTimestamp() != 0 ? grabber.getTimestamp() : frame.timestamp;
+    }
+
     // registerStreamWithServer, getSuitableLocalIpAddress 메소드는 이전과 동일하게 사용
     private static void registerStreamWithServer(String name, String rtspUrl, String description) { /* ... 이전 코드 ... */
         StreamCreationRequestDto requestDto = new StreamCreationRequestDto(name, rtspUrl, description);
@@ -160,7 +160,7 @@ public class LocalVideoFileRecorder {
                     break;
                 }
 
-                Frame capturedFrame = grabber.grab();
+                Frame capturedFrame = FrameStageEvent.grab(grabber, "recorder", frameCount);
                 if (capturedFrame == null) {
                     System.out.println("Warning: Null frame grabbed. End of stream or error.");
                     recordingActive.set(false); // 루프 중단
@@ -177,13 +177,17 @@ public class LocalVideoFileRecorder {
                 }
 
 
+                FrameStageEvent showEvent = FrameStageEvent.start();
                 currentCanvas.showImage(capturedFrame); // 미리보기 업데이트
+                showEvent.finish(FrameStageEvent.SHOW, "recorder", frameCount);
 
                 long timestamp = frameCount * (1000000L / (long)FRAME_RATE);
                 recorder.setTimestamp(timestamp);
 
                 try {
+                    FrameStageEvent recordEvent = FrameStageEvent.start();
                     recorder.record(capturedFrame);
+                    recordEvent.finish(FrameStageEvent.RECORD, "recorder", frameCount);
                 } catch (FrameRecorder.Exception fre) {
                     System.err.println("Exception during recorder.record() for frame " + frameCount + ":");
                     fre.printStackTrace();
@@ -0,0 +1,175 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// HLS보다 지연이 훨씬 짧은 저해상도/저fps MJPEG 미리보기 (multipart/x-mixed-replace)
+// - 변환 루프에서 preview fps 간격으로만 프레임을 받아서, 별도 인코더 스레드가 축소 + JPEG 인코딩을 한 번만 수행
+// - 인코딩된 최신 JPEG 하나를 모든 시청자가 공유하고, 각 시청자는 항상 "가장 최신" 프레임만 보냄
+//   (느린 클라이언트는 중간 프레임을 건너뛰게 되고 서버 쪽에 버퍼가 쌓이지 않음)
+// - 시청자가 없으면 프레임 복사/인코딩을 전혀 하지 않음
+public class MjpegPreviewBroadcaster {
+
+    private static final String BOUNDARY = "previewframe";
+    private static final long CLIENT_WAIT_TIMEOUT_MS = 5000;
+
+    private final int maxWidth;
+    private final long frameIntervalNanos;
+    private final float jpegQuality;
+
+    private final AtomicReference<Frame> pendingFrame = new AtomicReference<>();
+    private final AtomicInteger viewers = new AtomicInteger();
+    private final Object frameLock = new Object();
+    private byte[] latestJpeg;
+    private long latestSequence = 0;
+    private long lastOfferNanos = 0;
+    private volatile boolean running = true;
+    private final Thread encoderThread;
+
+    public MjpegPreviewBroadcaster(int maxWidth, double fps, float jpegQuality) {
+        this.maxWidth = maxWidth;
+        this.frameIntervalNanos = (long) (1_000_000_000L / fps);
+        this.jpegQuality = jpegQuality;
+        this.encoderThread = new Thread(this::encodeLoop, "MjpegPreviewEncoder");
+        this.encoderThread.setDaemon(true);
+        this.encoderThread.start();
+    }
+
+    // 변환 루프에서 호출: 시청자가 있고 preview 간격이 지났을 때만 true
+    public boolean wantsFrame(long nowNanos) {
+        return viewers.get() > 0 && nowNanos - lastOfferNanos >= frameIntervalNanos;
+    }
+
+    // 변환 루프에서 호출: grabber 버퍼는 다음 grab()에서 재사용되므로 복사해서 인코더 스레드로 넘김
+    // 인코더가 아직 이전 프레임을 처리하지 못했으면 그 프레임은 버리고 최신 것으로 교체
+    public void offer(Frame frame) {
+        if (frame == null || frame.image == null) return;
+        lastOfferNanos = System.nanoTime();
+        Frame previous = pendingFrame.getAndSet(frame.clone());
+        if (previous != null) {
+            previous.close();
+        } else {
+            synchronized (pendingFrame) { pendingFrame.notifyAll(); }
+        }
+    }
+
+    public void stop() {
+        running = false;
+        encoderThread.interrupt();
+        synchronized (frameLock) { frameLock.notifyAll(); }
+    }
+
+    private void encodeLoop() {
+        Java2DFrameConverter converter = new Java2DFrameConverter();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+        ByteArrayOutputStream jpegBuffer = new ByteArrayOutputStream(64 * 1024);
+        try {
+            while (running) {
+                Frame frame;
+                synchronized (pendingFrame) {
+                    while ((frame = pendingFrame.getAndSet(null)) == null) {
+                        pendingFrame.wait();
+                    }
+                }
+                try {
+                    BufferedImage scaled = scale(converter.convert(frame));
+                    jpegBuffer.reset();
+                    try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(jpegBuffer)) {
+                        writer.setOutput(out);
+                        writer.write(null, new IIOImage(scaled, null, null), param);
+                    }
+                    byte[] jpeg = jpegBuffer.toByteArray();
+                    synchronized (frameLock) {
+                        latestJpeg = jpeg;
+                        latestSequence++;
+                        frameLock.notifyAll();
+                    }
+                    PipelineMetrics.increment("preview.encoded_frames");
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("[Preview] JPEG encoding failed: " + e.getMessage());
+                } finally {
+                    frame.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source) {
+        if (source.getWidth() <= maxWidth) {
+            return source;
+        }
+        int width = maxWidth;
+        int height = Math.max(1, source.getHeight() * maxWidth / source.getWidth());
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    public HttpHandler handler() {
+        return this::serve;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "multipart/x-mixed-replace; boundary=" + BOUNDARY);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache, no-store");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        exchange.sendResponseHeaders(200, 0); // chunked
+        int viewerCount = viewers.incrementAndGet();
+        PipelineMetrics.setGauge("preview.viewers", viewerCount);
+        System.out.println("[Preview] Viewer connected: " + exchange.getRemoteAddress() + " (viewers: " + viewerCount + ")");
+        long sentSequence = -1;
+        try (OutputStream os = exchange.getResponseBody()) {
+            while (running) {
+                byte[] jpeg;
+                synchronized (frameLock) {
+                    long deadline = System.currentTimeMillis() + CLIENT_WAIT_TIMEOUT_MS;
+                    while (running && latestSequence == sentSequence && System.currentTimeMillis() < deadline) {
+                        frameLock.wait(CLIENT_WAIT_TIMEOUT_MS);
+                    }
+                    if (latestSequence == sentSequence || latestJpeg == null) continue;
+                    jpeg = latestJpeg;
+                    sentSequence = latestSequence;
+                }
+                String partHeader = "--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: " + jpeg.length + "\r\n\r\n";
+                os.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                os.write(jpeg);
+                os.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                os.flush();
+            }
+        } catch (IOException e) {
+            // 클라이언트 연결 종료
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            viewerCount = viewers.decrementAndGet();
+            PipelineMetrics.setGauge("preview.viewers", viewerCount);
+            System.out.println("[Preview] Viewer disconnected: " + exchange.getRemoteAddress() + " (viewers: " + viewerCount + ")");
+            exchange.close();
+        }
+    }
+}
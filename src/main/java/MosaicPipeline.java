@@ -0,0 +1,224 @@
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 여러 RTSP 입력을 축소 디코딩해서 격자(2x2, 3x3 ...)로 합친 뒤 HLS 하나로 인코딩하는 파이프라인
+// - 입력마다 디코딩 스레드 하나: 타일 크기로 바로 BGR 변환해서 자기 타일 버퍼만 갱신
+// - 합성 루프는 입력과 무관하게 고정 fps로 타일 버퍼를 출력 프레임에 복사(blit) 후 인코딩
+//   -> 멈춘 입력은 마지막 화면으로 정지해 있을 뿐 모자이크 전체는 계속 흘러감
+// FFmpegFrameFilter(xstack)는 모든 입력 프레임이 모여야 출력이 나오므로 입력 하나가 멈추면 전체가 멈춰서 사용하지 않음
+public class MosaicPipeline {
+
+    private static final long STALL_THRESHOLD_MS = 3000;
+    private static final long RECONNECT_DELAY_MS = 3000;
+    private static final int VIDEO_BITRATE = 3000000;
+
+    private final String streamId;
+    private final List<Input> inputs = new ArrayList<>();
+    private final int columns;
+    private final int rows;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final double frameRate;
+    private final String hlsM3u8AbsolutePath;
+    private final String hlsSegmentDuration;
+    private final String hlsListSize;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private ExecutorService decoders;
+    private long segmentRetentionSeconds = 0; // 0: 플레이리스트에서 빠진 세그먼트는 바로 삭제
+
+    public MosaicPipeline(String streamId, List<String> inputUrls, int tileWidth, int tileHeight, double frameRate,
+                          String hlsM3u8AbsolutePath, String hlsSegmentDuration, String hlsListSize) {
+        this.streamId = streamId;
+        this.tileWidth = tileWidth & ~1; // YUV420P 인코딩을 위해 짝수
+        this.tileHeight = tileHeight & ~1;
+        for (int i = 0; i < inputUrls.size(); i++) {
+            inputs.add(new Input(i, inputUrls.get(i), this.tileWidth, this.tileHeight));
+        }
+        this.columns = (int) Math.ceil(Math.sqrt(inputUrls.size()));
+        this.rows = (inputUrls.size() + columns - 1) / columns;
+        this.frameRate = frameRate;
+        this.hlsM3u8AbsolutePath = hlsM3u8AbsolutePath;
+        this.hlsSegmentDuration = hlsSegmentDuration;
+        this.hlsListSize = hlsListSize;
+    }
+
+    // 0보다 크면 플레이리스트에서 빠진 세그먼트도 지우지 않음 (클립 내보내기용, 삭제는 HlsClipExporter의 정리 타이머가 담당)
+    public void setSegmentRetentionSeconds(long segmentRetentionSeconds) {
+        this.segmentRetentionSeconds = segmentRetentionSeconds;
+    }
+
+    public String getStreamId() { return streamId; }
+
+    // stop()이 호출될 때까지 블록
+    public void run() throws FrameRecorder.Exception {
+        running.set(true);
+        decoders = Executors.newFixedThreadPool(inputs.size(), runnable -> {
+            Thread thread = new Thread(runnable, "MosaicInput-" + streamId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Input input : inputs) {
+            decoders.submit(() -> decodeLoop(input));
+        }
+
+        int width = columns * tileWidth;
+        int height = rows * tileHeight;
+        FFmpegFrameRecorder recorder = createRecorder(width, height);
+        Frame output = new Frame(width, height, Frame.DEPTH_UBYTE, 3);
+        System.out.println("[" + streamId + "] Mosaic " + columns + "x" + rows + " (" + width + "x" + height + ") started with "
+                + inputs.size() + " inputs.");
+        try {
+            recorder.start();
+            long intervalNanos = (long) (1_000_000_000L / frameRate);
+            long startNanos = System.nanoTime();
+            long slot = 0;
+            while (running.get()) {
+                long dueNanos = startNanos + slot * intervalNanos;
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                } else if (-waitNanos > intervalNanos) {
+                    slot = (System.nanoTime() - startNanos) / intervalNanos; // 밀린 슬롯은 건너뜀 (타임스탬프는 실시간 유지)
+                }
+                compose(output);
+                recorder.setTimestamp(Math.round(slot * 1_000_000.0 / frameRate));
+                recorder.record(output, avutil.AV_PIX_FMT_BGR24);
+                slot++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+            decoders.shutdownNow();
+            try {
+                recorder.stop();
+                recorder.release();
+            } catch (FrameRecorder.Exception e) {
+                System.err.println("[" + streamId + "] Error stopping mosaic recorder: " + e.getMessage());
+            }
+            output.close();
+            System.out.println("[" + streamId + "] Mosaic stopped.");
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    private FFmpegFrameRecorder createRecorder(int width, int height) {
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(hlsM3u8AbsolutePath, width, height, 0);
+        recorder.setFormat("hls");
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        recorder.setFrameRate(frameRate);
+        recorder.setVideoBitrate(VIDEO_BITRATE);
+        recorder.setGopSize((int) Math.round(frameRate * Integer.parseInt(hlsSegmentDuration))); // 세그먼트 경계마다 키프레임
+        recorder.setVideoOption("preset", "veryfast");
+        recorder.setOption("hls_time", hlsSegmentDuration);
+        recorder.setOption("hls_list_size", hlsListSize);
+        recorder.setOption("hls_flags", (segmentRetentionSeconds > 0 ? "omit_endlist" : "delete_segments+omit_endlist")
+                + HlsPipeline.SEGMENT_NAME_FLAGS);
+        // HlsPipeline 과 같은 이름 규칙: /export?stream=mosaic 가 파일명 시각으로 세그먼트를 찾음
+        recorder.setOption("strftime", "1");
+        recorder.setOption("hls_segment_filename", Paths.get(hlsM3u8AbsolutePath).getParent().resolve(HlsPipeline.SEGMENT_FILENAME_PATTERN).toString());
+        return recorder;
+    }
+
+    // 각 입력의 최신 타일을 출력 프레임의 자기 칸에 복사
+    private void compose(Frame output) {
+        ByteBuffer target = (ByteBuffer) output.image[0];
+        int rowBytes = tileWidth * 3;
+        long now = System.currentTimeMillis();
+        int stalled = 0;
+        for (Input input : inputs) {
+            int x = (input.index % columns) * tileWidth;
+            int y = (input.index / columns) * tileHeight;
+            synchronized (input) {
+                for (int row = 0; row < tileHeight; row++) {
+                    target.position((y + row) * output.imageStride + x * 3);
+                    target.put(input.pixels, row * rowBytes, rowBytes);
+                }
+            }
+            if (now - input.lastUpdateMs > STALL_THRESHOLD_MS) stalled++;
+        }
+        target.rewind();
+        PipelineMetrics.setGauge("mosaic." + streamId + ".stalled_inputs", stalled);
+    }
+
+    // 입력 하나: 연결 -> 타일 크기로 디코딩 -> 타일 버퍼 갱신, 끊기면 재연결 (그동안 타일은 마지막 화면 유지)
+    private void decodeLoop(Input input) {
+        while (running.get()) {
+            FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(input.url);
+            try {
+                Map<String, String> options = new LinkedHashMap<>();
+                if (input.url.startsWith("rtsp")) {
+                    options.put("rtsp_transport", "tcp");
+                    options.put("stimeout", "5000000");
+                }
+                grabber.setVideoOption("threads", "1");
+                grabber.setVideoOption("skip_loop_filter", "all"); // 축소 출력이라 화질 차이가 거의 보이지 않음
+                ProbeCache.start(grabber, input.url, options);
+                grabber.setImageWidth(tileWidth);
+                grabber.setImageHeight(tileHeight);
+                System.out.println("[" + streamId + "] Mosaic input " + input.index + " connected: " + input.url);
+                Frame frame;
+                while (running.get() && (frame = grabber.grabImage()) != null) {
+                    input.update(frame, tileWidth, tileHeight);
+                }
+            } catch (FrameGrabber.Exception e) {
+                System.err.println("[" + streamId + "] Mosaic input " + input.index + " error: " + e.getMessage());
+            } finally {
+                try {
+                    grabber.stop();
+                    grabber.release();
+                } catch (FrameGrabber.Exception e) {
+                    // 재연결 전 정리 중 오류는 무시
+                }
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static final class Input {
+        final int index;
+        final String url;
+        final byte[] pixels; // BGR, 타일 크기, guarded by this
+        volatile long lastUpdateMs = 0;
+
+        Input(int index, String url, int tileWidth, int tileHeight) {
+            this.index = index;
+            this.url = url;
+            this.pixels = new byte[tileWidth * tileHeight * 3];
+        }
+
+        synchronized void update(Frame frame, int tileWidth, int tileHeight) {
+            if (frame.imageWidth != tileWidth || frame.imageHeight != tileHeight || frame.imageChannels != 3) return;
+            ByteBuffer source = ((ByteBuffer) frame.image[0]).duplicate();
+            int rowBytes = tileWidth * 3;
+            for (int row = 0; row < tileHeight; row++) {
+                source.position(row * frame.imageStride);
+                source.get(pixels, row * rowBytes, rowBytes);
+            }
+            lastUpdateMs = System.currentTimeMillis();
+        }
+    }
+}
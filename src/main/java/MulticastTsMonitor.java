@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+
+// 컨버터의 UDP 멀티캐스트 MPEG-TS 출력(-Dmulticast.group)을 받아서 손실/순서 이상을 확인하는 수신 점검 도구
+// - TS 패킷(188바이트)마다 sync byte(0x47)와 PID별 continuity counter 를 확인 -> 끊김/손실 집계
+// - 1초마다 비트레이트, 데이터그램 수, 오류 수 출력
+// 사용법: MulticastTsMonitor <group> <port> [interface-ip] [seconds]
+//   루프백: 컨버터를 -Dmulticast.interface=127.0.0.1 로 띄우고 MulticastTsMonitor 239.255.10.1 5000 127.0.0.1
+// 여러 개를 동시에 띄워도 서버 송신량은 그대로인지(수신자 수와 무관) 확인할 수 있음
+public class MulticastTsMonitor {
+
+    private static final int TS_PACKET_SIZE = 188;
+    private static final int NULL_PID = 0x1FFF;
+    private static final long REPORT_INTERVAL_MS = 1000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: MulticastTsMonitor <group> <port> [interface-ip] [seconds]");
+            return;
+        }
+        InetAddress group = InetAddress.getByName(args[0]);
+        int port = Integer.parseInt(args[1]);
+        NetworkInterface networkInterface = args.length > 2
+                ? NetworkInterface.getByInetAddress(InetAddress.getByName(args[2]))
+                : null;
+        long durationMs = args.length > 3 ? Long.parseLong(args[3]) * 1000 : Long.MAX_VALUE;
+
+        Map<Integer, Integer> lastContinuity = new HashMap<>();
+        long totalPackets = 0;
+        long totalContinuityErrors = 0;
+        long totalSyncErrors = 0;
+        try (MulticastSocket socket = new MulticastSocket(port)) {
+            socket.setReceiveBufferSize(4 * 1024 * 1024); // 키프레임 버스트 대비
+            socket.setSoTimeout((int) REPORT_INTERVAL_MS);
+            socket.joinGroup(new InetSocketAddress(group, port), networkInterface);
+            System.out.println("Joined " + group.getHostAddress() + ":" + port
+                    + (networkInterface != null ? " on " + networkInterface.getName() : ""));
+
+            byte[] buffer = new byte[65536];
+            DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+            long startMs = System.currentTimeMillis();
+            long windowStartMs = startMs;
+            long windowBytes = 0;
+            long windowDatagrams = 0;
+            long windowContinuityErrors = 0;
+            long windowSyncErrors = 0;
+            while (System.currentTimeMillis() - startMs < durationMs) {
+                try {
+                    socket.receive(datagram);
+                    windowDatagrams++;
+                    windowBytes += datagram.getLength();
+                    for (int offset = 0; offset + TS_PACKET_SIZE <= datagram.getLength(); offset += TS_PACKET_SIZE) {
+                        totalPackets++;
+                        if (buffer[offset] != 0x47) {
+                            windowSyncErrors++;
+                            continue;
+                        }
+                        int pid = ((buffer[offset + 1] & 0x1F) << 8) | (buffer[offset + 2] & 0xFF);
+                        boolean hasPayload = (buffer[offset + 3] & 0x10) != 0;
+                        if (pid == NULL_PID || !hasPayload) continue;
+                        int continuity = buffer[offset + 3] & 0x0F;
+                        Integer last = lastContinuity.put(pid, continuity);
+                        if (last != null && continuity != ((last + 1) & 0x0F) && continuity != last) {
+                            windowContinuityErrors++; // 같은 값은 허용된 중복 패킷
+                        }
+                    }
+                } catch (SocketTimeoutException e) {
+                    // 수신 없음: 아래에서 0으로 보고
+                }
+                long now = System.currentTimeMillis();
+                if (now - windowStartMs >= REPORT_INTERVAL_MS) {
+                    double seconds = (now - windowStartMs) / 1000.0;
+                    System.out.printf("%.2f Mbps, %d datagrams/s, %d PIDs, cc errors %d, sync errors %d%n",
+                            windowBytes * 8 / seconds / 1e6, Math.round(windowDatagrams / seconds), lastContinuity.size(),
+                            windowContinuityErrors, windowSyncErrors);
+                    totalContinuityErrors += windowContinuityErrors;
+                    totalSyncErrors += windowSyncErrors;
+                    windowStartMs = now;
+                    windowBytes = 0;
+                    windowDatagrams = 0;
+                    windowContinuityErrors = 0;
+                    windowSyncErrors = 0;
+                }
+            }
+            socket.leaveGroup(new InetSocketAddress(group, port), networkInterface);
+        }
+        System.out.println("Total: " + totalPackets + " TS packets, " + totalContinuityErrors + " continuity errors, "
+                + totalSyncErrors + " sync errors.");
+    }
+}
@@ -0,0 +1,199 @@
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.javacv.FFmpegFrameFilter;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameFilter;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameGrabber;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_NV12;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.ffmpeg.global.avutil.av_get_pix_fmt_name;
+import static org.bytedeco.ffmpeg.global.avutil.av_image_copy_to_buffer;
+import static org.bytedeco.ffmpeg.global.avutil.av_image_fill_arrays;
+import static org.bytedeco.ffmpeg.global.avutil.av_image_get_buffer_size;
+import static org.bytedeco.ffmpeg.global.avutil.av_image_get_linesize;
+
+// 카메라 캡처 픽셀 형식 협상: OpenCVFrameGrabber 는 항상 BGR 로 변환해서 주고, FFmpegFrameRecorder 는 그걸 다시 YUV420P 로 변환함
+// (프레임마다 전체 해상도 색공간 변환 두 번). 여기서는 FFmpeg 캡처 장치(v4l2/avfoundation)를 RAW 모드로 열어서
+// - 카메라가 NV12/YUV420P 를 주면 그 형식 그대로 인코더에 넘김 (libx264 는 둘 다 직접 받음 -> 변환 없음)
+// - YUYV 등 그 외 형식이면 인코더 입력 변환 한 번만 (BGR 를 거치지 않음)
+// - 미리보기만 축소 해상도(PREVIEW_WIDTH)로 BGR 변환
+// 인코더로 넘기는 프레임은 평면들이 연속된 하나의 버퍼이고 stride = 첫 평면의 한 줄 바이트 수 (nv12/yuv420p 는 채널 1 로 Y 평면을
+// GRAY 처럼, yuyv422 는 채널 2 로 각 픽셀의 첫 바이트가 Y: StaticSceneDetector, LatencyStamp 는 밝기 값에서 그대로 동작)
+// 지원 장치가 없거나(Windows dshow 는 장치 이름이 필요) 열리지 않으면 예전처럼 OpenCVFrameGrabber(BGR) 로 대체
+// -Dcapture.native=false 면 항상 OpenCV 경로 (비교용)
+public class NativeCapture {
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("capture.native", "true"));
+    private static final int PREVIEW_WIDTH = Integer.getInteger("preview.width", 640);
+    // 카메라에 요청할 순서: 인코더가 바로 받는 형식 먼저
+    private static final String[] PREFERRED_INPUT_FORMATS = {"nv12", "yuv420p", "yuyv422"};
+
+    private final FrameGrabber grabber;
+    private final int pixelFormat;       // 캡처 프레임 형식 (OpenCV 경로는 BGR24)
+    private final boolean raw;
+    private final Frame encoderFrame = new Frame();
+    private ByteBuffer packedBuffer;     // 평면이 떨어져 있는 경우에만 사용하는 복사 버퍼
+    private FFmpegFrameFilter previewFilter;
+
+    private NativeCapture(FrameGrabber grabber, int pixelFormat, boolean raw) {
+        this.grabber = grabber;
+        this.pixelFormat = pixelFormat;
+        this.raw = raw;
+    }
+
+    // 시작된 grabber 를 가진 캡처를 반환
+    public static NativeCapture open(int deviceIndex, double frameRate) throws FrameGrabber.Exception {
+        if (ENABLED) {
+            for (String inputFormat : PREFERRED_INPUT_FORMATS) {
+                FFmpegFrameGrabber grabber = deviceGrabber(deviceIndex, frameRate, inputFormat);
+                if (grabber == null) break;
+                try {
+                    grabber.start();
+                    int pixelFormat = grabber.getPixelFormat();
+                    System.out.println("Native capture negotiated " + av_get_pix_fmt_name(pixelFormat).getString() + " "
+                            + grabber.getImageWidth() + "x" + grabber.getImageHeight()
+                            + (isEncoderNative(pixelFormat) ? " (passed to encoder without conversion)" : " (one conversion for encoder)"));
+                    return new NativeCapture(grabber, pixelFormat, true);
+                } catch (FrameGrabber.Exception | RuntimeException e) {
+                    System.out.println("Camera does not accept " + inputFormat + ": " + e.getMessage());
+                    grabber.release();
+                }
+            }
+            System.out.println("Native YUV capture unavailable. Falling back to OpenCV (BGR).");
+        }
+        FrameGrabber grabber = new OpenCVFrameGrabber(deviceIndex);
+        grabber.start();
+        return new NativeCapture(grabber, AV_PIX_FMT_BGR24, false);
+    }
+
+    public FrameGrabber getGrabber() { return grabber; }
+
+    // record(frame, pixelFormat) 에 넘길 캡처 형식
+    public int getPixelFormat() { return pixelFormat; }
+
+    // 레코더에 설정할 인코더 입력 형식: 캡처 형식을 그대로 받을 수 있으면 그 형식, 아니면 YUV420P
+    public int getEncoderPixelFormat() { return isEncoderNative(pixelFormat) ? pixelFormat : AV_PIX_FMT_YUV420P; }
+
+    public int getPreviewWidth() {
+        int width = grabber.getImageWidth();
+        return raw && width > PREVIEW_WIDTH ? PREVIEW_WIDTH : width;
+    }
+
+    public int getPreviewHeight() {
+        int width = grabber.getImageWidth();
+        int height = grabber.getImageHeight();
+        return raw && width > PREVIEW_WIDTH ? (int) Math.round((double) height * PREVIEW_WIDTH / width) & ~1 : height;
+    }
+
+    // 인코더로 넘길 프레임. RAW 프레임의 평면이 이미 연속이면 복사 없이 감싸기만 함
+    // 반환 프레임은 다음 호출에서 재사용되므로 큐에 넣으려면 clone() 할 것
+    public Frame toEncoderFrame(Frame captured) {
+        if (!raw || !(captured.opaque instanceof AVFrame)) return captured;
+        AVFrame picture = (AVFrame) captured.opaque;
+        int width = captured.imageWidth;
+        int height = captured.imageHeight;
+        int size = av_image_get_buffer_size(pixelFormat, width, height, 1);
+        ByteBuffer planes;
+        if (isPacked(picture, width, height)) {
+            planes = picture.data(0).capacity(size).asBuffer();
+        } else {
+            if (packedBuffer == null || packedBuffer.capacity() < size) packedBuffer = ByteBuffer.allocateDirect(size);
+            av_image_copy_to_buffer(new BytePointer(packedBuffer), size, picture.data(), picture.linesize(), pixelFormat, width, height, 1);
+            planes = packedBuffer;
+        }
+        encoderFrame.imageWidth = width;
+        encoderFrame.imageHeight = height;
+        encoderFrame.imageDepth = Frame.DEPTH_UBYTE;
+        // JavaCV 는 record(frame, fmt)/push(frame, fmt) 에서 linesize[0] = imageStride 로 씀:
+        // 평면 형식(nv12/yuv420p)은 너비, 패킹된 yuyv422 는 너비 x 2 (채널 2: 짝수 바이트가 Y)
+        int stride = av_image_get_linesize(pixelFormat, width, 0);
+        encoderFrame.imageChannels = stride / width;
+        encoderFrame.imageStride = stride;
+        encoderFrame.image = new ByteBuffer[]{planes};
+        encoderFrame.timestamp = captured.timestamp;
+        return encoderFrame;
+    }
+
+    // 미리보기용 프레임: RAW 면 축소 + BGR 변환 (변환은 여기서 한 번, 축소 해상도로만). 실패하면 null
+    public Frame toPreviewFrame(Frame encoderInput) {
+        if (!raw) return encoderInput;
+        try {
+            if (previewFilter == null) {
+                previewFilter = new FFmpegFrameFilter("scale=" + getPreviewWidth() + ":" + getPreviewHeight() + ",format=bgr24",
+                        encoderInput.imageWidth, encoderInput.imageHeight);
+                previewFilter.setPixelFormat(pixelFormat);
+                previewFilter.start();
+            }
+            previewFilter.push(encoderInput, pixelFormat);
+            return previewFilter.pull();
+        } catch (FrameFilter.Exception e) {
+            System.err.println("Preview conversion failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void release() {
+        if (previewFilter != null) {
+            try {
+                previewFilter.stop();
+                previewFilter.release();
+            } catch (FrameFilter.Exception e) {
+                System.err.println("Error releasing preview filter: " + e.getMessage());
+            }
+            previewFilter = null;
+        }
+    }
+
+    static boolean isEncoderNative(int pixelFormat) {
+        return pixelFormat == AV_PIX_FMT_YUV420P || pixelFormat == AV_PIX_FMT_NV12;
+    }
+
+    // 플랫폼별 FFmpeg 캡처 장치. 지원하지 않는 플랫폼이면 null
+    private static FFmpegFrameGrabber deviceGrabber(int deviceIndex, double frameRate, String inputFormat) {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        FFmpegFrameGrabber grabber;
+        if (os.contains("linux")) {
+            grabber = new FFmpegFrameGrabber("/dev/video" + deviceIndex);
+            grabber.setFormat("video4linux2");
+            grabber.setOption("input_format", inputFormat);
+        } else if (os.contains("mac")) {
+            grabber = new FFmpegFrameGrabber(String.valueOf(deviceIndex));
+            grabber.setFormat("avfoundation");
+            grabber.setOption("pixel_format", inputFormat);
+        } else {
+            return null;
+        }
+        grabber.setOption("framerate", String.valueOf((int) frameRate));
+        grabber.setFrameRate(frameRate);
+        grabber.setImageMode(FrameGrabber.ImageMode.RAW); // 디코더 출력 형식 그대로 (grabber 안에서 BGR 변환 안 함)
+        return grabber;
+    }
+
+    // 평면들이 data[0] 부터 정렬 없이(align 1) 이어져 있는지 = 하나의 버퍼로 넘겨도 되는지
+    private boolean isPacked(AVFrame picture, int width, int height) {
+        PointerPointer<BytePointer> expected = new PointerPointer<>(4);
+        IntPointer expectedLinesize = new IntPointer(4);
+        try {
+            av_image_fill_arrays(expected, expectedLinesize, picture.data(0), pixelFormat, width, height, 1);
+            for (int i = 0; i < 4; i++) {
+                Pointer plane = expected.get(i);
+                if (plane == null || plane.isNull()) break;
+                if (plane.address() != picture.data(i).address() || expectedLinesize.get(i) != picture.linesize(i)) return false;
+            }
+            return true;
+        } finally {
+            expected.close();
+            expectedLinesize.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.OpenCVFrameGrabber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+// JavaCPP 네이티브 라이브러리(FFmpeg/OpenCV)를 처음 쓰는 시점이 아니라 main 시작 직후 백그라운드에서 미리 로드
+// Loader.load는 압축 해제 + dlopen 으로 수백 ms ~ 수 초가 걸리는데, 그동안 main 스레드는 설정/HTTP 서버 준비를 계속함.
+// 라이브러리 묶음마다 스레드 하나씩 병렬로 로드. -Dnative.preload=false 면 예전처럼 첫 사용 시점에 로드 (벤치마크 비교용)
+public final class NativePreloader {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("native.preload", "true"));
+
+    private static final List<CompletableFuture<Void>> loads = new ArrayList<>();
+
+    private NativePreloader() {}
+
+    // FFmpegFrameGrabber/Recorder가 쓰는 avutil, avcodec, avformat, swscale, swresample, avdevice
+    public static void startFfmpeg() {
+        start("FFmpeg", () -> {
+            FFmpegFrameGrabber.tryLoad();
+            FFmpegFrameRecorder.tryLoad();
+        });
+    }
+
+    // 카메라 캡처용 opencv_core, opencv_imgproc, opencv_videoio
+    public static void startOpenCv() {
+        start("OpenCV", OpenCVFrameGrabber::tryLoad);
+    }
+
+    // 미리 로드가 끝날 때까지 대기 (실패해도 예외를 던지지 않음: 첫 사용 시점에 다시 로드를 시도하면서 원래 오류가 나옴)
+    public static void awaitAll() {
+        List<CompletableFuture<Void>> pending;
+        synchronized (loads) {
+            pending = new ArrayList<>(loads);
+        }
+        for (CompletableFuture<Void> load : pending) {
+            try {
+                load.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // start()에서 이미 로그 출력
+            }
+        }
+    }
+
+    private static void start(String name, LoadTask task) {
+        if (!ENABLED) return;
+        CompletableFuture<Void> load = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            long startNanos = System.nanoTime();
+            try {
+                task.load();
+                long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+                PipelineMetrics.setGauge("startup.native_preload_ms." + name, elapsedMs);
+                System.out.println("[NativePreloader] " + name + " natives loaded in " + elapsedMs + "ms");
+                load.complete(null);
+            } catch (Throwable t) {
+                System.err.println("[NativePreloader] Failed to preload " + name + " natives: " + t);
+                load.completeExceptionally(t);
+            }
+        }, "NativePreload-" + name);
+        thread.setDaemon(true);
+        synchronized (loads) {
+            loads.add(load);
+        }
+        thread.start();
+    }
+
+    private interface LoadTask {
+        void load() throws Exception;
+    }
+}
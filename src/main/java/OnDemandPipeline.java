@@ -0,0 +1,170 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
+
+// 시청자가 있을 때만 HlsPipeline을 돌리는 래퍼
+// - 플레이리스트/세그먼트 요청(touch)이 오면 파이프라인이 없을 때 시작
+// - 마지막 요청 후 idleTimeoutMs 동안 아무도 보지 않으면 정지 (0 이하면 한 번 시작한 뒤 계속 유지)
+// - setAlwaysOn(true) 면 시청자와 관계없이 계속 실행 (멀티캐스트 출력처럼 HLS 요청 없이 받는 수신자가 있을 때)
+// - 시작 요청 ~ 첫 세그먼트가 플레이리스트에 올라올 때까지의 시간을 콜드 스타트 지표로 기록
+public class OnDemandPipeline {
+
+    private static final long READY_POLL_INTERVAL_MS = 100;
+    private static final long ALWAYS_ON_RESTART_DELAY_MS = 3000; // 상시 실행 파이프라인이 끝났을 때(소스 끊김 등) 다시 시작하기까지
+
+    private final HlsPipeline pipeline;
+    private final Path playlistPath;
+    private final ExecutorService executor;
+    private final long idleTimeoutMs;
+    private final String metricPrefix;
+    private volatile LongSupplier otherViewers = () -> 0; // MJPEG/FLV 처럼 HLS 요청 없이 유지되는 시청자 수
+
+    private volatile long lastActivityMs = 0;
+    private Future<?> runFuture; // guarded by this. 정지 요청 후에도 실제로 끝날 때까지 유지
+    private boolean stopRequested; // guarded by this
+    private boolean restartPending; // guarded by this. 정지 중에 요청이 와서 이전 실행이 끝나면 바로 다시 시작
+    private boolean alwaysOn; // guarded by this
+    private volatile long runEndedMs = 0;
+    private long startRequestedNanos;
+    private boolean coldStartRecorded;
+
+    public OnDemandPipeline(HlsPipeline pipeline, String playlistAbsolutePath, ExecutorService executor, long idleTimeoutMs) {
+        this.pipeline = pipeline;
+        this.playlistPath = Paths.get(playlistAbsolutePath);
+        this.executor = executor;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.metricPrefix = "ondemand." + pipeline.getStreamId() + ".";
+    }
+
+    public HlsPipeline getPipeline() { return pipeline; }
+
+    public void setOtherViewers(LongSupplier otherViewers) {
+        this.otherViewers = otherViewers;
+    }
+
+    // 시청자와 관계없이 계속 실행 (HLS 요청을 보내지 않는 멀티캐스트 수신자용): 유휴 정지 안 함, 끝나면 유휴 감시 타이머가 다시 시작
+    public synchronized void setAlwaysOn(boolean alwaysOn) {
+        this.alwaysOn = alwaysOn;
+    }
+
+    // 시청 요청이 있을 때마다 호출. 파이프라인이 돌고 있지 않으면 시작 (기다리지 않고 바로 반환)
+    public synchronized void touch() {
+        lastActivityMs = System.currentTimeMillis();
+        if (runFuture != null && !runFuture.isDone()) {
+            // 유휴 정지 직후 다시 요청: 이전 run() 이 grabber/recorder 를 해제하고 끝나면 그 스레드가 새로 시작 (같은 HlsPipeline 을 두 번 돌리지 않음)
+            if (stopRequested) restartPending = true;
+            return;
+        }
+        start();
+    }
+
+    // guarded by this
+    private void start() {
+        stopRequested = false;
+        restartPending = false;
+        deleteStaleOutput(); // 이전 실행의 플레이리스트가 남아 있으면 시청자가 끝난 세그먼트를 받게 됨
+        startRequestedNanos = System.nanoTime();
+        coldStartRecorded = false;
+        PipelineMetrics.increment(metricPrefix + "starts");
+        PipelineMetrics.setGauge(metricPrefix + "active", 1);
+        System.out.println("[" + pipeline.getStreamId() + "] Viewer requested stream. Starting pipeline on demand.");
+        runFuture = executor.submit(() -> {
+            try {
+                pipeline.run();
+            } catch (Exception e) {
+                System.err.println("[" + pipeline.getStreamId() + "] On-demand pipeline failed: " + e.getMessage());
+            } finally {
+                PipelineMetrics.setGauge(metricPrefix + "active", 0);
+                runEndedMs = System.currentTimeMillis();
+                runFinished();
+            }
+        });
+    }
+
+    // 실행 작업이 끝날 때 (파이프라인 자원 해제 후) 호출. 정지 중에 온 요청이 있으면 다시 시작
+    private synchronized void runFinished() {
+        if (restartPending) {
+            System.out.println("[" + pipeline.getStreamId() + "] Previous run finished. Restarting for pending viewer.");
+            start();
+        } else {
+            runFuture = null; // 작업이 완전히 끝나기 전에 온 touch() 도 새로 시작하도록
+        }
+    }
+
+    // 첫 세그먼트가 플레이리스트에 올라올 때까지 대기 (첫 요청을 잡아두고 빈 플레이리스트/404 대신 바로 재생 가능하게)
+    public boolean awaitReady(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            boolean pending;
+            boolean alive;
+            synchronized (this) {
+                pending = restartPending; // 아직 이전 실행의 플레이리스트가 남아 있음
+                alive = pending || (runFuture != null && !runFuture.isDone());
+            }
+            if (!pending && isPlaylistReady()) {
+                recordColdStart();
+                return true;
+            }
+            if (!alive) return false; // 소스 연결 실패 등
+            if (System.currentTimeMillis() >= deadline) return false;
+            Thread.sleep(READY_POLL_INTERVAL_MS);
+        }
+    }
+
+    // 유휴 감시 타이머에서 주기적으로 호출
+    public synchronized void stopIfIdle(long nowMs) {
+        if (alwaysOn) {
+            if ((runFuture == null || runFuture.isDone()) && nowMs - runEndedMs >= ALWAYS_ON_RESTART_DELAY_MS) {
+                System.out.println("[" + pipeline.getStreamId() + "] Always-on pipeline is not running. Restarting.");
+                start();
+            }
+            return;
+        }
+        if (idleTimeoutMs <= 0 || stopRequested || runFuture == null || runFuture.isDone()) return;
+        if (otherViewers.getAsLong() > 0) {
+            lastActivityMs = nowMs;
+            return;
+        }
+        if (nowMs - lastActivityMs < idleTimeoutMs) return;
+        System.out.println("[" + pipeline.getStreamId() + "] No viewers for " + idleTimeoutMs / 1000 + "s. Stopping pipeline.");
+        pipeline.stop(); // 종료 요청만. 해제는 파이프라인 스레드가 하고 active 게이지도 그때 0 이 됨
+        stopRequested = true;
+        PipelineMetrics.increment(metricPrefix + "idle_stops");
+    }
+
+    private boolean isPlaylistReady() {
+        try {
+            return Files.exists(playlistPath)
+                    && new String(Files.readAllBytes(playlistPath), StandardCharsets.UTF_8).contains("#EXTINF");
+        } catch (IOException e) {
+            return false; // 먹서가 파일을 교체하는 중
+        }
+    }
+
+    private synchronized void recordColdStart() {
+        if (coldStartRecorded) return;
+        coldStartRecorded = true;
+        long coldStartMs = (System.nanoTime() - startRequestedNanos) / 1_000_000;
+        PipelineMetrics.setGauge(metricPrefix + "cold_start_ms", coldStartMs);
+        LatencyHistogram.get(metricPrefix + "cold_start").record(coldStartMs);
+        System.out.println("[" + pipeline.getStreamId() + "] First segment ready " + coldStartMs + "ms after start request.");
+    }
+
+    private void deleteStaleOutput() {
+        File dir = playlistPath.getParent().toFile();
+        boolean keepSegments = pipeline.getSegmentRetentionSeconds() > 0; // 보관 중인 세그먼트는 클립 내보내기에 사용
+        File[] files = dir.listFiles((d, name) -> (!keepSegments && name.endsWith(".ts")) || name.equals(playlistPath.getFileName().toString()));
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.delete()) {
+                System.err.println("[" + pipeline.getStreamId() + "] Could not delete stale HLS file: " + file.getAbsolutePath());
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 파이프라인 전체에서 공유하는 간단한 카운터/게이지 저장소
+// (이름 -> 값, 이름 순으로 정렬된 스냅샷을 주기적으로 로그에 출력하거나 HTTP로 노출할 때 사용)
+public class PipelineMetrics {
+
+    private static final Map<String, AtomicLong> values = new ConcurrentSkipListMap<>();
+
+    private PipelineMetrics() {}
+
+    private static AtomicLong metric(String name) {
+        return values.computeIfAbsent(name, k -> new AtomicLong());
+    }
+
+    public static void increment(String name) {
+        metric(name).incrementAndGet();
+    }
+
+    public static void add(String name, long delta) {
+        metric(name).addAndGet(delta);
+    }
+
+    public static void setGauge(String name, long value) {
+        metric(name).set(value);
+    }
+
+    public static long get(String name) {
+        AtomicLong value = values.get(name);
+        return value != null ? value.get() : 0;
+    }
+
+    // "name value" 형식의 한 줄씩 (Prometheus text 포맷과 호환되는 단순 형태)
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, AtomicLong> entry : values.entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // 지정된 prefix로 시작하는 값만 한 줄로 로그 출력 (데몬 타이머)
+    public static Timer startLogging(String prefix, long intervalMs) {
+        Timer timer = new Timer("MetricsLogTimer-" + prefix, true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                StringBuilder sb = new StringBuilder("[Metrics]");
+                for (Map.Entry<String, AtomicLong> entry : values.entrySet()) {
+                    if (entry.getKey().startsWith(prefix)) {
+                        sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue().get());
+                    }
+                }
+                System.out.println(sb);
+            }
+        }, intervalMs, intervalMs);
+        return timer;
+    }
+}
@@ -0,0 +1,170 @@
+import com.sun.management.OperatingSystemMXBean;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameFilter;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameFilter;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_NV12;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.ffmpeg.global.avutil.av_image_get_buffer_size;
+
+// NativeCapture 의 픽셀 형식 협상 효과 측정: 원시 YUV 파일(I420 또는 NV12)을 카메라 출력 대신 넣고 프레임당 프로세스 CPU 시간을 비교
+// - bgr:    예전 경로. 카메라 쪽(OpenCV)에서 YUV -> BGR(전체 해상도) 변환, 레코더가 다시 BGR -> YUV420P 변환 후 인코딩
+// - native: 새 경로. 같은 형식을 인코더에 그대로 넘기고(변환 없음), 미리보기만 축소 해상도로 BGR 변환
+// 두 경로 모두 송출과 같은 레코더 설정(StreamingClientMain.createRtmpRecorder, preset ultrafast, 스레드 1개)으로 인코딩
+// 인코딩 비용은 두 경로가 같으므로 차이가 곧 줄어든 변환 비용
+// 사용법: PixelFormatBenchmark [file.yuv width height [yuv420p|nv12]]  (-Dbench.frames=600)
+//   파일이 없으면 1280x720 I420 합성 파일을 만들어서 사용. 원시 파일은 ffmpeg -i in.mp4 -pix_fmt nv12 -f rawvideo out.yuv 로 만들 수 있음
+public class PixelFormatBenchmark {
+
+    private static final String BENCH_DIRECTORY = "pixel_format_bench";
+    private static final int LOADED_FRAMES = 60; // 메모리에 올려서 반복 사용 (디스크 읽기 비용 제외)
+    private static final int PREVIEW_WIDTH = 640;
+
+    public static void main(String[] args) throws Exception {
+        File benchDir = new File(BENCH_DIRECTORY);
+        Files.createDirectories(benchDir.toPath());
+        File input;
+        int width, height, pixelFormat;
+        if (args.length >= 3) {
+            input = new File(args[0]);
+            width = Integer.parseInt(args[1]);
+            height = Integer.parseInt(args[2]);
+            pixelFormat = args.length > 3 && args[3].equalsIgnoreCase("nv12") ? AV_PIX_FMT_NV12 : AV_PIX_FMT_YUV420P;
+        } else {
+            width = 1280;
+            height = 720;
+            pixelFormat = AV_PIX_FMT_YUV420P;
+            input = new File(benchDir, "synthetic_1280x720_i420.yuv");
+            renderSyntheticI420(input, width, height, LOADED_FRAMES);
+        }
+        long frames = Long.getLong("bench.frames", 600);
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+
+        List<Frame> source = loadFrames(input, width, height, pixelFormat);
+        System.out.println("Loaded " + source.size() + " " + avutil.av_get_pix_fmt_name(pixelFormat).getString() + " frames "
+                + width + "x" + height + " from " + input);
+        // 첫 실행은 JIT/네이티브 초기화가 섞이므로 짧게 한 번씩 돌리고 버림
+        run("bgr", source, pixelFormat, Math.min(frames, 30), benchDir);
+        run("native", source, pixelFormat, Math.min(frames, 30), benchDir);
+        double bgrMicros = run("bgr", source, pixelFormat, frames, benchDir);
+        double nativeMicros = run("native", source, pixelFormat, frames, benchDir);
+        System.out.println(String.format(Locale.ROOT, "=== bgr %.0f us/frame, native %.0f us/frame: saved %.0f us/frame (%.1f%%) ===",
+                bgrMicros, nativeMicros, bgrMicros - nativeMicros, (bgrMicros - nativeMicros) * 100 / bgrMicros));
+    }
+
+    // 반환: 프레임당 프로세스 CPU 시간(us)
+    private static double run(String path, List<Frame> source, int pixelFormat, long frames, File benchDir)
+            throws FrameRecorder.Exception, FrameFilter.Exception {
+        Frame first = source.get(0);
+        int width = first.imageWidth;
+        int height = first.imageHeight;
+        boolean nativePath = path.equals("native");
+        int encoderPixelFormat = nativePath ? pixelFormat : AV_PIX_FMT_YUV420P;
+        FFmpegFrameRecorder recorder = StreamingClientMain.createRtmpRecorder(new File(benchDir, path + ".flv").getPath(),
+                width, height, StreamingClientMain.VIDEO_BITRATE, encoderPixelFormat);
+        recorder.setVideoOption("preset", "ultrafast");
+        recorder.setVideoOption("threads", "1");
+        // bgr 경로의 카메라 쪽 변환(OpenCV 가 하던 YUV -> BGR) / native 경로의 축소 미리보기 변환
+        int previewHeight = (int) Math.round((double) height * PREVIEW_WIDTH / width) & ~1;
+        FFmpegFrameFilter conversion = new FFmpegFrameFilter(nativePath
+                ? "scale=" + PREVIEW_WIDTH + ":" + previewHeight + ",format=bgr24"
+                : "format=bgr24", width, height);
+        conversion.setPixelFormat(pixelFormat);
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpuStart;
+        long wallStart;
+        try {
+            recorder.start();
+            conversion.start();
+            cpuStart = os.getProcessCpuTime();
+            wallStart = System.nanoTime();
+            for (long i = 0; i < frames; i++) {
+                Frame frame = source.get((int) (i % source.size()));
+                conversion.push(frame, pixelFormat);
+                Frame converted = conversion.pull();
+                recorder.setTimestamp(Math.round(i * 1_000_000 / StreamingClientMain.FRAME_RATE));
+                if (nativePath) {
+                    recorder.record(frame, pixelFormat); // 인코더 입력 형식과 같음: sws_scale 없음 (converted 는 미리보기용)
+                } else if (converted != null) {
+                    recorder.record(converted, avutil.AV_PIX_FMT_BGR24); // 레코더가 BGR -> YUV420P 변환
+                }
+            }
+        } finally {
+            recorder.stop();
+            recorder.release();
+            conversion.stop();
+            conversion.release();
+        }
+        double cpuMicros = (os.getProcessCpuTime() - cpuStart) / 1000.0 / frames;
+        double wallMicros = (System.nanoTime() - wallStart) / 1000.0 / frames;
+        System.out.println(String.format(Locale.ROOT, "[%s] %d frames: %.0f us CPU/frame, %.0f us wall/frame", path, frames, cpuMicros, wallMicros));
+        return cpuMicros;
+    }
+
+    private static List<Frame> loadFrames(File input, int width, int height, int pixelFormat) throws IOException {
+        int frameSize = av_image_get_buffer_size(pixelFormat, width, height, 1);
+        List<Frame> frames = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            while (frames.size() < LOADED_FRAMES) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(frameSize);
+                while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                    // 한 프레임을 다 읽을 때까지
+                }
+                if (buffer.hasRemaining()) break; // 파일 끝 (잘린 마지막 프레임은 버림)
+                buffer.flip();
+                // NativeCapture.toEncoderFrame() 과 같은 모양: 평면이 이어진 버퍼 하나, stride = 너비, 채널 1
+                Frame frame = new Frame();
+                frame.imageWidth = width;
+                frame.imageHeight = height;
+                frame.imageDepth = Frame.DEPTH_UBYTE;
+                frame.imageChannels = 1;
+                frame.imageStride = width;
+                frame.image = new ByteBuffer[]{buffer};
+                frames.add(frame);
+            }
+        }
+        if (frames.isEmpty()) throw new IOException("No complete " + width + "x" + height + " frame in " + input);
+        return frames;
+    }
+
+    // 움직이는 대각선 그라디언트 + 색 띠 (I420)
+    private static void renderSyntheticI420(File file, int width, int height, int frames) throws IOException {
+        if (file.exists()) return;
+        System.out.println("Rendering synthetic raw I420 file: " + file.getAbsolutePath());
+        byte[] luma = new byte[width * height];
+        byte[] chroma = new byte[(width / 2) * (height / 2)];
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            for (int f = 0; f < frames; f++) {
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        luma[y * width + x] = (byte) ((x + y + f * 8) & 0xFF);
+                    }
+                }
+                out.write(luma);
+                for (int plane = 0; plane < 2; plane++) {
+                    for (int y = 0; y < height / 2; y++) {
+                        for (int x = 0; x < width / 2; x++) {
+                            chroma[y * (width / 2) + x] = (byte) (plane == 0 ? (x * 2 + f) & 0xFF : (y * 2 + f) & 0xFF);
+                        }
+                    }
+                    out.write(chroma);
+                }
+            }
+        }
+    }
+}
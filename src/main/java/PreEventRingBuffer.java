@@ -0,0 +1,120 @@
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
+
+// 이미 인코딩된 패킷(H.264/AAC)을 메모리에 최근 N초만큼 보관하는 링 버퍼 (이벤트 이전 구간 녹화용)
+// - 시간(maxDurationMicros)과 바이트(maxBytes) 두 가지 상한: 카메라당 메모리 사용량이 maxBytes 를 넘지 않음
+// - 오래된 쪽은 GOP 단위로 버림 -> 버퍼의 첫 패킷은 항상 비디오 키프레임 (그대로 remux 하면 바로 재생 가능)
+// 패킷 데이터는 자바 힙의 byte[] 복사본으로 보관 (grabPacket()이 반환한 AVPacket은 다음 호출에서 재사용됨)
+public class PreEventRingBuffer {
+
+    // 패킷 하나의 복사본 (remux에 필요한 값만)
+    public static final class Packet {
+        final byte[] data;
+        final long pts;
+        final long dts;
+        final long duration;
+        final int streamIndex;
+        final int flags;
+        final long timeMicros; // 버퍼 길이 계산용 (스트림 time_base -> 마이크로초)
+
+        Packet(AVPacket packet, long timeMicros) {
+            this.data = new byte[packet.size()];
+            packet.data().get(data);
+            this.pts = packet.pts();
+            this.dts = packet.dts();
+            this.duration = packet.duration();
+            this.streamIndex = packet.stream_index();
+            this.flags = packet.flags();
+            this.timeMicros = timeMicros;
+        }
+
+        public byte[] getData() { return data; }
+        public long getPts() { return pts; }
+        public long getDts() { return dts; }
+        public long getDuration() { return duration; }
+        public int getStreamIndex() { return streamIndex; }
+        public int getFlags() { return flags; }
+    }
+
+    private final long maxDurationMicros;
+    private final long maxBytes;
+    private final int videoStreamIndex;
+    private final Deque<Packet> packets = new ArrayDeque<>(); // guarded by this
+    private long bufferedBytes = 0;
+
+    public PreEventRingBuffer(long maxDurationMicros, long maxBytes, int videoStreamIndex) {
+        this.maxDurationMicros = maxDurationMicros;
+        this.maxBytes = maxBytes;
+        this.videoStreamIndex = videoStreamIndex;
+    }
+
+    public synchronized void add(AVPacket packet, long timeMicros) {
+        boolean videoKeyFrame = isVideoKeyFrame(packet.stream_index(), packet.flags());
+        if (packets.isEmpty() && !videoKeyFrame) {
+            return; // 버퍼는 항상 키프레임으로 시작
+        }
+        if (packet.size() > maxBytes) {
+            clear(); // GOP 하나도 담을 수 없는 비정상 패킷: 다음 키프레임부터 다시 채움
+            return;
+        }
+        Packet copy = new Packet(packet, timeMicros);
+        packets.addLast(copy);
+        bufferedBytes += copy.data.length;
+        trim();
+    }
+
+    // 버퍼에 있는 패킷 목록 (키프레임부터, 오래된 순)
+    public synchronized List<Packet> snapshot() {
+        return new ArrayList<>(packets);
+    }
+
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public synchronized long getBufferedMicros() {
+        return packets.isEmpty() ? 0 : packets.peekLast().timeMicros - packets.peekFirst().timeMicros;
+    }
+
+    public synchronized void clear() {
+        packets.clear();
+        bufferedBytes = 0;
+    }
+
+    // 상한을 넘으면 맨 앞 GOP를 통째로 버림. 남은 GOP가 하나뿐인데도 바이트 상한을 넘으면 전부 비우고 다음 키프레임부터 다시 시작
+    private void trim() {
+        while (bufferedBytes > maxBytes || getBufferedMicros() > maxDurationMicros) {
+            if (!dropOldestGop()) {
+                if (bufferedBytes > maxBytes) clear();
+                return;
+            }
+        }
+    }
+
+    private boolean dropOldestGop() {
+        boolean hasNextKeyFrame = false;
+        boolean first = true;
+        for (Packet packet : packets) {
+            if (!first && isVideoKeyFrame(packet.streamIndex, packet.flags)) {
+                hasNextKeyFrame = true;
+                break;
+            }
+            first = false;
+        }
+        if (!hasNextKeyFrame) return false;
+        do {
+            bufferedBytes -= packets.pollFirst().data.length;
+        } while (!packets.isEmpty() && !isVideoKeyFrame(packets.peekFirst().streamIndex, packets.peekFirst().flags));
+        return true;
+    }
+
+    private boolean isVideoKeyFrame(int streamIndex, int flags) {
+        return streamIndex == videoStreamIndex && (flags & AV_PKT_FLAG_KEY) != 0;
+    }
+}
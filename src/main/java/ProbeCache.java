@@ -0,0 +1,169 @@
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FrameGrabber;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+
+// 소스별 FFmpeg probe 결과(코덱, 해상도, fps, 오디오)를 디스크에 저장해두고 다음 연결 때 probe를 최소화
+// - 처음 연결: 짧게 줄인 analyzeduration/probesize 로 probe -> 결과 저장
+// - 이후 연결: 최소 probe 로 시작하고 결과가 캐시와 다르면(해상도 변경, 스트림 누락 등) 캐시를 버리고 다시 probe
+// RTSP는 SPS/PPS(extradata)가 SDP에 들어 있어서 최소 probe로도 디코더가 바로 열림.
+// JavaCV로는 extradata를 직접 주입할 수 없으므로 캐시는 "검증 기준 + fps 보정" 용도로만 사용.
+public class ProbeCache {
+
+    private static final Path CACHE_DIRECTORY = Paths.get(System.getProperty("probe.cache.dir", "probe_cache"));
+    // 캐시가 없을 때: FFmpeg 기본값(5초/5MB)보다 짧게
+    private static final String FIRST_ANALYZE_DURATION_US = "1000000";
+    private static final String FIRST_PROBE_SIZE = "1000000";
+    // 캐시가 있을 때: 사실상 probe 생략
+    private static final String CACHED_ANALYZE_DURATION_US = "100000";
+    private static final String CACHED_PROBE_SIZE = "32768";
+
+    // probe 결과 중 다음 연결 검증/보정에 필요한 값만
+    public static final class Entry {
+        final int videoCodec;
+        final int width;
+        final int height;
+        final double frameRate;
+        final int pixelFormat;
+        final int audioCodec;
+        final int audioChannels;
+        final int sampleRate;
+
+        Entry(int videoCodec, int width, int height, double frameRate, int pixelFormat, int audioCodec, int audioChannels, int sampleRate) {
+            this.videoCodec = videoCodec;
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.pixelFormat = pixelFormat;
+            this.audioCodec = audioCodec;
+            this.audioChannels = audioChannels;
+            this.sampleRate = sampleRate;
+        }
+
+        static Entry of(FFmpegFrameGrabber grabber) {
+            return new Entry(grabber.getVideoCodec(), grabber.getImageWidth(), grabber.getImageHeight(), grabber.getFrameRate(),
+                    grabber.getPixelFormat(), grabber.getAudioCodec(), grabber.getAudioChannels(), grabber.getSampleRate());
+        }
+
+        public double getFrameRate() { return frameRate; }
+
+        // 최소 probe 결과가 캐시와 같은 스트림인지 (fps는 최소 probe에서 부정확할 수 있으므로 비교하지 않음)
+        boolean matches(FFmpegFrameGrabber grabber) {
+            return grabber.getVideoCodec() == videoCodec
+                    && grabber.getImageWidth() == width
+                    && grabber.getImageHeight() == height
+                    && grabber.getAudioChannels() == audioChannels;
+        }
+    }
+
+    private ProbeCache() {}
+
+    // 저지연 옵션 + probe 크기 설정 후 grabber 시작. 캐시가 맞지 않으면 한 번 다시 probe.
+    // overrides 는 호출 측 옵션(rtsp_transport, listen 등)으로, 기본 튜닝 값보다 우선.
+    // 반환: 이번 연결의 probe 결과 (캐시 또는 새로 probe한 값)
+    public static Entry start(FFmpegFrameGrabber grabber, String sourceUrl, Map<String, String> overrides) throws FrameGrabber.Exception {
+        // listen 모드는 다시 시작하면 다음 퍼블리셔를 기다리게 되므로 캐시 검증/재probe 없이 짧은 probe만 적용
+        boolean listenMode = "1".equals(overrides.get("listen"));
+        Entry cached = listenMode ? null : load(sourceUrl);
+        applyOptions(grabber, cached, overrides);
+        grabber.start();
+        if (cached != null) {
+            if (cached.matches(grabber)) {
+                return cached;
+            }
+            System.out.println("Probe cache mismatch for " + sourceUrl + " (stream changed?). Re-probing.");
+            invalidate(sourceUrl);
+            grabber.stop();
+            applyOptions(grabber, null, overrides);
+            grabber.start();
+        }
+        Entry probed = Entry.of(grabber);
+        if (!listenMode && probed.width > 0 && probed.height > 0) {
+            store(sourceUrl, probed);
+        }
+        return probed;
+    }
+
+    private static void applyOptions(FFmpegFrameGrabber grabber, Entry cached, Map<String, String> overrides) {
+        grabber.setOption("fflags", "nobuffer");
+        grabber.setVideoOption("flags", "low_delay"); // 코덱 플래그: 포맷 옵션에 넣으면 디코더까지 가지 않음
+        grabber.setOption("analyzeduration", cached != null ? CACHED_ANALYZE_DURATION_US : FIRST_ANALYZE_DURATION_US);
+        grabber.setOption("probesize", cached != null ? CACHED_PROBE_SIZE : FIRST_PROBE_SIZE);
+        for (Map.Entry<String, String> option : overrides.entrySet()) {
+            grabber.setOption(option.getKey(), option.getValue());
+        }
+    }
+
+    public static Entry load(String sourceUrl) {
+        Path file = cacheFile(sourceUrl);
+        if (!Files.exists(file)) return null;
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            if (!sourceUrl.equals(properties.getProperty("source"))) return null;
+            return new Entry(
+                    Integer.parseInt(properties.getProperty("videoCodec")),
+                    Integer.parseInt(properties.getProperty("width")),
+                    Integer.parseInt(properties.getProperty("height")),
+                    Double.parseDouble(properties.getProperty("frameRate")),
+                    Integer.parseInt(properties.getProperty("pixelFormat")),
+                    Integer.parseInt(properties.getProperty("audioCodec")),
+                    Integer.parseInt(properties.getProperty("audioChannels")),
+                    Integer.parseInt(properties.getProperty("sampleRate")));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable probe cache " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void store(String sourceUrl, Entry entry) {
+        Properties properties = new Properties();
+        properties.setProperty("source", sourceUrl);
+        properties.setProperty("videoCodec", String.valueOf(entry.videoCodec));
+        properties.setProperty("width", String.valueOf(entry.width));
+        properties.setProperty("height", String.valueOf(entry.height));
+        properties.setProperty("frameRate", String.valueOf(entry.frameRate));
+        properties.setProperty("pixelFormat", String.valueOf(entry.pixelFormat));
+        properties.setProperty("audioCodec", String.valueOf(entry.audioCodec));
+        properties.setProperty("audioChannels", String.valueOf(entry.audioChannels));
+        properties.setProperty("sampleRate", String.valueOf(entry.sampleRate));
+        try {
+            Files.createDirectories(CACHE_DIRECTORY);
+            try (OutputStream out = Files.newOutputStream(cacheFile(sourceUrl))) {
+                properties.store(out, "FFmpeg probe result");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write probe cache for " + sourceUrl + ": " + e.getMessage());
+        }
+    }
+
+    public static void invalidate(String sourceUrl) {
+        try {
+            Files.deleteIfExists(cacheFile(sourceUrl));
+        } catch (IOException e) {
+            System.err.println("Could not delete probe cache for " + sourceUrl + ": " + e.getMessage());
+        }
+    }
+
+    // URL에 계정/경로 문자가 들어갈 수 있으므로 파일명은 해시로
+    private static Path cacheFile(String sourceUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(sourceUrl.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) name.append(String.format("%02x", b));
+            return CACHE_DIRECTORY.resolve(name + ".properties");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
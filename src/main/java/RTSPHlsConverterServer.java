@@ -1,7 +1,6 @@
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
-import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.ffmpeg.global.avutil;
 import org.bytedeco.javacv.*;
 
@@ -9,12 +8,20 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer; // 메모리 로깅용
 import java.util.TimerTask; // 메모리 로깅용
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -23,25 +30,87 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class RTSPHlsConverterServer {
 
     // --- Configuration ---
-    private static final String SOURCE_RTSP_URL = "rtsp://192.168.0.152:8554/live";
+    // -Dsource.url 로 다른 소스 지정 가능 (예: LoadTestHarness/로컬 테스트용 tcp://127.0.0.1:... )
+    private static final String SOURCE_RTSP_URL = System.getProperty("source.url", "rtsp://192.168.0.152:8554/live");
     private static final String HLS_OUTPUT_DIRECTORY = "hls_output";
     private static final String HLS_M3U8_NAME = "stream.m3u8";
     private static final int HTTP_SERVER_PORT = 8989;
     private static final String HLS_SEGMENT_DURATION = "4";
     private static final String HLS_LIST_SIZE = "5";
     private static final long MEMORY_LOG_INTERVAL_MS = 60000; // 1분에 한 번 메모리 로깅
-
-    private static FFmpegFrameGrabber grabber;
-    private static FFmpegFrameRecorder recorder;
+    // 저지연 MJPEG 미리보기 (/preview.mjpg) - PTZ 조작 등 실시간 확인용
+    private static final int PREVIEW_MAX_WIDTH = 640;
+    private static final double PREVIEW_FPS = 5.0;
+    private static final float PREVIEW_JPEG_QUALITY = 0.7f;
+    // HTTP-FLV 라이브 (/live.flv) - GOP 캐시로 새 시청자가 세그먼트를 기다리지 않고 바로 재생
+    private static final int FLV_VIDEO_BITRATE = 2000000;
+    // RTMP 직접 수신 (MediaMTX를 거치지 않고 퍼블리셔가 이 서버로 바로 push)
+    // "스트림키:포트" 목록. FFmpeg listen 모드는 포트 하나에 퍼블리셔 하나만 받으므로 키마다 포트를 따로 지정.
+    // 예: -Dingest.streams=cam1:1936,cam2:1937 -> rtmp://<host>:1936/live/cam1 로 push 하면 /cam1/stream.m3u8 로 제공
+    private static final String INGEST_STREAMS = System.getProperty("ingest.streams", "");
+    private static final long INGEST_RELISTEN_DELAY_MS = 1000;
+    // 퍼블리셔(-Dlatency.stamp=true)가 영상에 그려 넣은 캡처 시각을 읽어서 구간별 지연 히스토그램 기록 (/latency)
+    private static final boolean LATENCY_STAMP = Boolean.getBoolean("latency.stamp");
+    private static final long LATENCY_LOG_INTERVAL_MS = 10000;
+    // 수요 기반 소싱: 시청자(HLS 요청, 미리보기/FLV 연결)가 있을 때만 RTSP를 당겨와서 변환
+    // 마지막 요청 후 이 시간 동안 시청자가 없으면 파이프라인 정지. 0 이하면 예전처럼 항상 변환
+    private static final long ON_DEMAND_IDLE_TIMEOUT_MS = Long.getLong("ondemand.idle.seconds", 60) * 1000;
+    private static final long FIRST_SEGMENT_WAIT_MS = 20000; // 첫 플레이리스트 요청을 최대 이만큼 잡아둠
+    private static final long IDLE_CHECK_INTERVAL_MS = 1000;
+    // 추가로 당겨올 카메라 목록 "키=RTSP주소,..." -> /<키>/stream.m3u8 (기본 소스와 같이 수요 기반으로 동작)
+    // 예: -Dsource.streams=cam1=rtsp://10.0.0.11:554/live,cam2=rtsp://10.0.0.12:554/live
+    private static final String SOURCE_STREAMS = System.getProperty("source.streams", "");
+    // 서버 측 모자이크: 입력 목록(쉼표 구분)을 격자로 합쳐서 /mosaic/stream.m3u8 하나로 제공 (월 디스플레이용)
+    // 예: -Dmosaic.inputs=rtsp://10.0.0.11/live,rtsp://10.0.0.12/live,rtsp://10.0.0.13/live,rtsp://10.0.0.14/live
+    private static final String MOSAIC_INPUTS = System.getProperty("mosaic.inputs", "");
+    private static final int MOSAIC_TILE_WIDTH = 640;
+    private static final int MOSAIC_TILE_HEIGHT = 360;
+    private static final double MOSAIC_FPS = 15.0;
+    // 이벤트 이전 구간 녹화: 기본 소스의 최근 N초 패킷을 메모리에 보관하다가 /trigger 요청 시 clips/ 에 MP4로 저장
+    // 0이면 사용 안 함. 메모리 상한은 카메라당 CLIP_BUFFER_MB
+    private static final long CLIP_PRE_ROLL_SECONDS = Long.getLong("clip.preroll.seconds", 0);
+    private static final long CLIP_POST_ROLL_SECONDS = Long.getLong("clip.postroll.seconds", 15);
+    private static final long CLIP_BUFFER_MB = Long.getLong("clip.buffer.mb", 32);
+    private static final String CLIP_OUTPUT_DIRECTORY = "clips";
+    // 지난 구간 내보내기(/export): 플레이리스트에서 빠진 세그먼트도 이 시간 동안 보관. 0이면 라이브 구간(약 20초)만 내보낼 수 있음
+    private static final long HLS_RETENTION_SECONDS = Long.getLong("hls.retention.minutes", 0) * 60;
+    // CPU 과부하로 실시간을 못 따라가면 지연이 쌓이는 대신 preset -> fps -> 해상도 -> 키프레임 전용 순으로 화질을 낮춤 (governor.<id>.*)
+    private static final boolean LOAD_GOVERNOR = Boolean.parseBoolean(System.getProperty("load.governor", "true"));
+    // 정지 장면 감지: 움직임이 없으면 프레임을 건너뛰고 최소 이 fps 로만 인코딩 (0이면 사용 안 함, 예: -Dstatic.scene.min.fps=1)
+    private static final double STATIC_SCENE_MIN_FPS = Double.parseDouble(System.getProperty("static.scene.min.fps", "0"));
+    // LAN 배포용 UDP 멀티캐스트 MPEG-TS 출력: 지정하면 스트림마다 같은 그룹의 포트 MULTICAST_PORT, +2, +4 ... 로 송출
+    // (기본 스트림, source.streams, ingest.streams 순서). 수신자가 몇 명이든 서버 송신은 한 번
+    // 예: -Dmulticast.group=239.255.10.1 -Dmulticast.ttl=1 -Dmulticast.pacing.kbps=4000
+    // 루프백 테스트: -Dmulticast.interface=127.0.0.1 로 실행 후 MulticastTsMonitor 239.255.10.1 5000 127.0.0.1
+    // 멀티캐스트 수신자는 HLS 요청을 보내지 않으므로 지정하면 수요 기반 파이프라인(기본 스트림, source.streams)도 시작 시 켜고
+    // 유휴 정지하지 않음 (ondemand.idle.seconds 무시, 소스가 끊겨 끝나면 다시 시작). ingest.streams 는 원래 항상 실행
+    private static final String MULTICAST_GROUP = System.getProperty("multicast.group", "");
+    private static final int MULTICAST_PORT = Integer.getInteger("multicast.port", 5000);
+    private static final int MULTICAST_TTL = Integer.getInteger("multicast.ttl", 1); // 1: 라우터를 넘지 않음
+    private static final int MULTICAST_PACKET_SIZE = Integer.getInteger("multicast.packet.size", 1316); // TS 패킷 7개, MTU 이하
+    private static final int MULTICAST_PACING_KBPS = Integer.getInteger("multicast.pacing.kbps", 0); // 0: 페이싱 없음 (먹서가 쓰는 즉시 전송)
+    private static final String MULTICAST_INTERFACE = System.getProperty("multicast.interface", "");
+
+    private static HlsPipeline defaultPipeline;
+    // 스트림 경로 키("" = 기본 스트림, 그 외 /<키>/...) -> 수요 기반 파이프라인
+    private static final Map<String, OnDemandPipeline> onDemandPipelines = new ConcurrentHashMap<>();
+    private static Timer idleCheckTimer;
+    private static final List<HlsPipeline> ingestPipelines = new CopyOnWriteArrayList<>();
+    private static MosaicPipeline mosaicPipeline;
+    private static TriggeredClipRecorder clipRecorder;
     private static HttpServer httpServer;
     private static final AtomicBoolean running = new AtomicBoolean(true);
     private static ExecutorService processingExecutor;
+    private static ExecutorService ingestExecutor;
     private static Timer memoryLogTimer;
+    private static MjpegPreviewBroadcaster previewBroadcaster;
+    private static HttpFlvBroadcaster flvBroadcaster;
+    private static HlsClipExporter clipExporter;
+    private static int multicastStreamCount = 0;
 
     public static void main(String[] args) {
+        NativePreloader.startFfmpeg(); // FFmpeg 네이티브 로드를 HTTP 서버 준비와 병렬로
         System.out.println("현재 작업 디렉토리 (CWD): " + Paths.get("").toAbsolutePath().toString());
-        FFmpegLogCallback.set();
-        avutil.av_log_set_level(avutil.AV_LOG_DEBUG);
 
         File hlsDir = new File(HLS_OUTPUT_DIRECTORY);
         if (!hlsDir.exists()) {
@@ -54,43 +123,84 @@ public class RTSPHlsConverterServer {
 
         // 주기적 메모리 로깅 시작
         startMemoryLogging();
+        if (LATENCY_STAMP) LatencyHistogram.startLogging(LATENCY_LOG_INTERVAL_MS);
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Shutdown signal received. Stopping services...");
             running.set(false);
             stopMemoryLogging();
+            if (clipExporter != null) clipExporter.stopRetentionCleanup();
+            if (idleCheckTimer != null) idleCheckTimer.cancel();
+            if (previewBroadcaster != null) previewBroadcaster.stop();
+            if (flvBroadcaster != null) flvBroadcaster.stop();
             stopStreamingInternal();
             stopHttpServerInternal();
-            if (processingExecutor != null && !processingExecutor.isShutdown()) {
-                try {
-                    processingExecutor.shutdown();
-                    if (!processingExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                        processingExecutor.shutdownNow();
-                    }
-                } catch (InterruptedException e) {
-                    processingExecutor.shutdownNow();
-                    Thread.currentThread().interrupt();
-                }
-            }
+            shutdownExecutor(processingExecutor);
+            shutdownExecutor(ingestExecutor);
             System.out.println("All services signaled to stop. Exiting.");
         }));
 
-        processingExecutor = Executors.newSingleThreadExecutor();
+        processingExecutor = Executors.newCachedThreadPool(); // 수요 기반 파이프라인마다 하나씩
+        previewBroadcaster = new MjpegPreviewBroadcaster(PREVIEW_MAX_WIDTH, PREVIEW_FPS, PREVIEW_JPEG_QUALITY);
+        flvBroadcaster = new HttpFlvBroadcaster(FLV_VIDEO_BITRATE, 30);
 
         try {
             startHttpServer(hlsDir.getAbsolutePath(), HTTP_SERVER_PORT);
+            NativePreloader.awaitAll();
+            FFmpegLogCallback.set();
+            avutil.av_log_set_level(avutil.AV_LOG_DEBUG);
             String hlsM3u8AbsolutePath = hlsDir.getAbsolutePath() + File.separator + HLS_M3U8_NAME;
             System.out.println("Calculated absolute M3U8 path for recorder: " + hlsM3u8AbsolutePath);
 
-            processingExecutor.submit(() -> {
-                try {
-                    startRtspToHlsConversion(SOURCE_RTSP_URL, hlsM3u8AbsolutePath);
-                } catch (Exception e) {
-                    System.err.println("FATAL: RTSP to HLS conversion thread failed: " + e.getMessage());
-                    e.printStackTrace();
-                    running.set(false); // 전체 애플리케이션 중단 유도
+            defaultPipeline = new HlsPipeline("default", SOURCE_RTSP_URL, hlsM3u8AbsolutePath, HLS_SEGMENT_DURATION, HLS_LIST_SIZE);
+            defaultPipeline.setSegmentRetentionSeconds(HLS_RETENTION_SECONDS);
+            defaultPipeline.setLoadGovernorEnabled(LOAD_GOVERNOR);
+            defaultPipeline.setStaticSceneDetection(STATIC_SCENE_MIN_FPS);
+            defaultPipeline.setMulticastOutput(nextMulticastUrl("default"));
+            if (SOURCE_RTSP_URL.startsWith("rtsp")) {
+                defaultPipeline.setGrabberOption("rtsp_transport", "tcp");
+                defaultPipeline.setGrabberOption("stimeout", "10000000"); // 연결 타임아웃 10초로 증가
+            }
+            // MJPEG 미리보기: 시청자가 있을 때만 preview fps 간격으로 복사본을 넘김 (인코딩은 별도 스레드)
+            defaultPipeline.addFrameListener((frame, source, timestamp) -> {
+                if (frame.image != null && previewBroadcaster.wantsFrame(System.nanoTime())) {
+                    previewBroadcaster.offer(frame);
                 }
             });
+            addLatencyProbe(defaultPipeline);
+            // HTTP-FLV: 시청자가 있을 때만 인코딩 (별도 인코더 스레드, 레코더 시작/유휴 종료는 broadcaster가 관리)
+            defaultPipeline.addFrameListener((frame, source, timestamp) ->
+                    flvBroadcaster.record(frame, source.getImageWidth(), source.getImageHeight(), source.getAudioChannels(), source.getSampleRate(), timestamp));
+
+            OnDemandPipeline defaultSource = new OnDemandPipeline(defaultPipeline, hlsM3u8AbsolutePath, processingExecutor, ON_DEMAND_IDLE_TIMEOUT_MS);
+            // 미리보기/FLV 시청자는 HLS 요청을 보내지 않으므로 연결이 남아 있는 동안은 정지하지 않음
+            defaultSource.setOtherViewers(() -> PipelineMetrics.get("preview.viewers") + PipelineMetrics.get("flv.viewers"));
+            onDemandPipelines.put("", defaultSource);
+            startSourceStreams(hlsDir);
+            if (!MULTICAST_GROUP.isEmpty()) {
+                for (OnDemandPipeline source : onDemandPipelines.values()) {
+                    source.setAlwaysOn(true); // LAN 수신자가 HTTP 시청자 없이도 계속 받도록
+                    source.touch();
+                }
+                System.out.println("Multicast output enabled. HLS pipelines run continuously regardless of HTTP viewers.");
+            }
+
+            if (ON_DEMAND_IDLE_TIMEOUT_MS > 0) {
+                startIdleCheck();
+                System.out.println("On-demand sourcing enabled. Pipelines start on first request and stop after "
+                        + ON_DEMAND_IDLE_TIMEOUT_MS / 1000 + "s without viewers.");
+            } else {
+                for (OnDemandPipeline source : onDemandPipelines.values()) source.touch(); // 항상 변환
+                if (!MULTICAST_GROUP.isEmpty()) startIdleCheck(); // 상시 실행 파이프라인 재시작용
+            }
+
+            startIngestListeners(hlsDir);
+            startMosaic(hlsDir);
+            startClipRecorder();
+            if (HLS_RETENTION_SECONDS > 0) {
+                clipExporter.startRetentionCleanup(HLS_RETENTION_SECONDS);
+                System.out.println("HLS segments are kept for " + HLS_RETENTION_SECONDS / 60 + " min for /export.");
+            }
 
             System.out.println("RTSP to HLS Converter Server started."); /* ... (기존 로그 메시지) ... */
             System.out.println("Press Ctrl+C to stop the server.");
@@ -114,151 +224,275 @@ public class RTSPHlsConverterServer {
         }
     }
 
-    private static void startRtspToHlsConversion(String rtspUrl, String hlsM3u8AbsolutePath) throws FrameGrabber.Exception, FrameRecorder.Exception {
-        System.out.println("Initializing RTSP grabber for: " + rtspUrl);
-        grabber = new FFmpegFrameGrabber(rtspUrl);
-        grabber.setOption("rtsp_transport", "tcp");
-        grabber.setOption("stimeout", "10000000"); // 연결 타임아웃 10초로 증가
-        grabber.start();
-        System.out.println("RTSP Grabber started. Source Info:");
-        System.out.println("  Resolution: " + grabber.getImageWidth() + "x" + grabber.getImageHeight());
-        System.out.println("  Frame Rate: " + grabber.getFrameRate());
-        System.out.println("  Video Codec: " + avcodec.avcodec_get_name(grabber.getVideoCodec()).getString() + " (ID: " + grabber.getVideoCodec() + ")");
-        System.out.println("  Pixel Format: " + avutil.av_get_pix_fmt_name(grabber.getPixelFormat()).getString());
-        System.out.println("  Audio Channels: " + grabber.getAudioChannels());
-        if (grabber.getAudioChannels() > 0) {
-            System.out.println("  Audio Codec: " + avcodec.avcodec_get_name(grabber.getAudioCodec()).getString() + " (ID: " + grabber.getAudioCodec() + ")");
-            System.out.println("  Sample Rate: " + grabber.getSampleRate());
+    private static void startHttpServer(String hlsOutputBasePath, int port) throws IOException {
+        // HTTP 서버 시작 로직은 이전과 동일
+        Path hlsPath = Paths.get(hlsOutputBasePath).toAbsolutePath();
+        System.out.println("HTTP server will serve files from absolute path: " + hlsPath);
+        if (!Files.exists(hlsPath)) {
+            if (!new File(hlsOutputBasePath).mkdirs()) {
+                throw new IOException("Could not create HLS directory for HTTP server: " + hlsOutputBasePath);
+            }
+            System.out.println("Created HLS directory for HTTP server: " + hlsOutputBasePath);
         }
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.createContext("/", new SimpleFileHttpHandler(hlsPath.toString()));
+        HttpHandler previewHandler = previewBroadcaster.handler();
+        HttpHandler flvHandler = flvBroadcaster.handler();
+        // 미리보기/FLV 연결도 기본 스트림의 시청으로 보고 파이프라인을 깨움
+        httpServer.createContext("/preview.mjpg", exchange -> {
+            touchStream("");
+            previewHandler.handle(exchange);
+        });
+        httpServer.createContext("/live.flv", exchange -> {
+            touchStream("");
+            flvHandler.handle(exchange);
+        });
+        // 외부 알람/이벤트 연동: GET|POST /trigger?reason=... -> 이벤트 이전 구간을 포함한 클립 파일명 반환
+        httpServer.createContext("/trigger", exchange -> {
+            String response;
+            int status;
+            if (clipRecorder == null) {
+                status = 503;
+                response = "Pre-event recording is disabled (-Dclip.preroll.seconds)\n";
+            } else {
+                String query = exchange.getRequestURI().getQuery();
+                String reason = query != null && query.startsWith("reason=") ? query.substring("reason=".length()) : "api";
+                status = 200;
+                response = clipRecorder.trigger(reason).getName() + "\n";
+            }
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        // 지난 구간을 MP4로 내려받기: GET /export?stream=<키>&from=<시각>&to=<시각> (세그먼트 remux, 재인코딩 없음)
+        clipExporter = new HlsClipExporter(hlsPath.toFile());
+        httpServer.createContext("/export", clipExporter.handler());
+        httpServer.createContext("/latency", exchange -> {
+            byte[] body = LatencyHistogram.snapshot().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        // MJPEG 미리보기처럼 오래 유지되는 연결이 있으므로 고정 크기 풀 대신 필요한 만큼 스레드 생성
+        httpServer.setExecutor(Executors.newCachedThreadPool());
+        httpServer.start();
+        System.out.println("HTTP server started on port " + port + ". Low-latency preview: http://localhost:" + port + "/preview.mjpg"
+                + ", HTTP-FLV: http://localhost:" + port + "/live.flv");
+    }
 
-        System.out.println("Initializing HLS recorder. Output M3U8: " + hlsM3u8AbsolutePath);
-        recorder = new FFmpegFrameRecorder(hlsM3u8AbsolutePath, grabber.getImageWidth(), grabber.getImageHeight(), grabber.getAudioChannels());
-
-        recorder.setFormat("hls");
-
-        // --- 코덱 설정 시작 ---
-        boolean reencodeVideo = false;
-        boolean reencodeAudio = false;
-
-        // 비디오 코덱: H.264가 아니거나, 문제가 있는 경우 재인코딩 (HLS는 H.264를 선호)
-        if (grabber.getVideoCodec() == avcodec.AV_CODEC_ID_H264) {
-            recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264); // 코덱 복사 시도
-            // recorder.setVideoCodecName("h264_videotoolbox"); // macOS에서 하드웨어 가속 시도 (옵션)
-            System.out.println("Attempting to copy video codec (H.264) from source.");
-        } else {
-            reencodeVideo = true;
-            recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
-            recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P); // H.264 재인코딩 시 표준 픽셀 포맷
-            if (grabber.getVideoBitrate() > 0) recorder.setVideoBitrate(grabber.getVideoBitrate()); else recorder.setVideoBitrate(2000000); // 2Mbps
-            System.out.println("Source video codec is not H.264 (" + avcodec.avcodec_get_name(grabber.getVideoCodec()).getString() + "). Re-encoding to H.264.");
+    // 멀티캐스트 출력을 켰으면 다음 스트림의 udp:// 주소, 아니면 null
+    private static String nextMulticastUrl(String streamKey) {
+        if (MULTICAST_GROUP.isEmpty()) return null;
+        int port = MULTICAST_PORT + 2 * multicastStreamCount++;
+        StringBuilder url = new StringBuilder("udp://").append(MULTICAST_GROUP).append(':').append(port)
+                .append("?ttl=").append(MULTICAST_TTL)
+                .append("&pkt_size=").append(MULTICAST_PACKET_SIZE);
+        if (MULTICAST_PACING_KBPS > 0) {
+            // FFmpeg udp 프로토콜의 송신 스레드가 이 비트레이트로 나눠 보냄 (키프레임 순간 버스트로 수신 측 버퍼가 넘치는 것 방지)
+            url.append("&bitrate=").append(MULTICAST_PACING_KBPS * 1000L)
+                    .append("&burst_bits=").append(MULTICAST_PACKET_SIZE * 8);
         }
+        if (!MULTICAST_INTERFACE.isEmpty()) url.append("&localaddr=").append(MULTICAST_INTERFACE);
+        System.out.println("[" + streamKey + "] Multicast MPEG-TS -> " + MULTICAST_GROUP + ":" + port);
+        return url.toString();
+    }
 
-        if (grabber.getFrameRate() > 0 && grabber.getFrameRate() < 200) {
-            recorder.setFrameRate(grabber.getFrameRate());
-        } else if (reencodeVideo) { // 재인코딩 시에는 프레임률 명시
-            recorder.setFrameRate(30);
-        }
+    // 디코딩 직후 프레임의 캡처 시각 코드를 읽어서 "캡처 -> 컨버터 디코딩" 구간 지연 기록
+    private static void addLatencyProbe(HlsPipeline pipeline) {
+        if (!LATENCY_STAMP) return;
+        LatencyHistogram histogram = LatencyHistogram.get("converter." + pipeline.getStreamId() + ".capture_to_decoded");
+        pipeline.addFrameListener((frame, source, timestamp) -> {
+            if (frame.image == null) return;
+            long captureMillis = LatencyStamp.read(frame);
+            if (captureMillis > 0) histogram.record(System.currentTimeMillis() - captureMillis);
+        });
+    }
 
+    private static void touchStream(String streamKey) {
+        OnDemandPipeline source = onDemandPipelines.get(streamKey);
+        if (source != null) source.touch();
+    }
 
-        // 오디오 코덱: AAC가 아니거나, 문제가 있는 경우 재인코딩 (HLS는 AAC를 선호)
-        if (grabber.getAudioChannels() > 0) {
-            if (grabber.getAudioCodec() == avcodec.AV_CODEC_ID_AAC) {
-                recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC); // 코덱 복사 시도
-                System.out.println("Attempting to copy audio codec (AAC) from source.");
-            } else {
-                reencodeAudio = true;
-                recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
-                if (grabber.getAudioBitrate() > 0) recorder.setAudioBitrate(grabber.getAudioBitrate()); else recorder.setAudioBitrate(128000); // 128kbps
-                System.out.println("Source audio codec is not AAC (" + avcodec.avcodec_get_name(grabber.getAudioCodec()).getString() + "). Re-encoding to AAC.");
-            }
-            if (grabber.getSampleRate() > 0) recorder.setSampleRate(grabber.getSampleRate());
-            recorder.setAudioChannels(grabber.getAudioChannels());
-        } else {
-            recorder.setAudioChannels(0); // 오디오 없음
+    private static void startSourceStreams(File hlsDir) {
+        if (SOURCE_STREAMS.isBlank()) {
+            return;
         }
-        // --- 코덱 설정 끝 ---
-
-        recorder.setOption("hls_time", HLS_SEGMENT_DURATION);
-        recorder.setOption("hls_list_size", HLS_LIST_SIZE);
-        recorder.setOption("hls_flags", "delete_segments+omit_endlist");
-        String segmentPathPattern = Paths.get(hlsM3u8AbsolutePath).getParent().resolve("segment%05d.ts").toString();
-        System.out.println("HLS segment path pattern for recorder: " + segmentPathPattern);
-        recorder.setOption("hls_segment_filename", segmentPathPattern);
-
-        System.out.println("Starting HLS recorder (FFmpeg)...");
-        recorder.start(); // 여기서 네이티브 리소스 할당 시작
-        System.out.println("HLS recorder (FFmpeg) started. Converting stream...");
-
-        Frame frame;
-        long frameCount = 0;
-        while (running.get() && (frame = grabber.grab()) != null) {
-            if (frame.image == null && frame.samples == null) { // 빈 프레임 스킵
+        for (String entry : SOURCE_STREAMS.split(",")) {
+            int separator = entry.indexOf('=');
+            String streamKey = separator > 0 ? entry.substring(0, separator).trim() : "";
+            if (!streamKey.matches("[A-Za-z0-9_-]+")) {
+                System.err.println("Ignoring invalid source stream entry (expected key=url): " + entry);
                 continue;
             }
-            try {
-                // HLS는 일반적으로 레코더가 타임스탬프를 관리. setTimestamp 불필요할 수 있음.
-                // 그러나 grab()이 반환하는 프레임에 이미 타임스탬프가 있다면 사용하는 것이 좋음.
-                if (frame.timestamp != 0) { // FFmpegFrameGrabber는 보통 timestamp를 채워줌
-                    recorder.setTimestamp(frame.timestamp);
-                }
-                recorder.record(frame);
-                frameCount++;
-            } catch (FrameRecorder.Exception e) {
-                // System.err.println("Frame " + frameCount + ": Error recording frame for HLS: " + e.getMessage());
+            String sourceUrl = entry.substring(separator + 1).trim();
+            File streamDir = new File(hlsDir, streamKey);
+            if (!streamDir.exists() && !streamDir.mkdirs()) {
+                System.err.println("Failed to create HLS output directory for source stream: " + streamDir.getAbsolutePath());
+                continue;
             }
-            // 수동으로 Frame 객체 내 네이티브 버퍼 해제 (주의해서 사용, recorder.record가 소유권을 가져갈 수 있음)
-            // JavaCV의 Frame은 네이티브 메모리를 가리키므로, record 후 명시적 해제가 필요없을 수도 있지만,
-            // 매우 긴 실행에서 누수를 의심한다면 고려. 단, record가 비동기 처리 시 문제될 수 있음.
-            // 현재로서는 record()가 프레임 처리를 완료한다고 가정.
+            String m3u8Path = streamDir.getAbsolutePath() + File.separator + HLS_M3U8_NAME;
+            HlsPipeline pipeline = new HlsPipeline(streamKey, sourceUrl, m3u8Path, HLS_SEGMENT_DURATION, HLS_LIST_SIZE);
+            pipeline.setSegmentRetentionSeconds(HLS_RETENTION_SECONDS);
+            pipeline.setLoadGovernorEnabled(LOAD_GOVERNOR);
+            pipeline.setStaticSceneDetection(STATIC_SCENE_MIN_FPS);
+            pipeline.setMulticastOutput(nextMulticastUrl(streamKey));
+            if (sourceUrl.startsWith("rtsp")) {
+                pipeline.setGrabberOption("rtsp_transport", "tcp");
+                pipeline.setGrabberOption("stimeout", "10000000");
+            }
+            addLatencyProbe(pipeline);
+            onDemandPipelines.put(streamKey, new OnDemandPipeline(pipeline, m3u8Path, processingExecutor, ON_DEMAND_IDLE_TIMEOUT_MS));
+            System.out.println("Source stream registered: " + sourceUrl + " -> http://localhost:" + HTTP_SERVER_PORT
+                    + "/" + streamKey + "/" + HLS_M3U8_NAME);
         }
-        System.out.println("Exiting HLS recording loop. Total frames processed: " + frameCount + " (running flag: " + running.get() + ").");
     }
 
-    private static void startHttpServer(String hlsOutputBasePath, int port) throws IOException {
-        // HTTP 서버 시작 로직은 이전과 동일
-        Path hlsPath = Paths.get(hlsOutputBasePath).toAbsolutePath();
-        System.out.println("HTTP server will serve files from absolute path: " + hlsPath);
-        if (!Files.exists(hlsPath)) {
-            if (!new File(hlsOutputBasePath).mkdirs()) {
-                throw new IOException("Could not create HLS directory for HTTP server: " + hlsOutputBasePath);
+    private static void startIdleCheck() {
+        idleCheckTimer = new Timer("OnDemandIdleCheck", true);
+        idleCheckTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                long now = System.currentTimeMillis();
+                for (OnDemandPipeline source : onDemandPipelines.values()) {
+                    source.stopIfIdle(now);
+                }
             }
-            System.out.println("Created HLS directory for HTTP server: " + hlsOutputBasePath);
-        }
-        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
-        httpServer.createContext("/", new SimpleFileHttpHandler(hlsPath.toString()));
-        httpServer.setExecutor(Executors.newFixedThreadPool(10));
-        httpServer.start();
-        System.out.println("HTTP server started on port " + port + ".");
+        }, IDLE_CHECK_INTERVAL_MS, IDLE_CHECK_INTERVAL_MS);
     }
 
-    private static synchronized void stopStreamingInternal() {
-        System.out.println("Internal: Attempting to stop HLS recorder...");
-        if (recorder != null) {
+    // 모자이크는 입력이 여러 개라 수요 기반으로 켜고 끄지 않고 항상 실행 (입력 재연결은 파이프라인 내부에서 처리)
+    private static void startMosaic(File hlsDir) {
+        if (MOSAIC_INPUTS.isBlank()) {
+            return;
+        }
+        List<String> inputUrls = new ArrayList<>();
+        for (String url : MOSAIC_INPUTS.split(",")) {
+            if (!url.isBlank()) inputUrls.add(url.trim());
+        }
+        File mosaicDir = new File(hlsDir, "mosaic");
+        if (!mosaicDir.exists() && !mosaicDir.mkdirs()) {
+            System.err.println("Failed to create HLS output directory for mosaic: " + mosaicDir.getAbsolutePath());
+            return;
+        }
+        mosaicPipeline = new MosaicPipeline("mosaic", inputUrls, MOSAIC_TILE_WIDTH, MOSAIC_TILE_HEIGHT, MOSAIC_FPS,
+                mosaicDir.getAbsolutePath() + File.separator + HLS_M3U8_NAME, HLS_SEGMENT_DURATION, HLS_LIST_SIZE);
+        mosaicPipeline.setSegmentRetentionSeconds(HLS_RETENTION_SECONDS);
+        processingExecutor.submit(() -> {
             try {
-                recorder.stop();    // 내부 버퍼 플러시 및 파일 마무리
-                recorder.release(); // 네이티브 리소스 해제
-                System.out.println("Internal: HLS recorder stopped and released.");
-            } catch (FrameRecorder.Exception e) {
-                System.err.println("Internal: Error stopping HLS recorder: " + e.getMessage());
-            } finally {
-                recorder = null; // GC 대상이 되도록 명시적 null 할당
+                mosaicPipeline.run();
+            } catch (Exception e) {
+                System.err.println("[mosaic] Mosaic pipeline failed: " + e.getMessage());
             }
+        });
+        System.out.println("Mosaic of " + inputUrls.size() + " inputs -> http://localhost:" + HTTP_SERVER_PORT + "/mosaic/" + HLS_M3U8_NAME);
+    }
+
+    // 클립용 패킷 버퍼는 HLS 파이프라인과 별도 연결로 소스를 디코딩 없이 읽음 (버퍼링을 위해 항상 실행)
+    private static void startClipRecorder() {
+        if (CLIP_PRE_ROLL_SECONDS <= 0) {
+            return;
         }
+        Map<String, String> options = new LinkedHashMap<>();
+        if (SOURCE_RTSP_URL.startsWith("rtsp")) {
+            options.put("rtsp_transport", "tcp");
+            options.put("stimeout", "10000000");
+        }
+        clipRecorder = new TriggeredClipRecorder("default", SOURCE_RTSP_URL, options, new File(CLIP_OUTPUT_DIRECTORY).getAbsoluteFile(),
+                CLIP_PRE_ROLL_SECONDS, CLIP_BUFFER_MB * 1024 * 1024, CLIP_POST_ROLL_SECONDS);
+        processingExecutor.submit(clipRecorder::run);
+        System.out.println("Pre-event recording enabled: " + CLIP_PRE_ROLL_SECONDS + "s before / " + CLIP_POST_ROLL_SECONDS
+                + "s after trigger. Trigger: http://localhost:" + HTTP_SERVER_PORT + "/trigger");
+    }
 
-        System.out.println("Internal: Attempting to stop RTSP grabber...");
-        if (grabber != null) {
+    private static void startIngestListeners(File hlsDir) {
+        if (INGEST_STREAMS.isBlank()) {
+            return;
+        }
+        String[] entries = INGEST_STREAMS.split(",");
+        ingestExecutor = Executors.newFixedThreadPool(entries.length);
+        for (String entry : entries) {
+            String[] keyAndPort = entry.trim().split(":");
+            if (keyAndPort.length != 2 || !keyAndPort[0].matches("[A-Za-z0-9_-]+")) {
+                System.err.println("Ignoring invalid ingest entry (expected key:port): " + entry);
+                continue;
+            }
+            String streamKey = keyAndPort[0];
+            int port = Integer.parseInt(keyAndPort[1]);
+            File streamDir = new File(hlsDir, streamKey);
+            if (!streamDir.exists() && !streamDir.mkdirs()) {
+                System.err.println("Failed to create HLS output directory for ingest stream: " + streamDir.getAbsolutePath());
+                continue;
+            }
+            String listenUrl = "rtmp://0.0.0.0:" + port + "/live/" + streamKey;
+            String m3u8Path = streamDir.getAbsolutePath() + File.separator + HLS_M3U8_NAME;
+            HlsPipeline pipeline = new HlsPipeline(streamKey, listenUrl, m3u8Path, HLS_SEGMENT_DURATION, HLS_LIST_SIZE);
+            pipeline.setSegmentRetentionSeconds(HLS_RETENTION_SECONDS);
+            pipeline.setLoadGovernorEnabled(LOAD_GOVERNOR);
+            pipeline.setStaticSceneDetection(STATIC_SCENE_MIN_FPS);
+            pipeline.setMulticastOutput(nextMulticastUrl(streamKey));
+            pipeline.setGrabberOption("listen", "1"); // FFmpeg RTMP 서버 모드: 퍼블리셔 접속을 기다림
+            addLatencyProbe(pipeline);
+            ingestPipelines.add(pipeline);
+
+            // 퍼블리셔가 끊기면(스트림 종료) 다시 listen 상태로 돌아가서 다음 접속을 기다림
+            ingestExecutor.submit(() -> {
+                while (running.get()) {
+                    try {
+                        System.out.println("[" + streamKey + "] Waiting for RTMP publisher on " + listenUrl);
+                        pipeline.run();
+                        System.out.println("[" + streamKey + "] Publisher disconnected.");
+                    } catch (Exception e) {
+                        System.err.println("[" + streamKey + "] Ingest pipeline error: " + e.getMessage());
+                    }
+                    try {
+                        Thread.sleep(INGEST_RELISTEN_DELAY_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+            System.out.println("RTMP ingest enabled: publish to rtmp://<this-host>:" + port + "/live/" + streamKey
+                    + " -> http://localhost:" + HTTP_SERVER_PORT + "/" + streamKey + "/" + HLS_M3U8_NAME);
+        }
+    }
+
+    private static void shutdownExecutor(ExecutorService executor) {
+        if (executor != null && !executor.isShutdown()) {
             try {
-                grabber.stop();     // 그래버 중지
-                grabber.release();  // 네이티브 리소스 해제
-                System.out.println("Internal: RTSP grabber stopped and released.");
-            } catch (FrameGrabber.Exception e) {
-                System.err.println("Internal: Error stopping RTSP grabber: " + e.getMessage());
-            } finally {
-                grabber = null; // GC 대상이 되도록 명시적 null 할당
+                executor.shutdown();
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
             }
         }
     }
 
+    private static synchronized void stopStreamingInternal() {
+        System.out.println("Internal: Attempting to stop HLS pipelines...");
+        for (OnDemandPipeline source : onDemandPipelines.values()) {
+            source.getPipeline().stop(); // 종료 요청. recorder 플러시/해제는 파이프라인 스레드가 함 (아래 executor 종료 대기)
+        }
+        for (HlsPipeline pipeline : ingestPipelines) {
+            pipeline.stop();
+        }
+        if (mosaicPipeline != null) {
+            mosaicPipeline.stop();
+        }
+        if (clipRecorder != null) {
+            clipRecorder.stop();
+        }
+        System.out.println("Internal: HLS pipelines asked to stop.");
+    }
+
     private static synchronized void stopHttpServerInternal() {
         if (httpServer != null) {
             System.out.println("Internal: Stopping HTTP server...");
@@ -299,6 +533,7 @@ public class RTSPHlsConverterServer {
     // SimpleFileHttpHandler 클래스는 이전과 동일하게 유지
     static class SimpleFileHttpHandler implements HttpHandler { /* ... 이전 디버깅 로그 포함된 코드 ... */
         private final Path basePath;
+        private final AtomicBoolean firstSegmentServed = new AtomicBoolean(false);
         public SimpleFileHttpHandler(String basePathString) {
             this.basePath = Paths.get(basePathString).toAbsolutePath();
             System.out.println("[HTTP Handler] Initialized. Serving files from base path: " + this.basePath);
@@ -310,6 +545,21 @@ public class RTSPHlsConverterServer {
             if (relativePath.isEmpty() || relativePath.equals("/")) {
                 relativePath = HLS_M3U8_NAME;
             }
+            // 시청 활동 기록: /<키>/... 는 해당 스트림, 최상위 파일은 기본 스트림
+            int slash = relativePath.indexOf('/');
+            OnDemandPipeline source = onDemandPipelines.get(slash > 0 ? relativePath.substring(0, slash) : "");
+            if (source != null) {
+                source.touch();
+                if (relativePath.endsWith(".m3u8")) {
+                    try {
+                        if (!source.awaitReady(FIRST_SEGMENT_WAIT_MS)) {
+                            System.err.println("[HTTP Handler] Stream not ready within " + FIRST_SEGMENT_WAIT_MS + "ms: " + relativePath);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
             File file = new File(basePath.toFile(), relativePath);
             // 디버깅 로그 (이전 코드에서 가져옴)
             System.out.println("-----------------------------------------------------");
@@ -329,6 +579,12 @@ public class RTSPHlsConverterServer {
                 exchange.getResponseHeaders().set("Content-Type", contentType);
                 exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
                 exchange.sendResponseHeaders(200, file.length());
+                if (relativePath.endsWith(".ts") && firstSegmentServed.compareAndSet(false, true)) {
+                    // JVM 시작 ~ 첫 세그먼트 전송 (콜드 스타트 전체 시간, StartupBenchmark와 같은 기준)
+                    long sinceJvmStartMs = ManagementFactory.getRuntimeMXBean().getUptime();
+                    PipelineMetrics.setGauge("startup.first_segment_served_ms", sinceJvmStartMs);
+                    System.out.println("[Startup] First segment served " + sinceJvmStartMs + "ms after JVM start.");
+                }
                 try (OutputStream os = exchange.getResponseBody(); FileInputStream fs = new FileInputStream(file)) {
                     final byte[] buffer = new byte[4096]; int bytesRead;
                     while ((bytesRead = fs.read(buffer)) != -1) os.write(buffer, 0, bytesRead);
@@ -0,0 +1,191 @@
+import org.bytedeco.javacv.CanvasFrame;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import javax.swing.JFrame;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 여러 RTSP 스트림을 한 창에 격자로 보여주는 뷰어 (CCTV 월)
+// - 스트림마다 디코딩 스레드 하나, 각 스레드는 자기 타일 이미지만 갱신
+// - 화면 갱신은 별도 타이머 루프가 REPAINT_FPS 로 타일을 모아서 CanvasFrame 하나에 그림 (스트림 fps와 무관)
+// - 타일이 작으므로 디코딩 비용을 줄이는 FFmpeg 옵션 사용 (-Dmosaic.decode):
+//     full      : 일반 디코딩 (타일 크기로 축소만)
+//     light     : 루프 필터 생략(skip_loop_filter) + 지원 코덱은 lowres 디코딩 (기본값, 블록 노이즈가 약간 보일 수 있음)
+//     keyframes : 키프레임만 디코딩(skip_frame nonkey) - GOP 간격으로만 갱신되지만 CPU가 가장 적게 듦 (16대 이상)
+// 사용법: RTSPMosaicViewer rtsp://cam1/... rtsp://cam2/... [...]
+public class RTSPMosaicViewer {
+
+    private static final int TILE_WIDTH = Integer.getInteger("mosaic.tile.width", 480);
+    private static final int TILE_HEIGHT = Integer.getInteger("mosaic.tile.height", 270);
+    private static final double REPAINT_FPS = 15.0;
+    private static final String DECODE_MODE = System.getProperty("mosaic.decode", "light");
+    private static final long RECONNECT_DELAY_MS = 3000;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: RTSPMosaicViewer <rtsp-url> [<rtsp-url> ...]");
+            return;
+        }
+        NativePreloader.startFfmpeg();
+        List<String> urls = Arrays.asList(args);
+        int columns = (int) Math.ceil(Math.sqrt(urls.size()));
+        int rows = (urls.size() + columns - 1) / columns;
+        System.out.println("Mosaic: " + urls.size() + " streams, " + columns + "x" + rows + " tiles of "
+                + TILE_WIDTH + "x" + TILE_HEIGHT + ", decode mode: " + DECODE_MODE);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Tile> tiles = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            tiles.add(new Tile(i, urls.get(i)));
+        }
+
+        CanvasFrame canvas = new CanvasFrame("RTSP Mosaic - " + urls.size() + " cameras");
+        canvas.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        canvas.setCanvasSize(columns * TILE_WIDTH, rows * TILE_HEIGHT);
+
+        ExecutorService decoders = Executors.newFixedThreadPool(tiles.size(), runnable -> {
+            Thread thread = new Thread(runnable, "MosaicDecoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        NativePreloader.awaitAll();
+        for (Tile tile : tiles) {
+            decoders.submit(() -> decodeLoop(tile, running));
+        }
+
+        // 고정 주기로 합성/갱신: 디코딩 스레드가 몇 개든 EDT 에는 초당 REPAINT_FPS 번만 그림
+        BufferedImage mosaic = new BufferedImage(columns * TILE_WIDTH, rows * TILE_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        long repaintIntervalNanos = (long) (1_000_000_000L / REPAINT_FPS);
+        long nextRepaint = System.nanoTime();
+        while (canvas.isDisplayable()) {
+            Graphics2D g = mosaic.createGraphics();
+            for (Tile tile : tiles) {
+                tile.drawInto(g, (tile.index % columns) * TILE_WIDTH, (tile.index / columns) * TILE_HEIGHT);
+            }
+            g.dispose();
+            canvas.showImage(mosaic);
+
+            nextRepaint += repaintIntervalNanos;
+            long sleepNanos = nextRepaint - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+            } else {
+                nextRepaint = System.nanoTime(); // 밀렸으면 따라잡으려고 연속으로 그리지 않음
+            }
+        }
+        System.out.println("Mosaic window closed. Stopping decoders...");
+        running.set(false);
+        decoders.shutdownNow();
+        System.exit(0);
+    }
+
+    // 스트림 하나: 연결 -> 디코딩 -> 타일 갱신, 끊기면 재연결
+    private static void decodeLoop(Tile tile, AtomicBoolean running) {
+        Java2DFrameConverter converter = new Java2DFrameConverter(); // 스레드마다 별도 (내부 버퍼 공유 방지)
+        while (running.get()) {
+            FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(tile.url);
+            try {
+                tile.setStatus("Connecting...");
+                Map<String, String> options = new LinkedHashMap<>();
+                if (tile.url.startsWith("rtsp")) {
+                    options.put("rtsp_transport", "tcp");
+                    options.put("stimeout", "5000000");
+                }
+                applyDecodeMode(grabber);
+                ProbeCache.start(grabber, tile.url, options);
+                // 디코딩 후 BGR 변환(sws_scale)을 원본이 아닌 타일 크기로 바로 수행
+                // (시작 후에 지정해야 probe 캐시에는 원본 해상도가 기록됨)
+                grabber.setImageWidth(TILE_WIDTH);
+                grabber.setImageHeight(TILE_HEIGHT);
+                tile.setStatus(null);
+                Frame frame;
+                while (running.get() && (frame = grabber.grabImage()) != null) {
+                    tile.update(converter.convert(frame));
+                }
+                tile.setStatus("Stream ended");
+            } catch (FrameGrabber.Exception e) {
+                tile.setStatus("Error: " + e.getMessage());
+                System.err.println("[Tile " + tile.index + "] " + tile.url + ": " + e.getMessage());
+            } finally {
+                try {
+                    grabber.stop();
+                    grabber.release();
+                } catch (FrameGrabber.Exception e) {
+                    // 재연결 전 정리 중 오류는 무시
+                }
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static void applyDecodeMode(FFmpegFrameGrabber grabber) {
+        grabber.setVideoOption("threads", "1"); // 스트림이 많으면 스트림 간 병렬이 더 효율적 (코덱 내부 스레드 경쟁 방지)
+        switch (DECODE_MODE) {
+            case "keyframes":
+                grabber.setVideoOption("skip_frame", "nonkey");
+                grabber.setVideoOption("skip_loop_filter", "all");
+                break;
+            case "light":
+                grabber.setVideoOption("skip_loop_filter", "all");
+                // lowres는 MJPEG/MPEG-4 등에서만 동작 (H.264 디코더는 무시)
+                if (TILE_WIDTH <= 480) grabber.setVideoOption("lowres", "1");
+                break;
+            default:
+                break;
+        }
+    }
+
+    // 타일 하나의 최신 이미지 (디코딩 스레드가 쓰고, 합성 루프가 읽음)
+    private static final class Tile {
+        final int index;
+        final String url;
+        private final BufferedImage image = new BufferedImage(TILE_WIDTH, TILE_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        private volatile String status = "Waiting...";
+
+        Tile(int index, String url) {
+            this.index = index;
+            this.url = url;
+        }
+
+        void setStatus(String status) {
+            this.status = status;
+        }
+
+        synchronized void update(BufferedImage decoded) {
+            if (decoded == null) return;
+            Graphics2D g = image.createGraphics();
+            g.drawImage(decoded, 0, 0, TILE_WIDTH, TILE_HEIGHT, null);
+            g.dispose();
+        }
+
+        synchronized void drawInto(Graphics2D g, int x, int y) {
+            g.drawImage(image, x, y, null);
+            g.setColor(Color.DARK_GRAY);
+            g.drawRect(x, y, TILE_WIDTH - 1, TILE_HEIGHT - 1);
+            g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 14));
+            g.setColor(Color.YELLOW);
+            g.drawString("#" + (index + 1), x + 6, y + 18);
+            String currentStatus = status;
+            if (currentStatus != null) {
+                g.drawString(currentStatus, x + 6, y + TILE_HEIGHT - 8);
+            }
+        }
+    }
+}
@@ -4,36 +4,69 @@ import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.FrameGrabber; // FrameGrabber.Exception을 위해 필요
 
 import javax.swing.JFrame; // JFrame.EXIT_ON_CLOSE 사용을 위해 필요
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
 
 public class RTSPViewer {
 
+    private static final long LATENCY_LOG_INTERVAL_MS = 5000;
+    private static long connectStartNanos;
+    private static boolean firstFrameReported = false;
+
+    // 사용법: RTSPViewer [url] [--headless]
+    // --headless: 창 없이 디코딩만 하면서 퍼블리셔가 그려 넣은 캡처 시각 코드(LatencyStamp)로 glass-to-glass 지연 측정
+    //   RTSP(MediaMTX) 주소를 주면 "캡처 -> RTSP 뷰어", HLS 주소(http://.../stream.m3u8)를 주면 "캡처 -> HLS 플레이어" 구간
     public static void main(String[] args) {
+        boolean headless = Arrays.asList(args).contains("--headless");
+        String urlArgument = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).findFirst().orElse(null);
         // 1. RTSP 스트림 URL 설정
         // "<YOUR_MACBOOK_IP_HERE>" 부분을 실제 RTSP 서버가 실행 중인 맥북의 IP 주소로 변경하세요.
         // 만약 이 뷰어 프로그램을 RTSP 서버와 동일한 컴퓨터에서 실행한다면 "localhost"로 사용할 수 있습니다.
-        String rtspUrl = "rtsp://192.168.0.152:8554/live";
+        String rtspUrl = urlArgument != null ? urlArgument : "rtsp://192.168.0.152:8554/live";
 //        String rtspUrl = "rtsp://localhost:8554/live";
         // 예시: String rtspUrl = "rtsp://192.168.0.10:8554/live";
         // 예시: String rtspUrl = "rtsp://localhost:8554/live";
 
         FFmpegFrameGrabber grabber = null;
         CanvasFrame canvas = null;
+        Timer latencyTimer = null;
 
         try {
             // 2. FFmpegFrameGrabber 초기화
             grabber = new FFmpegFrameGrabber(rtspUrl);
 
             // RTSP 연결 옵션 설정 (TCP 사용 권장, 타임아웃 설정)
-            grabber.setOption("rtsp_transport", "tcp"); // UDP보다 TCP가 안정적일 수 있음
-            grabber.setOption("stimeout", "5000000");   // 서버 연결 타임아웃: 5초 (마이크로초 단위)
+            Map<String, String> options = new LinkedHashMap<>();
+            if (rtspUrl.startsWith("rtsp")) {
+                options.put("rtsp_transport", "tcp"); // UDP보다 TCP가 안정적일 수 있음
+                options.put("stimeout", "5000000");   // 서버 연결 타임아웃: 5초 (마이크로초 단위)
+            }
 
             System.out.println("RTSP 스트림에 연결 시도 중: " + rtspUrl);
-            grabber.start(); // 스트림에 연결하고 그래버 초기화
-            System.out.println("스트림 연결 성공!");
+            connectStartNanos = System.nanoTime();
+            ProbeCache.start(grabber, rtspUrl, options); // 스트림에 연결하고 그래버 초기화 (캐시된 probe 결과가 있으면 probe 최소화)
+            System.out.println("스트림 연결 성공! (" + (System.nanoTime() - connectStartNanos) / 1_000_000 + "ms)");
             System.out.println("수신 스트림 해상도: " + grabber.getImageWidth() + "x" + grabber.getImageHeight());
             System.out.println("수신 스트림 프레임률: " + grabber.getFrameRate());
 
 
+            LatencyHistogram latency = LatencyHistogram.get("viewer.capture_to_displayed");
+            latencyTimer = LatencyHistogram.startLogging(LATENCY_LOG_INTERVAL_MS);
+
+            if (headless) {
+                System.out.println("Headless mode: measuring glass-to-glass latency. Press Ctrl+C to stop.");
+                Frame frame;
+                while ((frame = grabber.grabImage()) != null) {
+                    reportFirstFrame();
+                    long captureMillis = LatencyStamp.read(frame);
+                    if (captureMillis > 0) latency.record(System.currentTimeMillis() - captureMillis);
+                }
+                System.out.println("Stream ended. " + latency.summary());
+                return;
+            }
+
             // 3. 영상을 표시할 CanvasFrame 생성
             // 타이틀, 감마 값 자동 보정
             canvas = new CanvasFrame("RTSP Viewer - " + rtspUrl, CanvasFrame.getDefaultGamma() / grabber.getGamma());
@@ -54,7 +87,10 @@ public class RTSPViewer {
                 Frame frame = grabber.grabImage(); // 비디오 프레임 가져오기 (grab()은 오디오/비디오 모두)
 
                 if (frame != null) {
+                    reportFirstFrame();
+                    long captureMillis = LatencyStamp.read(frame);
                     canvas.showImage(frame); // 가져온 프레임을 창에 표시
+                    if (captureMillis > 0) latency.record(System.currentTimeMillis() - captureMillis);
                 } else {
                     // 프레임을 더 이상 가져올 수 없는 경우 (스트림 종료 또는 심각한 오류)
                     System.out.println("스트림으로부터 더 이상 프레임을 수신할 수 없습니다. 루프를 종료합니다.");
@@ -72,6 +108,7 @@ public class RTSPViewer {
         } finally {
             // 5. 사용한 리소스 해제 (매우 중요)
             System.out.println("리소스 해제 작업을 시작합니다...");
+            if (latencyTimer != null) latencyTimer.cancel();
 
             if (canvas != null) {
                 System.out.println("CanvasFrame을 닫습니다.");
@@ -92,4 +129,11 @@ public class RTSPViewer {
             System.out.println("RTSP Viewer 애플리케이션이 종료되었습니다.");
         }
     }
-}
\ No newline at end of file
+
+    // 연결 시작 ~ 첫 프레임 디코딩까지 걸린 시간 (연결마다 한 번)
+    private static void reportFirstFrame() {
+        if (firstFrameReported) return;
+        firstFrameReported = true;
+        System.out.println("Time to first frame: " + (System.nanoTime() - connectStartNanos) / 1_000_000 + "ms");
+    }
+}
@@ -0,0 +1,116 @@
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.lang.reflect.Field;
+
+// FFmpegFrameRecorder/FFmpegFrameGrabber가 start() 이후에는 노출하지 않는 인코더/디코더 설정을 실행 중에 바꾸기 위한 헬퍼
+// (JavaCV 내부 필드 이름에 의존하므로, 접근에 실패하면 false를 반환하고 호출 측에서 레코더 재시작 등으로 대체)
+public class RecorderTuning {
+
+    private static volatile boolean accessFailureLogged = false;
+
+    private RecorderTuning() {}
+
+    static AVCodecContext videoCodecContext(FFmpegFrameRecorder recorder) {
+        return videoCodecContext(FFmpegFrameRecorder.class, recorder);
+    }
+
+    static AVCodecContext videoCodecContext(FFmpegFrameGrabber grabber) {
+        return videoCodecContext(FFmpegFrameGrabber.class, grabber);
+    }
+
+    private static AVCodecContext videoCodecContext(Class<?> type, Object target) {
+        try {
+            Field field = type.getDeclaredField("video_c");
+            field.setAccessible(true);
+            return (AVCodecContext) field.get(target);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            if (!accessFailureLogged) {
+                accessFailureLogged = true;
+                System.err.println("[RecorderTuning] Cannot access encoder context: " + e);
+            }
+            return null;
+        }
+    }
+
+    // libx264 (ABR 모드)는 다음 프레임 인코딩 시 bit_rate 변경을 감지해서 x264_encoder_reconfig 로 반영함
+    public static boolean setVideoBitrate(FFmpegFrameRecorder recorder, int bitrate) {
+        AVCodecContext videoContext = videoCodecContext(recorder);
+        if (videoContext == null || videoContext.isNull()) {
+            return false;
+        }
+        // 다른 인코더(openh264 등)는 bit_rate 를 바꿔도 무시하므로 false 를 돌려서 호출 측이 레코더를 재시작하게 함
+        AVCodec codec = videoContext.codec();
+        if (codec == null || codec.isNull() || codec.name() == null || !"libx264".equals(codec.name().getString())) {
+            return false;
+        }
+        videoContext.bit_rate(bitrate);
+        if (videoContext.rc_max_rate() > 0) {
+            videoContext.rc_max_rate(bitrate);
+            videoContext.rc_buffer_size(bitrate);
+        }
+        return true;
+    }
+
+    // 디코더가 다음 패킷부터 버릴 프레임 종류 (avcodec.AVDISCARD_NONKEY 면 키프레임만 디코딩, AVDISCARD_DEFAULT 로 복귀)
+    public static boolean setDecoderSkipFrame(FFmpegFrameGrabber grabber, int discard) {
+        AVCodecContext videoContext = videoCodecContext(grabber);
+        if (videoContext == null || videoContext.isNull()) {
+            return false;
+        }
+        videoContext.skip_frame(discard);
+        return true;
+    }
+
+    // 이 프레임을 키프레임으로 인코딩 (ffmpeg -force_key_frames 와 같은 방식: 인코더에 넘기는 AVFrame 의 pict_type = I)
+    // libx264 는 forced-idr=1 이면 IDR 로 인코딩. 접근에 실패하면 일반 record() 로 기록하고 false
+    // (강제하지 못한 키프레임은 recorder.keyframe_fallbacks 로 집계: 세그먼트 경계 키프레임이 빠지면 이 값이 늘어남)
+    public static boolean recordKeyFrame(FFmpegFrameRecorder recorder, Frame frame) throws FrameRecorder.Exception {
+        return recordKeyFrame(recorder, frame, avutil.AV_PIX_FMT_NONE);
+    }
+
+    // pixelFormat: 프레임 버퍼의 픽셀 형식 (record(frame, pixelFormat) 와 같음, AV_PIX_FMT_NONE 이면 record(frame))
+    public static boolean recordKeyFrame(FFmpegFrameRecorder recorder, Frame frame, int pixelFormat) throws FrameRecorder.Exception {
+        AVFrame picture = encoderPicture(recorder);
+        if (picture == null || picture.isNull()) {
+            PipelineMetrics.increment("recorder.keyframe_fallbacks");
+            record(recorder, frame, pixelFormat);
+            return false;
+        }
+        picture.pict_type(avutil.AV_PICTURE_TYPE_I);
+        try {
+            record(recorder, frame, pixelFormat);
+        } finally {
+            picture.pict_type(avutil.AV_PICTURE_TYPE_NONE);
+        }
+        return true;
+    }
+
+    private static void record(FFmpegFrameRecorder recorder, Frame frame, int pixelFormat) throws FrameRecorder.Exception {
+        if (pixelFormat == avutil.AV_PIX_FMT_NONE) {
+            recorder.record(frame);
+        } else {
+            recorder.record(frame, pixelFormat);
+        }
+    }
+
+    private static AVFrame encoderPicture(FFmpegFrameRecorder recorder) {
+        try {
+            Field field = FFmpegFrameRecorder.class.getDeclaredField("picture");
+            field.setAccessible(true);
+            return (AVFrame) field.get(recorder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            if (!accessFailureLogged) {
+                accessFailureLogged = true;
+                System.err.println("[RecorderTuning] Cannot access encoder picture: " + e);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 콜드 스타트 벤치마크: JVM 실행 ~ 첫 HLS 세그먼트 수신까지의 시간을 변형별로 반복 측정
+// RTSPHlsConverterServer를 매번 새 JVM으로 띄우고(같은 classpath), 플레이리스트를 요청한 뒤 첫 세그먼트를 받은 시점까지 측정.
+// - 기본 변형: native.preload 끔/켬
+// - -Dbench.jvm.args="-XX:SharedArchiveFile=/path/converter.jsa" 처럼 추가 JVM 옵션(AppCDS 등) 지정 가능
+//   (아카이브는 -XX:ArchiveClassesAtExit=/path/converter.jsa 로 컨버터를 한 번 실행하고 종료해서 만듦, JDK 17)
+// 사용법: StartupBenchmark [반복 횟수] [소스 URL]  (소스를 주지 않으면 합성 영상 파일을 만들어서 사용)
+// 파일 소스는 실시간보다 빨리 읽히므로 절대값보다는 변형 간 차이를 볼 것
+public class StartupBenchmark {
+
+    private static final String BENCH_DIRECTORY = "startup_bench";
+    private static final int CONVERTER_HTTP_PORT = 8989;
+    private static final long RUN_TIMEOUT_MS = 60000;
+    private static final long POLL_INTERVAL_MS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String sourceUrl = args.length > 1 ? args[1] : null;
+        File benchDir = new File(BENCH_DIRECTORY).getAbsoluteFile();
+        Files.createDirectories(benchDir.toPath());
+        if (sourceUrl == null) {
+            File sourceFile = new File(benchDir, "synthetic_source.flv");
+            LoadTestHarness.renderSyntheticFile(sourceFile, 1280, 720, 30.0, 120);
+            sourceUrl = sourceFile.getAbsolutePath();
+        }
+
+        List<String> extraJvmArgs = new ArrayList<>();
+        String configured = System.getProperty("bench.jvm.args", "").trim();
+        if (!configured.isEmpty()) extraJvmArgs.addAll(Arrays.asList(configured.split("\\s+")));
+
+        String[][] variants = {
+                {"lazy-load", "-Dnative.preload=false"},
+                {"preload", "-Dnative.preload=true"},
+        };
+        for (String[] variant : variants) {
+            List<Long> results = new ArrayList<>();
+            for (int run = 0; run < runs; run++) {
+                List<String> jvmArgs = new ArrayList<>(extraJvmArgs);
+                jvmArgs.add(variant[1]);
+                long elapsedMs = measureRun(benchDir, variant[0] + "-" + run, sourceUrl, jvmArgs);
+                System.out.println("[" + variant[0] + "] run " + run + ": " + (elapsedMs >= 0 ? elapsedMs + "ms" : "timeout"));
+                if (elapsedMs >= 0) results.add(elapsedMs);
+            }
+            printSummary(variant[0], results);
+        }
+    }
+
+    private static long measureRun(File benchDir, String runName, String sourceUrl, List<String> jvmArgs) throws IOException, InterruptedException {
+        File runDir = new File(benchDir, runName);
+        Files.createDirectories(runDir.toPath());
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-Dsource.url=" + sourceUrl);
+        command.add("-Dprobe.cache.dir=" + new File(benchDir, "probe_cache").getAbsolutePath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("RTSPHlsConverterServer");
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        long launchNanos = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(runDir)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(runDir, "converter.log"))
+                .start();
+        try {
+            long deadline = System.currentTimeMillis() + RUN_TIMEOUT_MS;
+            while (System.currentTimeMillis() < deadline && process.isAlive()) {
+                String segment = firstSegment(client);
+                if (segment != null && fetch(client, segment) != null) {
+                    return (System.nanoTime() - launchNanos) / 1_000_000;
+                }
+                Thread.sleep(POLL_INTERVAL_MS);
+            }
+            return -1;
+        } finally {
+            process.destroy(); // SIGTERM -> shutdown hook 으로 정리
+            if (!process.waitFor(10, TimeUnit.SECONDS)) process.destroyForcibly().waitFor();
+        }
+    }
+
+    // 플레이리스트의 첫 세그먼트 이름 (서버가 아직 안 떴거나 세그먼트가 없으면 null)
+    private static String firstSegment(HttpClient client) throws InterruptedException {
+        String playlist = fetch(client, "stream.m3u8");
+        if (playlist == null) return null;
+        for (String line : playlist.split("\n")) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) return line;
+        }
+        return null;
+    }
+
+    private static String fetch(HttpClient client, String path) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + CONVERTER_HTTP_PORT + "/" + path))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200 ? response.body() : null;
+        } catch (IOException e) {
+            return null; // 아직 포트가 열리지 않음
+        }
+    }
+
+    private static void printSummary(String variant, List<Long> results) {
+        if (results.isEmpty()) {
+            System.out.println("=== " + variant + ": no successful runs ===");
+            return;
+        }
+        Collections.sort(results);
+        System.out.println("=== " + variant + ": JVM launch -> first segment: min=" + results.get(0) + "ms median="
+                + results.get(results.size() / 2) + "ms max=" + results.get(results.size() - 1) + "ms (" + results.size() + " runs) ===");
+    }
+}
@@ -0,0 +1,104 @@
+import org.bytedeco.javacv.Frame;
+
+import java.nio.ByteBuffer;
+
+// 거의 움직임이 없는 CCTV 화면에서 같은 그림을 30fps로 계속 인코딩하지 않기 위한 정지 장면 감지기 (가변 프레임레이트 출력)
+// - 프레임을 GRID_COLUMNS x GRID_ROWS 칸으로 나눠 칸마다 몇 개 픽셀의 밝기 평균만 계산 (축소 썸네일, 프레임당 수천 픽셀 읽기)
+// - 마지막으로 "인코딩한" 프레임의 썸네일과 비교해서 평균 차이와 가장 많이 바뀐 칸의 차이가 모두 작으면 건너뜀
+//   (직전 프레임이 아니라 마지막 인코딩 프레임과 비교하므로 천천히 바뀌는 장면도 누적되면 다시 인코딩됨)
+// - 최소 갱신 주기(maxIntervalMicros)가 지나면 정지 화면이라도 인코딩
+// - 건너뛴 프레임은 타임스탬프 공백으로 남음 (VFR). 세그먼트 경계를 지나는 첫 인코딩 프레임은 keyFrameDue() 로 알려서 키프레임 강제
+public class StaticSceneDetector {
+
+    private static final int GRID_COLUMNS = 32;
+    private static final int GRID_ROWS = 18;
+    private static final int SAMPLES_PER_CELL_AXIS = 4;      // 칸마다 4x4 픽셀 평균 (센서 노이즈 완화)
+    private static final double MEAN_DIFF_THRESHOLD = 2.0;   // 전체 평균 밝기 차이 (0~255)
+    private static final int CELL_DIFF_THRESHOLD = 16;       // 한 칸이라도 이만큼 바뀌면 움직임 (작은 피사체)
+
+    private final String metricPrefix;
+    private final long maxIntervalMicros;
+    private final long keyFrameIntervalMicros;
+    private final int[] current = new int[GRID_COLUMNS * GRID_ROWS];
+    private int[] reference;          // 마지막으로 인코딩한 프레임의 썸네일
+    private long lastEncodedMicros = Long.MIN_VALUE;
+    private long nextKeyFrameMicros = Long.MIN_VALUE;
+
+    // minRefreshFps: 정지 화면에서도 최소 이만큼은 인코딩, keyFrameIntervalMicros: 세그먼트/GOP 길이
+    public StaticSceneDetector(String metricPrefix, double minRefreshFps, long keyFrameIntervalMicros) {
+        this.metricPrefix = metricPrefix;
+        this.maxIntervalMicros = Math.round(1_000_000.0 / minRefreshFps);
+        this.keyFrameIntervalMicros = keyFrameIntervalMicros;
+    }
+
+    // true: 이 프레임을 인코딩 (장면이 바뀌었거나 최소 갱신 주기가 지남), false: 건너뜀
+    public boolean shouldEncode(Frame frame, long timestampMicros) {
+        if (!thumbnail(frame, current)) {
+            return true; // 지원하지 않는 형식은 항상 인코딩
+        }
+        boolean changed = reference == null || isDifferent(current, reference);
+        if (changed || timestampMicros - lastEncodedMicros >= maxIntervalMicros) {
+            if (reference == null) reference = new int[current.length];
+            System.arraycopy(current, 0, reference, 0, current.length);
+            lastEncodedMicros = timestampMicros;
+            PipelineMetrics.increment(metricPrefix + (changed ? ".scene_encoded" : ".scene_refreshed"));
+            return true;
+        }
+        PipelineMetrics.increment(metricPrefix + ".scene_skipped");
+        return false;
+    }
+
+    // 인코딩할 프레임마다 호출. 다음 세그먼트 경계 시각을 지났으면 true (이 프레임을 키프레임으로)
+    public boolean keyFrameDue(long timestampMicros) {
+        if (nextKeyFrameMicros == Long.MIN_VALUE || timestampMicros >= nextKeyFrameMicros) {
+            nextKeyFrameMicros = (timestampMicros / keyFrameIntervalMicros + 1) * keyFrameIntervalMicros;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isDifferent(int[] a, int[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            int diff = Math.abs(a[i] - b[i]);
+            if (diff > CELL_DIFF_THRESHOLD) return true;
+            sum += diff;
+        }
+        return (double) sum / a.length > MEAN_DIFF_THRESHOLD;
+    }
+
+    // 8비트 BGR/회색 프레임만 지원 (FFmpegFrameGrabber/OpenCVFrameGrabber 기본 출력)
+    private static boolean thumbnail(Frame frame, int[] cells) {
+        if (frame.image == null || frame.imageDepth != Frame.DEPTH_UBYTE || !(frame.image[0] instanceof ByteBuffer)) {
+            return false;
+        }
+        ByteBuffer pixels = (ByteBuffer) frame.image[0];
+        int channels = frame.imageChannels;
+        int stride = frame.imageStride;
+        int cellWidth = frame.imageWidth / GRID_COLUMNS;
+        int cellHeight = frame.imageHeight / GRID_ROWS;
+        if (cellWidth < SAMPLES_PER_CELL_AXIS || cellHeight < SAMPLES_PER_CELL_AXIS) return false;
+        int stepX = cellWidth / SAMPLES_PER_CELL_AXIS;
+        int stepY = cellHeight / SAMPLES_PER_CELL_AXIS;
+        for (int row = 0; row < GRID_ROWS; row++) {
+            for (int column = 0; column < GRID_COLUMNS; column++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL_AXIS; sy++) {
+                    int y = row * cellHeight + sy * stepY + stepY / 2;
+                    for (int sx = 0; sx < SAMPLES_PER_CELL_AXIS; sx++) {
+                        int x = column * cellWidth + sx * stepX + stepX / 2;
+                        int index = y * stride + x * channels;
+                        if (channels >= 3) {
+                            // BGR -> 대략적인 밝기 (B + 2G + R) / 4
+                            sum += ((pixels.get(index) & 0xFF) + 2 * (pixels.get(index + 1) & 0xFF) + (pixels.get(index + 2) & 0xFF)) >> 2;
+                        } else {
+                            sum += pixels.get(index) & 0xFF;
+                        }
+                    }
+                }
+                cells[row * GRID_COLUMNS + column] = sum / (SAMPLES_PER_CELL_AXIS * SAMPLES_PER_CELL_AXIS);
+            }
+        }
+        return true;
+    }
+}
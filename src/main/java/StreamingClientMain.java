@@ -21,9 +21,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class StreamingClientMain {
@@ -36,16 +40,27 @@ public class StreamingClientMain {
     final static String RTSP_ACCESS_PATH = "/live"; // RTMP와 동일한 경로 사용
     final static int MEDIAMTX_RTSP_PORT = 18554;   // MediaMTX의 기본 RTSP 포트
 
-    final static int VIDEO_BITRATE = 2000000; // 2 Mbps
+    final static int VIDEO_BITRATE = 2000000; // 2 Mbps (혼잡 제어의 최대 단계)
+    final static int MIN_VIDEO_BITRATE = 300000; // 혼잡 시 내려갈 최저 비트레이트 (이후에는 해상도를 낮춤)
+    final static int SEND_QUEUE_CAPACITY = 8; // 캡처 -> 송신 스레드 사이 대기 프레임 수 (약 0.25초)
     final static double FRAME_RATE = 30.0;    // Target FPS
+    final static long METRICS_LOG_INTERVAL_MS = 10000; // 타임스탬프 드리프트/지연 로그 주기
+    // true면 캡처 시각을 영상 왼쪽 위에 코드로 그려 넣음 (컨버터/RTSPViewer --headless 에서 구간별 지연 측정용)
+    final static boolean LATENCY_STAMP = Boolean.getBoolean("latency.stamp");
+    final static String JFR_STREAM_ID = "publisher"; // FrameStageEvent 의 스트림 id
+    // 정지 장면 감지: 움직임이 없으면 프레임을 보내지 않고 최소 이 fps 로만 인코딩 (VFR, 0이면 항상 FRAME_RATE)
+    final static double STATIC_SCENE_MIN_FPS = Double.parseDouble(System.getProperty("static.scene.min.fps", "0"));
+    final static long KEYFRAME_INTERVAL_MICROS = 2_000_000; // GOP 크기(FRAME_RATE * 2)와 같은 시간 간격
 
     final static String STREAM_NAME_ON_SERVER = "My MacBook Camera (via MediaMTX)";
     final static String STREAM_DESCRIPTION_ON_SERVER = "Live stream from MacBook, served by MediaMTX";
     final static String SPRING_BOOT_SERVER_URL = "http://localhost:8080";
 
     public static void main(String[] args) {
-        FFmpegLogCallback.set(); // FFmpegFrameRecorder 내부 로그 확인용
-        avutil.av_log_set_level(avutil.AV_LOG_DEBUG);
+        // 카메라를 여는 동안 FFmpeg 네이티브는 백그라운드에서 로드 (NativeCapture 가 FFmpeg 장치를 쓰면 그 시점에 로드가 끝날 때까지 대기)
+        NativePreloader.startFfmpeg();
+        // OpenCV: 미리보기 변환(OpenCVFrameConverter)과 OpenCV 캡처 대체 경로용
+        NativePreloader.startOpenCv();
 
         System.out.println("Starting RTMP Publishing Client (to MediaMTX)...");
 
@@ -56,13 +71,21 @@ public class StreamingClientMain {
         CountDownLatch recorderStartedLatch = new CountDownLatch(1);
         AtomicBoolean recorderProperlyStopped = new AtomicBoolean(false);
         final AtomicBoolean streamingActive = new AtomicBoolean(true);
+        Timer metricsTimer = null;
+        Timer latencyTimer = null;
+        Thread senderThread = null;
+        final BlockingQueue<QueuedFrame> sendQueue = new ArrayBlockingQueue<>(SEND_QUEUE_CAPACITY);
+        // -Dpublish.url=tcp://127.0.0.1:19350 처럼 지정하면 ThrottledTcpSink 등 로컬 테스트 대상으로 송출
+        // -Dpublish.url=rtmp://<converter>:1936/live/cam1 이면 MediaMTX 없이 RTSPHlsConverterServer의 RTMP ingest로 바로 송출
+        final String publishUrl = System.getProperty("publish.url", RTMP_PUBLISH_URL);
+        NativeCapture capture = null;
 
         try {
-            // 1. 카메라 그래버 초기화 (이전과 동일)
+            // 1. 카메라 그래버 초기화: 카메라의 YUV 형식을 그대로 받을 수 있으면 FFmpeg 장치(RAW), 아니면 OpenCV(BGR)
             System.out.println("Initializing camera grabber for device: " + CAMERA_DEVICE_INDEX);
-            FrameGrabber grabber = new OpenCVFrameGrabber(CAMERA_DEVICE_INDEX);
+            capture = NativeCapture.open(CAMERA_DEVICE_INDEX, FRAME_RATE);
+            FrameGrabber grabber = capture.getGrabber();
             grabberRef.set(grabber);
-            grabber.start();
             System.out.println("Camera grabber started.");
 
             int imageWidth = grabber.getImageWidth();
@@ -82,6 +105,8 @@ public class StreamingClientMain {
             AtomicBoolean canvasCreationFailed = new AtomicBoolean(false);
             final int finalImageWidth = imageWidth;
             final int finalImageHeight = imageHeight;
+            final int previewWidth = capture.getPreviewWidth(); // RAW 캡처면 축소 미리보기
+            final int previewHeight = capture.getPreviewHeight();
 
             SwingUtilities.invokeAndWait(() -> { /* ... CanvasFrame 생성 및 리스너 설정 (DO_NOTHING_ON_CLOSE) ... */
                 try {
@@ -96,7 +121,7 @@ public class StreamingClientMain {
                         }
                     });
                     canvas.setResizable(false);
-                    canvas.setCanvasSize(finalImageWidth, finalImageHeight);
+                    canvas.setCanvasSize(previewWidth, previewHeight);
                     canvas.setVisible(true);
                 } catch (Exception ex) { canvasCreationFailed.set(true); ex.printStackTrace(); }
                 finally { canvasReadyLatch.countDown(); }
@@ -109,28 +134,16 @@ public class StreamingClientMain {
 
 
             // 3. Initialize FFmpegFrameRecorder for RTMP Publishing
-            System.out.println("Initializing RTMP recorder. Publishing to: " + RTMP_PUBLISH_URL);
+            NativePreloader.awaitAll();
+            FFmpegLogCallback.set(); // FFmpegFrameRecorder 내부 로그 확인용
+            avutil.av_log_set_level(avutil.AV_LOG_DEBUG);
+            System.out.println("Initializing RTMP recorder. Publishing to: " + publishUrl);
             // 오디오 채널은 카메라에 따라 결정 (여기서는 0으로 가정, 필요시 grabber.getAudioChannels() 사용)
-            FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(RTMP_PUBLISH_URL, imageWidth, imageHeight, 0);
+            final int capturePixelFormat = capture.getPixelFormat();
+            final int encoderPixelFormat = capture.getEncoderPixelFormat();
+            FFmpegFrameRecorder recorder = createRtmpRecorder(publishUrl, imageWidth, imageHeight, VIDEO_BITRATE, encoderPixelFormat);
             recorderRef.set(recorder);
 
-            recorder.setFormat("flv"); // RTMP는 주로 FLV 컨테이너 사용
-            recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
-            recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
-            recorder.setFrameRate(FRAME_RATE);
-            recorder.setVideoBitrate(VIDEO_BITRATE);
-            recorder.setGopSize((int) FRAME_RATE * 2);
-            // recorder.setVideoOption("preset", "ultrafast");
-            // recorder.setVideoOption("tune", "zerolatency");
-
-            // 오디오 설정 (필요한 경우)
-            // if (grabber.getAudioChannels() > 0) {
-            //     recorder.setAudioChannels(grabber.getAudioChannels());
-            //     recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
-            //     recorder.setSampleRate(grabber.getSampleRate());
-            //     recorder.setAudioBitrate(128000); // 예시
-            // }
-
             // Start recorder in a separate thread
             new Thread(() -> {
                 try {
@@ -168,37 +181,51 @@ public class StreamingClientMain {
             registerStreamWithServer(STREAM_NAME_ON_SERVER, registerableRtspUrl, STREAM_DESCRIPTION_ON_SERVER);
 
             // 5. Main streaming loop (프레임을 RTMP로 전송)
+            // 캡처 루프는 송출 큐에 넣기만 하고, 실제 record()는 송신 스레드가 수행.
+            // 업링크가 막혀서 record()가 블록되어도 캡처/미리보기는 계속 돌고, 큐가 차면 오래된 프레임부터 버림.
             System.out.println("Streaming frames to MediaMTX (RTMP)... Close preview window to stop.");
             long frameCount = 0;
             CanvasFrame currentCanvas = canvasRef.get();
             OpenCVFrameConverter.ToMat frameToMatConverter = new OpenCVFrameConverter.ToMat(); // ToMat 컨버터 사용 가능
+            // 캡처 시각 기반 타임스탬프 + 목표 fps 유지 (drop/duplicate)
+            FramePacer pacer = new FramePacer(FRAME_RATE);
+            StaticSceneDetector sceneDetector = STATIC_SCENE_MIN_FPS > 0
+                    ? new StaticSceneDetector("publisher", STATIC_SCENE_MIN_FPS, KEYFRAME_INTERVAL_MICROS)
+                    : null;
+            metricsTimer = PipelineMetrics.startLogging("publisher.", METRICS_LOG_INTERVAL_MS);
+            if (LATENCY_STAMP) latencyTimer = LatencyHistogram.startLogging(METRICS_LOG_INTERVAL_MS);
+
+            AdaptiveBitrateController bitrateController = new AdaptiveBitrateController(
+                    AdaptiveBitrateController.defaultLevels(VIDEO_BITRATE, MIN_VIDEO_BITRATE), FRAME_RATE, SEND_QUEUE_CAPACITY);
+            senderThread = new Thread(() -> runSender(sendQueue, recorderRef, bitrateController, pacer, publishUrl,
+                    finalImageWidth, finalImageHeight, capturePixelFormat, encoderPixelFormat, streamingActive), "RtmpSender");
+            senderThread.start();
 
             while (streamingActive.get()) {
                 if (currentCanvas == null || !currentCanvas.isShowing()) { /* ... 루프 중단 ... */
                     System.out.println("Canvas became non-showing. Stopping loop."); streamingActive.set(false); break;
                 }
-                Frame capturedFrame = grabber.grab();
+                Frame capturedFrame = FrameStageEvent.grab(grabber, JFR_STREAM_ID, frameCount);
+                long captureNanos = System.nanoTime(); // grab()이 반환된 시점을 캡처 시각으로 사용 (단조 증가 시계)
+                long captureMillis = System.currentTimeMillis(); // 다른 프로세스와 비교할 지연 측정용 벽시계
                 if (capturedFrame == null) { /* ... 루프 중단 ... */
                     System.out.println("Null frame grabbed. Stopping loop."); streamingActive.set(false); break;
                 }
                 // 해상도 불일치 체크 등은 이전과 동일하게 유지 가능
+                // RAW 캡처: 평면을 하나의 버퍼로 (연속이면 복사 없음). 이후 인코더까지 이 형식 그대로 전달
+                capturedFrame = capture.toEncoderFrame(capturedFrame);
 
-                currentCanvas.showImage(capturedFrame); // 로컬 미리보기
+                FrameStageEvent showEvent = FrameStageEvent.start();
+                Frame previewFrame = capture.toPreviewFrame(capturedFrame);
+                if (previewFrame != null) currentCanvas.showImage(previewFrame); // 로컬 미리보기
+                showEvent.finish(FrameStageEvent.SHOW, JFR_STREAM_ID, frameCount);
 
-                try {
-                    // RTMP는 타임스탬프를 레코더가 내부적으로 관리하거나, setTimestamp로 설정 가능
-                    // 파일 녹화와 달리, RTMP 송출 시 setTimestamp가 항상 필수는 아닐 수 있으나,
-                    // 일관성을 위해 또는 프레임률 제어를 위해 설정하는 것이 좋을 수 있습니다.
-                    recorder.setTimestamp(frameCount * (1000000L / (long) FRAME_RATE)); // 프레임 기반 타임스탬프
-                    recorder.record(capturedFrame);
-                } catch (FrameRecorder.Exception fre) {
-                    System.err.println("Exception during recorder.record() (RTMP): " + fre.getMessage());
-                    // 송출 중단 또는 재시도 로직 추가 가능
-                    // streamingActive.set(false); break;
-                }
+                enqueueCaptured(capturedFrame, captureNanos, captureMillis, frameCount, pacer, sceneDetector, sendQueue);
                 frameCount++;
             }
-            System.out.println("Exited streaming loop. Processed frames: " + frameCount);
+            System.out.println("Exited streaming loop. Processed frames: " + frameCount
+                    + " (dropped: " + pacer.getDroppedFrames() + ", duplicated: " + pacer.getDuplicatedFrames()
+                    + ", skipped slots: " + pacer.getSkippedSlots() + ")");
 
         } catch (FrameGrabber.Exception | InterruptedException | InvocationTargetException e) {
             System.err.println("Main try-catch error: " + e.getMessage());
@@ -206,9 +233,25 @@ public class StreamingClientMain {
             if (e instanceof InterruptedException) Thread.currentThread().interrupt();
         } finally {
             System.out.println("Executing finally block: Releasing resources...");
+            if (metricsTimer != null) metricsTimer.cancel();
+            if (latencyTimer != null) latencyTimer.cancel();
+            streamingActive.set(false);
+            boolean senderExited = true;
+            if (senderThread != null) { // 송신 스레드가 레코더 사용을 끝낸 뒤에 정리
+                senderThread.interrupt(); // 큐 대기(poll)를 바로 깨움 (record() 안의 네이티브 쓰기는 깨우지 못함)
+                try { senderThread.join(5000); }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+                senderExited = !senderThread.isAlive();
+            }
+            // 송신 스레드가 보내지 못한 프레임의 공유 복사본 해제
+            QueuedFrame unsent;
+            while ((unsent = sendQueue.poll()) != null) unsent.release();
             // FFmpegFrameRecorder (RTMP) 정리
             FFmpegFrameRecorder currentRecorder = recorderRef.get();
-            if (currentRecorder != null && !recorderProperlyStopped.get() && !recorderStartFailed.get()) {
+            if (!senderExited) {
+                // 멈춘 소켓에 쓰는 record() 안(네이티브)에 있는 동안 stop()/release() 하면 JVM 이 죽을 수 있으므로 열어 둔 채 종료
+                System.err.println("RTMP sender is still blocked in record() after 5s. Leaving the recorder open.");
+            } else if (currentRecorder != null && !recorderProperlyStopped.get() && !recorderStartFailed.get()) {
                 try {
                     System.out.println("Stopping and releasing RTMP recorder...");
                     if (recorderStartedLatch.getCount() == 0) { // 시작 시도된 경우에만
@@ -221,6 +264,7 @@ public class StreamingClientMain {
                     System.err.println("Error stopping/releasing RTMP recorder: " + e.getMessage());
                 }
             }
+            if (capture != null) capture.release();
             // CanvasFrame 정리 (이전과 동일)
             CanvasFrame canvas = canvasRef.get();
             if (canvas != null) SwingUtilities.invokeLater(canvas::dispose);
@@ -235,6 +279,182 @@ public class StreamingClientMain {
         }
     }
 
+    // 캡처 프레임 하나를 페이서(고정 fps)와 정지 장면 감지를 거쳐 송출 큐에 넣음 (LoadTestHarness 의 합성 카메라도 같은 경로)
+    static void enqueueCaptured(Frame capturedFrame, long captureNanos, long captureMillis, long frameCount, FramePacer pacer,
+                                StaticSceneDetector sceneDetector, BlockingQueue<QueuedFrame> sendQueue) {
+        // 카메라 실제 fps가 목표와 달라도 출력은 FRAME_RATE로 고정:
+        // 0이면 이번 프레임은 버리고, 2 이상이면 빈 슬롯을 같은 프레임으로 채움
+        int emitCount = pacer.onFrameCaptured(captureNanos);
+        long firstSlot = pacer.firstSlot();
+        if (emitCount > 0 && sceneDetector != null) {
+            // VFR: 빈 슬롯을 같은 프레임으로 채우지 않고, 정지 장면이면 이번 프레임도 보내지 않음
+            // 캡처가 끊겼다 이어진 경우(emitCount > 1) 이 프레임의 슬롯은 가장 오래된 빈 슬롯이 아니라 마지막 슬롯
+            firstSlot += emitCount - 1;
+            emitCount = sceneDetector.shouldEncode(capturedFrame, pacer.timestampMicros(firstSlot)) ? 1 : 0;
+        }
+        if (emitCount > 0) {
+            // grabber는 다음 grab()에서 버퍼를 재사용하므로 큐에 넣기 전에 복사 (복제 슬롯끼리는 같은 복사본 공유)
+            FrameStageEvent copyEvent = FrameStageEvent.start();
+            Frame frameCopy = capturedFrame.clone();
+            if (LATENCY_STAMP) LatencyStamp.stamp(frameCopy, captureMillis); // 미리보기 창에는 그리지 않음
+            copyEvent.finish(FrameStageEvent.COPY, JFR_STREAM_ID, frameCount);
+            AtomicInteger references = new AtomicInteger(emitCount);
+            for (int i = 0; i < emitCount; i++) {
+                long slotTimestamp = pacer.timestampMicros(firstSlot + i);
+                // 프레임을 건너뛰면 GOP 크기(프레임 수)로는 키프레임 간격이 길어지므로 시간 기준으로 강제
+                boolean keyFrame = sceneDetector != null && sceneDetector.keyFrameDue(slotTimestamp);
+                QueuedFrame queued = new QueuedFrame(frameCopy, slotTimestamp, captureMillis, frameCount, keyFrame, references);
+                // 큐가 가득 찼으면 가장 오래된 프레임을 버림 (인코딩 전이므로 참조 프레임 구조는 깨지지 않음)
+                while (!sendQueue.offer(queued)) {
+                    QueuedFrame stale = sendQueue.poll();
+                    if (stale != null) {
+                        stale.release();
+                        PipelineMetrics.increment("publisher.queue_dropped_frames");
+                    }
+                }
+            }
+            PipelineMetrics.setGauge("publisher.capture_drift_us", pacer.lagMicros(captureNanos, pacer.timestampMicros(firstSlot)));
+        }
+        PipelineMetrics.setGauge("publisher.dropped_frames", pacer.getDroppedFrames());
+        PipelineMetrics.setGauge("publisher.duplicated_frames", pacer.getDuplicatedFrames());
+        PipelineMetrics.setGauge("publisher.skipped_slots", pacer.getSkippedSlots());
+    }
+
+    // 송출 큐 항목: 같은 프레임을 여러 슬롯에 복제할 수 있으므로 참조 카운트로 네이티브 버퍼 해제 시점을 관리
+    static final class QueuedFrame {
+        final Frame frame;
+        final long timestamp;
+        final long captureMillis;
+        final long frameNumber; // 캡처 루프의 프레임 번호 (JFR 이벤트 태그)
+        final boolean keyFrame; // 키프레임으로 인코딩 (정지 장면 감지 시 시간 기준 강제)
+        private final AtomicInteger references;
+
+        QueuedFrame(Frame frame, long timestamp, long captureMillis, long frameNumber, boolean keyFrame, AtomicInteger references) {
+            this.frame = frame;
+            this.timestamp = timestamp;
+            this.captureMillis = captureMillis;
+            this.frameNumber = frameNumber;
+            this.keyFrame = keyFrame;
+            this.references = references;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) frame.close();
+        }
+    }
+
+    // LoadTestHarness도 같은 송출 설정을 쓰도록 package-private
+    static FFmpegFrameRecorder createRtmpRecorder(String url, int width, int height, int videoBitrate) {
+        return createRtmpRecorder(url, width, height, videoBitrate, avutil.AV_PIX_FMT_YUV420P);
+    }
+
+    // pixelFormat: 인코더 입력 형식 (YUV420P 또는 NV12 - 캡처 형식과 같으면 레코더가 sws_scale 없이 바로 인코딩)
+    static FFmpegFrameRecorder createRtmpRecorder(String url, int width, int height, int videoBitrate, int pixelFormat) {
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(url, width, height, 0);
+        recorder.setFormat("flv"); // RTMP는 주로 FLV 컨테이너 사용
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setPixelFormat(pixelFormat);
+        recorder.setFrameRate(FRAME_RATE);
+        recorder.setVideoBitrate(videoBitrate);
+        recorder.setGopSize((int) FRAME_RATE * 2);
+        recorder.setVideoOption("forced-idr", "1"); // RecorderTuning.recordKeyFrame 으로 강제한 키프레임을 IDR 로
+        // recorder.setVideoOption("preset", "ultrafast");
+        // recorder.setVideoOption("tune", "zerolatency");
+
+        // 오디오 설정 (필요한 경우)
+        // if (grabber.getAudioChannels() > 0) {
+        //     recorder.setAudioChannels(grabber.getAudioChannels());
+        //     recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+        //     recorder.setSampleRate(grabber.getSampleRate());
+        //     recorder.setAudioBitrate(128000); // 예시
+        // }
+        return recorder;
+    }
+
+    // 송신 스레드: 큐에서 프레임을 꺼내 record()하고, 쓰기 지연/큐 깊이로 혼잡 단계를 조절 (LoadTestHarness 도 사용)
+    static void runSender(BlockingQueue<QueuedFrame> queue, AtomicReference<FFmpegFrameRecorder> recorderRef,
+                                  AdaptiveBitrateController controller, FramePacer pacer, String publishUrl,
+                                  int sourceWidth, int sourceHeight, int capturePixelFormat, int encoderPixelFormat,
+                                  AtomicBoolean streamingActive) {
+        AdaptiveBitrateController.Level appliedLevel = controller.getLevel();
+        try {
+            while (streamingActive.get()) {
+                QueuedFrame queued = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (queued == null) continue;
+
+                FFmpegFrameRecorder recorder = recorderRef.get();
+                long writeStart = System.nanoTime();
+                FrameStageEvent recordEvent = FrameStageEvent.start();
+                try {
+                    // RTMP는 타임스탬프를 레코더가 내부적으로 관리하거나, setTimestamp로 설정 가능
+                    recorder.setTimestamp(queued.timestamp);
+                    // 캡처 형식을 함께 넘김 (인코더 입력 형식과 같으면 변환 없음)
+                    if (queued.keyFrame) {
+                        RecorderTuning.recordKeyFrame(recorder, queued.frame, capturePixelFormat);
+                    } else {
+                        recorder.record(queued.frame, capturePixelFormat);
+                    }
+                    recordEvent.finish(FrameStageEvent.RECORD, JFR_STREAM_ID, queued.frameNumber);
+                } catch (FrameRecorder.Exception fre) {
+                    System.err.println("Exception during recorder.record() (RTMP): " + fre.getMessage());
+                } finally {
+                    queued.release();
+                }
+                long writeMicros = (System.nanoTime() - writeStart) / 1000;
+                int queueDepth = queue.size();
+                PipelineMetrics.setGauge("publisher.write_latency_us", writeMicros);
+                PipelineMetrics.setGauge("publisher.queue_depth", queueDepth);
+                // record()가 반환된 시점의 실제 경과 시간 - 미디어 타임스탬프:
+                // 이 값이 계속 증가하면 송출 측에서 버퍼가 쌓이고 있다는 뜻 (장시간 평탄해야 정상)
+                PipelineMetrics.setGauge("publisher.send_lag_us", pacer.lagMicros(System.nanoTime(), queued.timestamp));
+                // 첫 번째 구간: 캡처 -> 인코딩/송출 완료
+                LatencyHistogram.get("publisher.capture_to_sent").record(System.currentTimeMillis() - queued.captureMillis);
+
+                if (controller.onFrameWritten(System.currentTimeMillis(), writeMicros, queueDepth)) {
+                    AdaptiveBitrateController.Level nextLevel = controller.getLevel();
+                    System.out.println("Congestion control: " + appliedLevel + " -> " + nextLevel
+                            + " (write latency " + writeMicros + "us, queue " + queueDepth + ")");
+                    applyLevel(recorderRef, appliedLevel, nextLevel, publishUrl, sourceWidth, sourceHeight, encoderPixelFormat);
+                    appliedLevel = nextLevel;
+                    PipelineMetrics.setGauge("publisher.level", controller.getLevelIndex());
+                    PipelineMetrics.setGauge("publisher.video_bitrate", nextLevel.videoBitrate);
+                    PipelineMetrics.increment("publisher.level_changes");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (FrameRecorder.Exception e) {
+            System.err.println("RTMP recorder could not be reconfigured. Stopping stream: " + e.getMessage());
+            streamingActive.set(false);
+        }
+    }
+
+    // 비트레이트만 바뀌면 실행 중인 인코더에 바로 반영, 해상도가 바뀌거나 반영이 불가능하면 레코더 재시작(재연결)
+    private static void applyLevel(AtomicReference<FFmpegFrameRecorder> recorderRef, AdaptiveBitrateController.Level from,
+                                   AdaptiveBitrateController.Level to, String publishUrl, int sourceWidth, int sourceHeight,
+                                   int encoderPixelFormat) throws FrameRecorder.Exception {
+        FFmpegFrameRecorder recorder = recorderRef.get();
+        if (from.scaleDivisor == to.scaleDivisor && RecorderTuning.setVideoBitrate(recorder, to.videoBitrate)) {
+            recorder.setVideoBitrate(to.videoBitrate);
+            return;
+        }
+        // 입력 프레임 크기가 달라도 FFmpegFrameRecorder가 sws_scale로 레코더 해상도에 맞춰줌 (YUV420P/NV12는 짝수 크기 필요)
+        int width = (sourceWidth / to.scaleDivisor) & ~1;
+        int height = (sourceHeight / to.scaleDivisor) & ~1;
+        System.out.println("Restarting RTMP recorder at " + width + "x" + height + ", " + to.videoBitrate / 1000 + " kbps");
+        long lastTimestamp = recorder.getTimestamp();
+        try {
+            recorder.stop();
+            recorder.release();
+        } catch (FrameRecorder.Exception e) {
+            System.err.println("Error stopping RTMP recorder before restart: " + e.getMessage());
+        }
+        FFmpegFrameRecorder restarted = createRtmpRecorder(publishUrl, width, height, to.videoBitrate, encoderPixelFormat);
+        restarted.start();
+        restarted.setTimestamp(lastTimestamp); // 타임스탬프는 이어서 (재연결 후에도 단조 증가)
+        recorderRef.set(restarted);
+    }
+
     // registerStreamWithServer 메소드 (이전과 동일하게 사용)
     private static void registerStreamWithServer(String name, String rtspUrl, String description) { /* ... 이전 코드 그대로 ... */
         StreamCreationRequestDto requestDto = new StreamCreationRequestDto(name, rtspUrl, description);
@@ -0,0 +1,133 @@
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+// 카메라 없이 테스트할 수 있는 합성 소스 (컬러바 + 움직이는 막대 + 1kHz 톤)
+// OpenCVFrameGrabber / FFmpegFrameGrabber 대신 그대로 끼워 쓸 수 있도록 FrameGrabber를 상속.
+// realTime 이 true면 실제 카메라처럼 프레임 간격에 맞춰 grab()이 대기하고, false면 최대 속도로 생성.
+public class SyntheticFrameGrabber extends FrameGrabber {
+
+    private static final int[][] BAR_COLORS_BGR = {
+            {255, 255, 255}, {0, 255, 255}, {255, 255, 0}, {0, 255, 0},
+            {255, 0, 255}, {0, 0, 255}, {255, 0, 0}, {0, 0, 0}
+    };
+    private static final double TONE_HZ = 1000.0;
+    private static final double TONE_AMPLITUDE = 0.2;
+
+    private final boolean realTime;
+    private Frame frame;
+    private byte[] background;
+    private long frameNumber;
+    private long startNanos;
+    private double samplesCarry;
+    private long totalSamples;
+
+    public SyntheticFrameGrabber(int width, int height, double frameRate, int audioChannels, int sampleRate, boolean realTime) {
+        this.imageWidth = width;
+        this.imageHeight = height;
+        this.frameRate = frameRate;
+        this.audioChannels = audioChannels;
+        this.sampleRate = sampleRate;
+        this.realTime = realTime;
+    }
+
+    @Override
+    public void start() {
+        frame = new Frame(imageWidth, imageHeight, Frame.DEPTH_UBYTE, 3);
+        background = new byte[frame.imageStride * imageHeight];
+        int barWidth = Math.max(1, imageWidth / BAR_COLORS_BGR.length);
+        for (int y = 0; y < imageHeight; y++) {
+            for (int x = 0; x < imageWidth; x++) {
+                int[] color = BAR_COLORS_BGR[Math.min(x / barWidth, BAR_COLORS_BGR.length - 1)];
+                int offset = y * frame.imageStride + x * 3;
+                background[offset] = (byte) color[0];
+                background[offset + 1] = (byte) color[1];
+                background[offset + 2] = (byte) color[2];
+            }
+        }
+        frameNumber = 0;
+        totalSamples = 0;
+        samplesCarry = 0;
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        if (frame == null) throw new Exception("SyntheticFrameGrabber not started");
+        if (realTime) {
+            long dueNanos = startNanos + (long) (frameNumber * 1_000_000_000L / frameRate);
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        drawImage();
+        if (audioChannels > 0) {
+            fillTone();
+        }
+        frame.timestamp = Math.round(frameNumber * 1_000_000.0 / frameRate); // 카메라처럼 원본 프레임 (키프레임 여부는 인코더가 정함)
+        timestamp = frame.timestamp;
+        frameNumber++;
+        return frame;
+    }
+
+    // 배경 복사 후 프레임마다 위치가 바뀌는 흰 세로 막대를 그림 (인코더가 처리할 움직임)
+    private void drawImage() {
+        ByteBuffer image = (ByteBuffer) frame.image[0];
+        image.clear();
+        image.put(background);
+        int barX = (int) ((frameNumber * 8) % Math.max(1, imageWidth - 16));
+        for (int y = 0; y < imageHeight; y++) {
+            int rowOffset = y * frame.imageStride + barX * 3;
+            for (int i = 0; i < 16 * 3; i++) {
+                image.put(rowOffset + i, (byte) 255);
+            }
+        }
+        image.rewind();
+    }
+
+    private void fillTone() {
+        samplesCarry += sampleRate / frameRate;
+        int samplesPerChannel = (int) samplesCarry;
+        samplesCarry -= samplesPerChannel;
+        ShortBuffer samples = ShortBuffer.allocate(samplesPerChannel * audioChannels);
+        for (int i = 0; i < samplesPerChannel; i++) {
+            short value = (short) (Math.sin(2 * Math.PI * TONE_HZ * (totalSamples + i) / sampleRate) * TONE_AMPLITUDE * Short.MAX_VALUE);
+            for (int c = 0; c < audioChannels; c++) {
+                samples.put(value);
+            }
+        }
+        samples.flip();
+        totalSamples += samplesPerChannel;
+        frame.samples = new Buffer[]{samples};
+        frame.sampleRate = sampleRate;
+        frame.audioChannels = audioChannels;
+    }
+
+    @Override
+    public int getFrameNumber() {
+        return (int) frameNumber;
+    }
+
+    @Override
+    public void stop() {
+        frame = null;
+    }
+
+    @Override
+    public void trigger() {
+    }
+
+    @Override
+    public void release() {
+        stop();
+    }
+}
@@ -0,0 +1,96 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+// RTMP 서버 대신 쓰는 로컬 테스트용 TCP 수신기 (대역폭 제한)
+// 수신한 데이터는 버리고, 지정된 속도(kbps) 이상으로는 읽지 않아서 송신 측 소켓 버퍼가 차오르게 만든다.
+// 사용 예:
+//   java ThrottledTcpSink 19350 1500
+//   java -Dpublish.url=tcp://127.0.0.1:19350 StreamingClientMain
+// 실행 중 표준입력에 숫자(kbps)를 입력하면 제한 속도가 바뀐다 (혼잡 -> 회복 시나리오 테스트용)
+public class ThrottledTcpSink {
+
+    private static final int READ_CHUNK_BYTES = 4096;
+    private static final long REPORT_INTERVAL_MS = 5000;
+
+    private static final AtomicLong limitKbps = new AtomicLong(1000);
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 19350;
+        if (args.length > 1) limitKbps.set(Long.parseLong(args[1]));
+
+        Thread stdinThread = new Thread(ThrottledTcpSink::readLimitChanges, "ThrottleControl");
+        stdinThread.setDaemon(true);
+        stdinThread.start();
+
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            System.out.println("Throttled TCP sink listening on port " + port + " (limit: " + limitKbps.get() + " kbps). Type a new kbps value to change it.");
+            while (true) {
+                Socket socket = serverSocket.accept();
+                socket.setReceiveBufferSize(16 * 1024); // 수신 버퍼를 작게 해서 제한 효과가 바로 송신 측에 전달되도록
+                System.out.println("Client connected: " + socket.getRemoteSocketAddress());
+                Thread reader = new Thread(() -> drain(socket), "ThrottledReader-" + socket.getPort());
+                reader.start();
+            }
+        }
+    }
+
+    private static void drain(Socket socket) {
+        byte[] buffer = new byte[READ_CHUNK_BYTES];
+        long totalBytes = 0;
+        long windowBytes = 0;
+        long windowStart = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        long budgetBytes = 0; // 토큰 버킷: 경과 시간만큼 읽을 수 있는 바이트
+        try (Socket s = socket; InputStream in = s.getInputStream()) {
+            int read;
+            while (true) {
+                long elapsedNanos = System.nanoTime() - startNanos;
+                startNanos += elapsedNanos;
+                budgetBytes = Math.min(budgetBytes + elapsedNanos * limitKbps.get() / 8_000_000L, READ_CHUNK_BYTES * 4L);
+                if (budgetBytes < READ_CHUNK_BYTES) {
+                    Thread.sleep(5);
+                    continue;
+                }
+                read = in.read(buffer, 0, READ_CHUNK_BYTES);
+                if (read < 0) break;
+                budgetBytes -= read;
+                totalBytes += read;
+                windowBytes += read;
+
+                long now = System.currentTimeMillis();
+                if (now - windowStart >= REPORT_INTERVAL_MS) {
+                    System.out.printf("[%s] Received %.1f kbps (limit %d kbps), total %d KB%n",
+                            socket.getRemoteSocketAddress(), windowBytes * 8.0 / (now - windowStart), limitKbps.get(), totalBytes / 1024);
+                    windowBytes = 0;
+                    windowStart = now;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Connection error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Client disconnected. Total received: " + totalBytes / 1024 + " KB");
+    }
+
+    private static void readLimitChanges() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    limitKbps.set(Long.parseLong(line.trim()));
+                    System.out.println("Throughput limit changed to " + limitKbps.get() + " kbps.");
+                } catch (NumberFormatException e) {
+                    System.err.println("Not a number: " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading stdin: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+// grabber -> recorder 사이에서 프레임 타임스탬프(마이크로초)를 먹서가 받아들일 수 있는 형태로 고치는 단계
+// - 첫 프레임 기준으로 0부터 시작하도록 rebase (비디오/오디오 공통 오프셋이라 A/V 싱크 유지)
+// - 카메라 재시작, 33비트 PTS 래핑 등으로 시각이 크게 뛰거나 되돌아가면(불연속) 직전 프레임에 이어지도록 오프셋 재설정
+// - 비디오: 예상 간격에서 조금 벗어난 프레임은 예상 시각으로 맞춤(지터 완화, 오차가 간격의 1/4을 넘으면 실제 시각으로 다시 맞춤)
+//           되돌아간/중복된(간격의 절반 미만) 타임스탬프는 다음 예상 시각으로 보정, 보정이 실제보다 너무 앞서가면 버림 (키프레임은 버리지 않음)
+// - 오디오: 되돌아간 타임스탬프는 버림. 비디오는 그대로인데 오디오만 크게 뛰면 오디오를 비디오 타임라인에 다시 맞춤
+// - 불연속 기준은 5초와 키프레임 간격의 2배 중 큰 값 (키프레임만 디코딩하는 긴 GOP 소스에서 정상 간격을 불연속으로 보지 않도록)
+// 보정/버림/불연속은 모두 PipelineMetrics 에 <prefix>.repaired / .dropped / .discontinuities / .audio_rebased 로 집계
+public class TimestampNormalizer {
+
+    // normalize() 반환값: 이 프레임은 기록하지 말 것
+    public static final long DROP = -1;
+
+    private static final long DISCONTINUITY_MICROS = 5_000_000;
+    private static final long MAX_GOP_MICROS = 60_000_000; // 이보다 긴 키프레임 간격은 GOP 로 보지 않음
+    private static final long MAX_REPAIR_LEAD_MICROS = 1_000_000;
+    private static final long DEFAULT_AUDIO_GAP_MICROS = 20_000;
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final String metricPrefix;
+    private final long videoIntervalMicros;
+    private long offset = NONE;       // 입력 타임스탬프 + offset = 출력 타임스탬프
+    private long audioCorrection = 0; // 오디오만 시계가 뛴 경우 오디오에만 더하는 보정
+    private long lastVideo = NONE;
+    private long lastAudio = NONE;
+    private long lastKeyFrame = NONE;
+    private long gopMicros = 0;       // 최근 키프레임 간격
+    private long videoFrames = 0;
+    private long videoFramesAtAudioJump = NONE; // 오디오 불연속을 처음 본 시점의 videoFrames
+
+    public TimestampNormalizer(String metricPrefix, double frameRate) {
+        this.metricPrefix = metricPrefix;
+        this.videoIntervalMicros = Math.round(1_000_000.0 / (frameRate > 0 && frameRate < 200 ? frameRate : 30));
+    }
+
+    // 반환: 출력 타임스탬프(마이크로초, 0 이상) 또는 DROP
+    public long normalize(boolean video, long timestampMicros, boolean keyFrame) {
+        if (offset == NONE) offset = -timestampMicros;
+        long timestamp = timestampMicros + offset + (video ? 0 : audioCorrection);
+        long last = video ? lastVideo : lastAudio;
+        if (last != NONE && Math.abs(timestamp - last) > discontinuityMicros()) {
+            if (video || lastVideo == NONE) {
+                // 기준 스트림(비디오, 없으면 오디오)이 불연속: 직전 프레임 바로 다음으로 이어 붙임
+                long expected = last + (video ? videoIntervalMicros : DEFAULT_AUDIO_GAP_MICROS);
+                long jumpMs = (timestamp - last) / 1000;
+                offset += expected - timestamp;
+                timestamp = expected;
+                lastKeyFrame = NONE; // 불연속을 건너는 키프레임 간격은 GOP 가 아님
+                videoFramesAtAudioJump = NONE; // 오디오도 같은 offset 으로 새 타임라인을 따라옴
+                PipelineMetrics.increment(metricPrefix + ".discontinuities");
+                System.out.println("[" + metricPrefix + "] Timestamp jumped " + jumpMs + "ms. Rebased to continue at " + expected / 1000 + "ms.");
+            } else if (videoFramesAtAudioJump == NONE || videoFrames == videoFramesAtAudioJump) {
+                // 비디오가 곧 같은 만큼 뛸 수 있음(카메라 재시작): 다음 비디오 프레임을 볼 때까지 이 오디오는 버림
+                if (videoFramesAtAudioJump == NONE) videoFramesAtAudioJump = videoFrames;
+                PipelineMetrics.increment(metricPrefix + ".dropped");
+                return DROP;
+            } else {
+                // 비디오는 예전 타임라인 그대로 이어짐: 오디오 시계만 뛴 것 (예: RTSP 첫 RTCP SR 에서 오디오 재동기화)
+                // -> 오디오를 비디오 타임라인에 다시 맞춤 (계속 버리면 영구 무음)
+                long expected = Math.max(lastAudio + DEFAULT_AUDIO_GAP_MICROS, lastVideo);
+                long jumpMs = (timestamp - lastAudio) / 1000;
+                audioCorrection += expected - timestamp;
+                timestamp = expected;
+                videoFramesAtAudioJump = NONE;
+                PipelineMetrics.increment(metricPrefix + ".audio_rebased");
+                System.out.println("[" + metricPrefix + "] Audio timestamp jumped " + jumpMs + "ms while video did not. Rebased audio to " + expected / 1000 + "ms.");
+            }
+        } else if (!video) {
+            videoFramesAtAudioJump = NONE;
+        }
+        return video ? normalizeVideo(timestamp, keyFrame) : normalizeAudio(timestamp);
+    }
+
+    // 키프레임 간격보다 짧으면 키프레임만 디코딩할 때(LoadGovernor KEYFRAMES_ONLY) 긴 GOP 소스의 정상 간격도 불연속으로 보게 됨
+    private long discontinuityMicros() {
+        return Math.max(DISCONTINUITY_MICROS, gopMicros * 2);
+    }
+
+    private long normalizeVideo(long timestamp, boolean keyFrame) {
+        if (lastVideo != NONE) {
+            long expected = lastVideo + videoIntervalMicros;
+            if (Math.abs(timestamp - expected) <= videoIntervalMicros / 4) {
+                timestamp = expected;
+            } else if (timestamp - lastVideo < videoIntervalMicros / 2) {
+                // 되돌아갔거나 너무 붙어 있음 (레코더는 시각을 프레임 번호로 반올림하므로 같은 번호가 되면 거부됨)
+                if (!keyFrame && expected - timestamp > MAX_REPAIR_LEAD_MICROS) {
+                    PipelineMetrics.increment(metricPrefix + ".dropped");
+                    return DROP;
+                }
+                timestamp = expected; // 다음 슬롯으로 밀어냄
+                PipelineMetrics.increment(metricPrefix + ".repaired");
+            }
+        }
+        if (timestamp < 0) timestamp = 0;
+        if (keyFrame) {
+            long gap = lastKeyFrame == NONE ? 0 : timestamp - lastKeyFrame;
+            if (gap > 0 && gap <= MAX_GOP_MICROS) gopMicros = gap;
+            lastKeyFrame = timestamp;
+        }
+        lastVideo = timestamp;
+        videoFrames++;
+        return timestamp;
+    }
+
+    private long normalizeAudio(long timestamp) {
+        if (lastAudio != NONE && timestamp <= lastAudio) {
+            PipelineMetrics.increment(metricPrefix + ".dropped");
+            return DROP;
+        }
+        if (timestamp < 0) timestamp = 0;
+        lastAudio = timestamp;
+        return timestamp;
+    }
+}
@@ -0,0 +1,212 @@
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avutil.AVRational;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameRecorder;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_AAC;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.ffmpeg.global.avcodec.av_new_packet;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_alloc;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avutil.AV_NOPTS_VALUE;
+
+// 이벤트(알람, API 호출) 이전 구간을 포함하는 클립 녹화
+// 소스를 디코딩 없이 패킷 단위로 읽으면서(grabPacket) 최근 preRoll 만큼을 PreEventRingBuffer에 보관하고,
+// trigger() 가 오면 버퍼 내용(키프레임부터) + 이후 postRoll 동안의 패킷을 재인코딩 없이 MP4로 remux.
+// 녹화 중 다시 trigger() 가 오면 같은 클립의 종료 시각만 연장.
+public class TriggeredClipRecorder {
+
+    private static final long RECONNECT_DELAY_MS = 3000;
+
+    private final String streamId;
+    private final String sourceUrl;
+    private final Map<String, String> grabberOptions;
+    private final File clipDirectory;
+    private final long preRollMicros;
+    private final long maxBufferBytes;
+    private final long postRollMs;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // trigger()(HTTP 스레드)와 패킷 루프가 공유. 먹서 자체는 패킷 루프 스레드만 사용
+    private File requestedClip;   // guarded by this: 다음 패킷에서 열어야 할 클립
+    private File activeClip;      // guarded by this
+    private long recordUntilMs;   // guarded by this
+
+    private FFmpegFrameRecorder clipRecorder;
+    private boolean clipHasKeyFrame;
+    private boolean copyAudio;
+
+    public TriggeredClipRecorder(String streamId, String sourceUrl, Map<String, String> grabberOptions, File clipDirectory,
+                                 long preRollSeconds, long maxBufferBytes, long postRollSeconds) {
+        this.streamId = streamId;
+        this.sourceUrl = sourceUrl;
+        this.grabberOptions = grabberOptions;
+        this.clipDirectory = clipDirectory;
+        this.preRollMicros = preRollSeconds * 1_000_000L;
+        this.maxBufferBytes = maxBufferBytes;
+        this.postRollMs = postRollSeconds * 1000L;
+    }
+
+    // 반환: 이번 이벤트가 기록될 클립 파일 (이미 녹화 중이면 그 클립)
+    public synchronized File trigger(String reason) {
+        recordUntilMs = System.currentTimeMillis() + postRollMs;
+        if (activeClip != null) {
+            System.out.println("[" + streamId + "] Trigger (" + reason + ") extends clip " + activeClip.getName());
+            return activeClip;
+        }
+        if (requestedClip == null) {
+            String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+            requestedClip = new File(clipDirectory, streamId + "-" + timestamp + ".mp4");
+            System.out.println("[" + streamId + "] Trigger (" + reason + ") -> " + requestedClip.getName());
+        }
+        return requestedClip;
+    }
+
+    // stop()이 호출될 때까지 블록 (소스가 끊기면 재연결, 재연결 시 버퍼는 비움)
+    public void run() {
+        running.set(true);
+        while (running.get()) {
+            FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(sourceUrl);
+            try {
+                ProbeCache.start(grabber, sourceUrl, grabberOptions);
+                bufferPackets(grabber);
+            } catch (FrameGrabber.Exception | FrameRecorder.Exception e) {
+                System.err.println("[" + streamId + "] Pre-event buffer error: " + e.getMessage());
+            } finally {
+                closeClip();
+                try {
+                    grabber.stop();
+                    grabber.release();
+                } catch (FrameGrabber.Exception e) {
+                    // 재연결 전 정리 중 오류는 무시
+                }
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    private void bufferPackets(FFmpegFrameGrabber grabber) throws FrameGrabber.Exception, FrameRecorder.Exception {
+        AVFormatContext formatContext = grabber.getFormatContext();
+        int videoStreamIndex = grabber.getVideoStream();
+        PreEventRingBuffer buffer = new PreEventRingBuffer(preRollMicros, maxBufferBytes, videoStreamIndex);
+        // MP4에 그대로 넣을 수 없는 오디오(G.711 등)는 클립에서 제외
+        copyAudio = grabber.getAudioChannels() > 0 && grabber.getAudioCodec() == AV_CODEC_ID_AAC;
+        System.out.println("[" + streamId + "] Pre-event buffer started: " + preRollMicros / 1_000_000 + "s / "
+                + maxBufferBytes / (1024 * 1024) + "MB, post-roll " + postRollMs / 1000 + "s");
+
+        AVPacket packet;
+        long lastMetricsMs = 0;
+        while (running.get() && (packet = grabber.grabPacket()) != null) {
+            if (packet.size() <= 0) continue;
+            int streamIndex = packet.stream_index();
+            boolean isVideo = streamIndex == videoStreamIndex;
+            if (!isVideo && (!copyAudio || streamIndex != grabber.getAudioStream())) continue;
+
+            openRequestedClip(grabber, buffer, videoStreamIndex);
+            buffer.add(packet, toMicros(packet, formatContext.streams(streamIndex).time_base()));
+            if (clipRecorder != null) {
+                if (!clipHasKeyFrame && isVideo && (packet.flags() & AV_PKT_FLAG_KEY) != 0) clipHasKeyFrame = true;
+                if (clipHasKeyFrame) clipRecorder.recordPacket(packet);
+                if (isPostRollOver()) closeClip();
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastMetricsMs >= 1000) {
+                PipelineMetrics.setGauge("clip." + streamId + ".buffer_bytes", buffer.getBufferedBytes());
+                PipelineMetrics.setGauge("clip." + streamId + ".buffer_ms", buffer.getBufferedMicros() / 1000);
+                lastMetricsMs = now;
+            }
+        }
+    }
+
+    // trigger() 이후 첫 패킷에서 클립을 열고 버퍼 내용(이벤트 이전 구간)을 먼저 기록
+    private void openRequestedClip(FFmpegFrameGrabber grabber, PreEventRingBuffer buffer, int videoStreamIndex) throws FrameRecorder.Exception {
+        File clipFile;
+        synchronized (this) {
+            if (requestedClip == null || clipRecorder != null) return;
+            clipFile = requestedClip;
+            requestedClip = null;
+            activeClip = clipFile;
+        }
+        if (!clipDirectory.exists() && !clipDirectory.mkdirs()) {
+            throw new FrameRecorder.Exception("Could not create clip directory: " + clipDirectory.getAbsolutePath());
+        }
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(clipFile, grabber.getImageWidth(), grabber.getImageHeight(),
+                copyAudio ? grabber.getAudioChannels() : 0);
+        recorder.setFormat("mp4");
+        recorder.setOption("movflags", "faststart");
+        recorder.start(grabber.getFormatContext()); // 입력 스트림 파라미터를 그대로 복사 (재인코딩 없음)
+        clipRecorder = recorder;
+        clipHasKeyFrame = false;
+
+        long preRollMs = buffer.getBufferedMicros() / 1000;
+        for (PreEventRingBuffer.Packet buffered : buffer.snapshot()) {
+            writeBufferedPacket(buffered, videoStreamIndex);
+        }
+        PipelineMetrics.increment("clip." + streamId + ".clips");
+        System.out.println("[" + streamId + "] Clip " + clipFile.getName() + " opened with " + preRollMs + "ms of pre-event video.");
+    }
+
+    private void writeBufferedPacket(PreEventRingBuffer.Packet buffered, int videoStreamIndex) throws FrameRecorder.Exception {
+        if (!clipHasKeyFrame && buffered.getStreamIndex() == videoStreamIndex && (buffered.getFlags() & AV_PKT_FLAG_KEY) != 0) {
+            clipHasKeyFrame = true;
+        }
+        if (!clipHasKeyFrame) return;
+        AVPacket packet = av_packet_alloc();
+        try {
+            av_new_packet(packet, buffered.getData().length);
+            packet.data().put(buffered.getData());
+            packet.pts(buffered.getPts());
+            packet.dts(buffered.getDts());
+            packet.duration(buffered.getDuration());
+            packet.stream_index(buffered.getStreamIndex());
+            packet.flags(buffered.getFlags());
+            clipRecorder.recordPacket(packet);
+        } finally {
+            av_packet_free(packet);
+        }
+    }
+
+    private synchronized boolean isPostRollOver() {
+        return System.currentTimeMillis() > recordUntilMs;
+    }
+
+    private void closeClip() {
+        if (clipRecorder == null) return;
+        try {
+            clipRecorder.stop(); // moov 작성 (faststart)
+            clipRecorder.release();
+        } catch (FrameRecorder.Exception e) {
+            System.err.println("[" + streamId + "] Error finishing clip: " + e.getMessage());
+        }
+        clipRecorder = null;
+        synchronized (this) {
+            System.out.println("[" + streamId + "] Clip " + (activeClip != null ? activeClip.getName() : "") + " finished.");
+            activeClip = null;
+        }
+    }
+
+    private static long toMicros(AVPacket packet, AVRational timeBase) {
+        long timestamp = packet.dts() != AV_NOPTS_VALUE ? packet.dts() : packet.pts();
+        if (timestamp == AV_NOPTS_VALUE) return 0;
+        return (long) (timestamp * 1_000_000.0 * timeBase.num() / timeBase.den());
+    }
+}